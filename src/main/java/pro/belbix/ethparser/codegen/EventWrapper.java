@@ -0,0 +1,30 @@
+package pro.belbix.ethparser.codegen;
+
+import java.util.List;
+import lombok.Data;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.Type;
+import pro.belbix.ethparser.web3.MethodDecoder;
+
+/**
+ * Event with the hashes and the split parameters computed once, so decoding a log doesn't hash the
+ * signature.
+ */
+@Data
+public class EventWrapper {
+
+  private final Event event;
+  private final String topic;
+  private final String methodId;
+  private final List<TypeReference<Type>> indexedParameters;
+  private final List<TypeReference<Type>> nonIndexedParameters;
+
+  public EventWrapper(Event event) {
+    this.event = event;
+    this.topic = MethodDecoder.createMethodFullHex(event.getName(), event.getParameters());
+    this.methodId = topic.substring(0, 10);
+    this.indexedParameters = MethodDecoder.getIndexedParameters(event.getParameters());
+    this.nonIndexedParameters = MethodDecoder.getNonIndexedParameters(event.getParameters());
+  }
+}
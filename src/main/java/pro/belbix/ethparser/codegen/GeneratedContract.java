@@ -2,6 +2,7 @@ package pro.belbix.ethparser.codegen;
 
 import java.util.Collection;
 import java.util.Map;
+import java.util.stream.Collectors;
 import lombok.extern.log4j.Log4j2;
 import org.web3j.abi.datatypes.Event;
 import org.web3j.abi.datatypes.Function;
@@ -11,13 +12,13 @@ public class GeneratedContract {
 
   private final String name;
   private final String address;
-  private final Map<String, Event> eventsByHash;
+  private final Map<String, EventWrapper> eventsByHash;
   private final Map<String, FunctionWrapper> functionsByMethodId;
   private boolean proxy = false;
 
 
   public GeneratedContract(String name, String address,
-      Map<String, Event> eventsByHash,
+      Map<String, EventWrapper> eventsByHash,
       Map<String, FunctionWrapper> functionsByMethodId) {
     this.name = name;
     this.address = address;
@@ -34,6 +35,11 @@ public class GeneratedContract {
   }
 
   public Event getEvent(String hash) {
+    EventWrapper eventWrapper = eventsByHash.get(hash);
+    return eventWrapper == null ? null : eventWrapper.getEvent();
+  }
+
+  public EventWrapper getEventWrapper(String hash) {
     return eventsByHash.get(hash);
   }
 
@@ -54,6 +60,8 @@ public class GeneratedContract {
   }
 
   public Collection<Event> getEvents() {
-    return eventsByHash.values();
+    return eventsByHash.values().stream()
+        .map(EventWrapper::getEvent)
+        .collect(Collectors.toList());
   }
 }
@@ -11,17 +11,25 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.xml.bind.DatatypeConverter;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Event;
 import org.web3j.abi.datatypes.Function;
 import org.web3j.abi.datatypes.Type;
+import org.web3j.crypto.Hash;
 import org.web3j.protocol.ObjectMapperFactory;
 import org.web3j.protocol.core.methods.response.AbiDefinition;
 import org.web3j.protocol.core.methods.response.EthLog.LogResult;
@@ -51,6 +59,7 @@ public class SimpleContractGenerator {
   private static final String TUPLE = "tuple";
   private static final String PURE = "pure";
   private static final String VIEW = "view";
+  private static final int WARM_UP_PAGE_SIZE = 500;
 
   private final AbiProviderService abiProviderService;
   private final FunctionsUtils functionsUtils;
@@ -60,7 +69,15 @@ public class SimpleContractGenerator {
   private final ContractSourceCodeRepository contractSourceCodeRepository;
   private final AppProperties appProperties;
 
-  private final Map<String, TreeMap<Long, GeneratedContract>> contracts = new HashMap<>();
+  private final int cacheSize;
+  // LRU maps, guarded by themselves
+  private final Map<String, TreeMap<Long, GeneratedContract>> contracts;
+  // parsed ABIs by keccak of the ABI json
+  private final Map<String, ParsedAbi> parsedAbis;
+  private final Map<String, Generation> generations = new ConcurrentHashMap<>();
+  // events of all parsed ABIs by topic and indexed parameters count, not evicted,
+  // the number of distinct events is small
+  private final Map<String, EventWrapper> eventsByTopic = new ConcurrentHashMap<>();
 
   public SimpleContractGenerator(FunctionsUtils functionsUtils,
       Web3Functions web3Functions,
@@ -76,31 +93,113 @@ public class SimpleContractGenerator {
     this.abiProviderService = new AbiProviderService();
     this.contractSourceCodeRepository = contractSourceCodeRepository;
     this.appProperties = appProperties;
+    this.cacheSize = Math.max(appProperties.getGeneratedContractsCacheSize(), 1);
+    this.contracts = lruMap(cacheSize);
+    this.parsedAbis = lruMap(cacheSize);
   }
 
 
+  /**
+   * Only one thread generates a contract for an address, others wait for it and take the result
+   * if it was generated for the same block and selector, or look at the cache again.
+   */
   public GeneratedContract getContract(String address, Long block, String selector,
       String network) {
-    GeneratedContract generatedContract = findInCache(address, block);
-    if (generatedContract != null) {
-      return generatedContract;
+    while (true) {
+      GeneratedContract generatedContract = findInCache(address, block);
+      if (generatedContract != null) {
+        return generatedContract;
+      }
+      Generation generation = new Generation(block, selector);
+      Generation current = generations.putIfAbsent(address, generation);
+      if (current == null) {
+        try {
+          GeneratedContract result = generateAndCache(address, block, selector, network);
+          generation.result.complete(result);
+          return result;
+        } catch (RuntimeException e) {
+          generation.result.completeExceptionally(e);
+          throw e;
+        } finally {
+          generations.remove(address, generation);
+        }
+      }
+      try {
+        GeneratedContract result = current.result.join();
+        if (Objects.equals(current.block, block)
+            && Objects.equals(current.selector, selector)) {
+          return result;
+        }
+      } catch (CompletionException | CancellationException e) {
+        // the generation failed, try it in this thread
+      }
     }
+  }
+
+  /**
+   * Parse ABIs of all stored source codes, so contracts with known sources, including clones and
+   * proxies with the same ABI, are generated without JSON parsing. Sources are read by pages until
+   * the cache of parsed ABIs is full.
+   */
+  public void warmUp() {
+    long start = System.currentTimeMillis();
+    int after = 0;
+    while (parsedAbisSize() < cacheSize) {
+      List<Object[]> page;
+      try {
+        page = contractSourceCodeRepository
+            .fetchAbisAfter(after, PageRequest.of(0, WARM_UP_PAGE_SIZE));
+      } catch (Exception e) {
+        log.error("Can't load stored ABIs", e);
+        break;
+      }
+      for (Object[] row : page) {
+        after = (Integer) row[0];
+        String abi = (String) row[1];
+        // not verified contracts have a text message instead of ABI
+        if (abi == null || !abi.startsWith("[")) {
+          continue;
+        }
+        try {
+          parseAbi(abi);
+        } catch (Exception e) {
+          log.warn("Can't parse stored abi {}", e.getMessage());
+        }
+      }
+      if (page.size() < WARM_UP_PAGE_SIZE) {
+        break;
+      }
+    }
+    log.info("Parsed {} ABIs in {}ms", parsedAbisSize(), System.currentTimeMillis() - start);
+  }
+
+  private int parsedAbisSize() {
+    synchronized (parsedAbis) {
+      return parsedAbis.size();
+    }
+  }
+
+  private GeneratedContract generateAndCache(String address, Long block, String selector,
+      String network) {
     return generateContract(address, block, false, selector, network)
         .map(newContract -> {
           log.info("Generated {} {}", newContract.getName(), newContract.getAddress());
-          var implementations
-              = contracts.computeIfAbsent(address, k -> new TreeMap<>());
-
-          // for reducing memory usage don't save the same proxy impl
-          if (!implementations.isEmpty() && block != null) {
-            var existContract = implementations.floorEntry(block).getValue();
-            if (existContract.isProxy()
-                && equalContracts(newContract, existContract)) {
-              return newContract;
+          synchronized (contracts) {
+            var implementations
+                = contracts.computeIfAbsent(address, k -> new TreeMap<>());
+
+            // for reducing memory usage don't save the same proxy impl
+            if (!implementations.isEmpty() && block != null) {
+              var existEntry = implementations.floorEntry(block);
+              if (existEntry != null
+                  && existEntry.getValue().isProxy()
+                  && equalContracts(newContract, existEntry.getValue())) {
+                return newContract;
+              }
+            }
+            if (block != null) {
+              implementations.put(block, newContract);
             }
-          }
-          if (block != null) {
-            implementations.put(block, newContract);
           }
           return newContract;
         }).orElse(null);
@@ -153,16 +252,16 @@ public class SimpleContractGenerator {
     }
 
     String abi = resolveAbi(address, sourceCode.getAbi());
-    List<AbiDefinition> abis = abiToDefinition(abi);
+    ParsedAbi parsedAbi = parseAbi(abi);
     GeneratedContract contract = new GeneratedContract(
         sourceCode.getContractName(),
         address,
-        abiToEvents(abis),
-        abiToFunctions(abis)
+        parsedAbi.events,
+        parsedAbi.functions
     );
 
     etherscanIsProxy = "1".equals(sourceCode.getProxy());
-    if (!isProxy && (etherscanIsProxy || isProxy(abis))) {
+    if (!isProxy && (etherscanIsProxy || parsedAbi.proxy)) {
       log.info("Detect proxy {}", address);
       String proxyAddress = readProxyAddressOnChain(address, block, contract, selector, network);
       if (proxyAddress == null) {
@@ -182,6 +281,40 @@ public class SimpleContractGenerator {
     return Optional.of(contract);
   }
 
+  /**
+   * Many proxies and clones have the same ABI, they share parsed events and functions.
+   */
+  private ParsedAbi parseAbi(String abi) {
+    String hash = Hash.sha3String(abi);
+    synchronized (parsedAbis) {
+      ParsedAbi parsedAbi = parsedAbis.get(hash);
+      if (parsedAbi != null) {
+        return parsedAbi;
+      }
+    }
+    List<AbiDefinition> abis = abiToDefinition(abi);
+    ParsedAbi parsedAbi = new ParsedAbi(abiToEvents(abis), abiToFunctions(abis), isProxy(abis));
+    synchronized (parsedAbis) {
+      parsedAbis.putIfAbsent(hash, parsedAbi);
+    }
+    parsedAbi.events.values().forEach(e -> eventsByTopic.putIfAbsent(
+        eventKey(e.getTopic(), e.getIndexedParameters().size()), e));
+    return parsedAbi;
+  }
+
+  /**
+   * @return the first seen event with the topic and the indexed parameters count from all parsed
+   * ABIs, the same signature can have different indexed parameters in other ABIs, like ERC20 and
+   * ERC721 Transfer
+   */
+  public EventWrapper findEventByTopic(String topic, int indexedCount) {
+    return eventsByTopic.get(eventKey(topic, indexedCount));
+  }
+
+  private static String eventKey(String topic, int indexedCount) {
+    return topic + "_" + indexedCount;
+  }
+
   private String resolveAbi(String address, String abi) {
     if (StaticAbiMap.MAP.containsKey(address.toLowerCase())) {
       return StaticAbiMap.MAP.get(address.toLowerCase());
@@ -272,23 +405,34 @@ public class SimpleContractGenerator {
     if (block == null) {
       return null;
     }
-    TreeMap<Long, GeneratedContract> contractByBlocks = contracts.get(address);
-    if (contractByBlocks == null || contractByBlocks.firstEntry() == null) {
-      return null;
-    }
-    GeneratedContract contract = contractByBlocks.firstEntry().getValue();
-    // for non proxy contracts the implementation doesn't depend on block
-    if (!contract.isProxy()) {
-      return contract;
-    }
-    Long floorBlock = contractByBlocks.floorKey(block);
-    if (floorBlock != null) {
-      return contractByBlocks.get(floorBlock);
+    synchronized (contracts) {
+      TreeMap<Long, GeneratedContract> contractByBlocks = contracts.get(address);
+      if (contractByBlocks == null || contractByBlocks.firstEntry() == null) {
+        return null;
+      }
+      GeneratedContract contract = contractByBlocks.firstEntry().getValue();
+      // for non proxy contracts the implementation doesn't depend on block
+      if (!contract.isProxy()) {
+        return contract;
+      }
+      Long floorBlock = contractByBlocks.floorKey(block);
+      if (floorBlock != null) {
+        return contractByBlocks.get(floorBlock);
+      }
     }
     //if we don't have implementation freshest than current block need to check
     return null;
   }
 
+  private static <K, V> Map<K, V> lruMap(int maxSize) {
+    return new LinkedHashMap<>(1024, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
   private static boolean isProxy(List<AbiDefinition> abiDefinitions) {
     for (AbiDefinition abiDefinition : abiDefinitions) {
       if (IMPLEMENTATION.equals(abiDefinition.getName())
@@ -325,17 +469,16 @@ public class SimpleContractGenerator {
     return functionsByMethodId;
   }
 
-  private static Map<String, Event> abiToEvents(List<AbiDefinition> abis) {
-    Map<String, Event> eventsByHash = new HashMap<>();
+  private static Map<String, EventWrapper> abiToEvents(List<AbiDefinition> abis) {
+    Map<String, EventWrapper> eventsByHash = new HashMap<>();
     abis.forEach(abi -> {
       try {
         Event event = abiToEvent(abi);
         if (event == null) {
           return;
         }
-        String hash = MethodDecoder
-            .createMethodFullHex(event.getName(), event.getParameters());
-        eventsByHash.put(hash, event);
+        EventWrapper eventWrapper = new EventWrapper(event);
+        eventsByHash.put(eventWrapper.getTopic(), eventWrapper);
       } catch (Exception e) {
         log.error("Error abi to event {}", abi.getName(), e);
       }
@@ -425,4 +568,30 @@ public class SimpleContractGenerator {
     return Arrays.asList(abiDefinition);
   }
 
+  private static class ParsedAbi {
+
+    private final Map<String, EventWrapper> events;
+    private final Map<String, FunctionWrapper> functions;
+    private final boolean proxy;
+
+    private ParsedAbi(Map<String, EventWrapper> events,
+        Map<String, FunctionWrapper> functions,
+        boolean proxy) {
+      this.events = Collections.unmodifiableMap(events);
+      this.functions = Collections.unmodifiableMap(functions);
+      this.proxy = proxy;
+    }
+  }
+
+  private static class Generation {
+
+    private final Long block;
+    private final String selector;
+    private final CompletableFuture<GeneratedContract> result = new CompletableFuture<>();
+
+    private Generation(Long block, String selector) {
+      this.block = block;
+      this.selector = selector;
+    }
+  }
 }
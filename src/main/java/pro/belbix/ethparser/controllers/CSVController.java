@@ -4,11 +4,20 @@ import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
 import static pro.belbix.ethparser.utils.CommonUtils.parseLong;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.persistence.EntityManager;
 import javax.servlet.http.HttpServletResponse;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -35,44 +44,51 @@ import pro.belbix.ethparser.web3.contracts.db.ContractDbService;
 public class CSVController {
 
     private static final int RETURN_LIMIT = 1000000;
+    // rows between flushes of the response and the persistence context
+    private static final int PAGE_SIZE = 1000;
 
     private final HarvestRepository harvestRepository;
     private final RewardsRepository rewardsRepository;
     private final HardWorkRepository hardWorkRepository;
     private final HarvestTvlDBService harvestTvlDBService;
     private final ContractDbService contractDbService;
+    private final EntityManager entityManager;
 
     public CSVController(HarvestRepository harvestRepository, RewardsRepository rewardsRepository,
         HardWorkRepository hardWorkRepository, HarvestTvlDBService harvestTvlDBService,
-        ContractDbService contractDbService) {
+        ContractDbService contractDbService, EntityManager entityManager) {
         this.harvestRepository = harvestRepository;
         this.rewardsRepository = rewardsRepository;
         this.hardWorkRepository = hardWorkRepository;
         this.harvestTvlDBService = harvestTvlDBService;
         this.contractDbService = contractDbService;
+        this.entityManager = entityManager;
     }
 
     @RequestMapping(
         value = "/transactions/history/harvest/{name}",
         method = RequestMethod.GET
     )
+    @Transactional(readOnly = true)
     public void harvestHistoryDataForVault(
         HttpServletResponse response,
         @PathVariable("name") String address,
         @RequestParam(value = "start", required = false) String start,
         @RequestParam(value = "end", required = false) String end,
-        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network
+        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network,
+        @RequestParam(value = "gzip", required = false, defaultValue = "false") boolean gzip
     ) {
         try {
             if (!address.startsWith("0x")) {
                 address = contractDbService.getAddressByName(address, ContractType.VAULT, network)
                     .orElseThrow();
             }
-            List<HarvestDTO> transactions = harvestRepository
-                .findAllByVaultOrderByBlockDate(
+            try (Stream<HarvestDTO> transactions = harvestRepository
+                .streamAllByVaultOrderByBlockDate(
                     address, parseLong(start, 0),
-                    parseLong(end, Long.MAX_VALUE), network);
-            writeCSV(response, transactions, HarvestDTO.class);
+                    parseLong(end, Long.MAX_VALUE), network)) {
+                writeCSV(response, transactions, HarvestDTO.class, HarvestDTO::getBlockDate, gzip);
+            }
         } catch (Exception e) {
             log.error("Error while converting to CSV Harvest", e);
         }
@@ -82,22 +98,25 @@ public class CSVController {
         value = "/transactions/history/reward/{name}",
         method = RequestMethod.GET
     )
+    @Transactional(readOnly = true)
     public void rewardHistoryDataForVault(
         HttpServletResponse response,
         @PathVariable("name") String address,
         @RequestParam(value = "start", required = false) String start,
         @RequestParam(value = "end", required = false) String end,
-        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network
+        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network,
+        @RequestParam(value = "gzip", required = false, defaultValue = "false") boolean gzip
     ) {
         try {
             if (!address.startsWith("0x")) {
                 address = contractDbService.getAddressByName(address, ContractType.VAULT, network)
                     .orElseThrow();
             }
-            List<RewardDTO> transactions = rewardsRepository
-                .getAllByVaultOrderByBlockDate(address, parseLong(start, 0),
-                    parseLong(end, Long.MAX_VALUE), network);
-            writeCSV(response, transactions, RewardDTO.class);
+            try (Stream<RewardDTO> transactions = rewardsRepository
+                .streamAllByVaultOrderByBlockDate(address, parseLong(start, 0),
+                    parseLong(end, Long.MAX_VALUE), network)) {
+                writeCSV(response, transactions, RewardDTO.class, RewardDTO::getBlockDate, gzip);
+            }
         } catch (Exception e) {
             log.error("Error while converting to CSV Rewards", e);
         }
@@ -107,24 +126,28 @@ public class CSVController {
         value = "/transactions/history/hardwork/{name}",
         method = RequestMethod.GET
     )
+    @Transactional(readOnly = true)
     public void hardworkHistoryDataForVault(
         HttpServletResponse response,
         @PathVariable("name") String name,
         @RequestParam(value = "start", required = false) String start,
         @RequestParam(value = "end", required = false) String end,
-        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network
+        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network,
+        @RequestParam(value = "gzip", required = false, defaultValue = "false") boolean gzip
     ) {
         try {
             if (!name.startsWith("0x")) {
                 name = contractDbService.getAddressByName(name, ContractType.VAULT, network)
                     .orElseThrow();
             }
-            List<HardWorkDTO> transactions = hardWorkRepository
-                .findAllByVaultOrderByBlockDate(
+            try (Stream<HardWorkDTO> transactions = hardWorkRepository
+                .streamAllByVaultOrderByBlockDate(
                     name, network,
                     parseLong(start, 0),
-                    parseLong(end, Long.MAX_VALUE));
-            writeCSV(response, transactions, HardWorkDTO.class);
+                    parseLong(end, Long.MAX_VALUE))) {
+                writeCSV(response, transactions, HardWorkDTO.class,
+                    HardWorkDTO::getBlockDate, gzip);
+            }
         } catch (Exception e) {
             log.error("Error while converting to CSV Rewards", e);
         }
@@ -134,49 +157,80 @@ public class CSVController {
         value = "/transactions/history/tvl/{name}",
         method = RequestMethod.GET
     )
+    @Transactional(readOnly = true)
     public void tvlHistoryDataForVault(
         HttpServletResponse response,
         @PathVariable("name") String address,
         @RequestParam(value = "start", required = false) String start,
         @RequestParam(value = "end", required = false) String end,
-        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network
+        @RequestParam(value = "network", required = false, defaultValue = ETH_NETWORK) String network,
+        @RequestParam(value = "gzip", required = false, defaultValue = "false") boolean gzip
     ) {
         try {
             if (!address.startsWith("0x")) {
                 address = contractDbService.getAddressByName(address, ContractType.VAULT, network)
                     .orElseThrow();
             }
-            List<TvlHistory> transactions = harvestTvlDBService
-                .fetchTvlByVault(address, parseLong(start, 0), parseLong(end, Long.MAX_VALUE), network);
-            writeCSV(response, transactions, TvlHistory.class);
+            try (Stream<TvlHistory> transactions = harvestTvlDBService
+                .streamTvlByVault(
+                    address, parseLong(start, 0), parseLong(end, Long.MAX_VALUE), network)) {
+                writeCSV(response, transactions, TvlHistory.class,
+                    TvlHistory::getCalculateTime, gzip);
+            }
         } catch (Exception e) {
             log.error("Error while converting to CSV Rewards", e);
         }
     }
 
+    /**
+     * Rows are written as they are read from the cursor without a content length, so the response
+     * is chunked and the memory doesn't depend on the export size. After {@link #RETURN_LIMIT} rows
+     * the export stops at the end of the current block date, the rest can be requested with the
+     * start after the last written block date.
+     */
     private <T> void writeCSV(
         HttpServletResponse response,
-        List<T> transactions,
-        Class<T> clazz
+        Stream<T> transactions,
+        Class<T> clazz,
+        ToLongFunction<T> blockDate,
+        boolean gzip
     ) throws IOException {
         response.setContentType("text/csv");
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
         String csvFileName = clazz.getSimpleName() + "_" + System.currentTimeMillis() + ".csv";
         String headerValue = String.format("attachment; filename=\"%s\"", csvFileName);
         response.setHeader("Content-Disposition", headerValue);
+        OutputStream out = response.getOutputStream();
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, true);
+        }
 
-        ICsvBeanWriter csvWriter = new CsvBeanWriter(response.getWriter(),
-            CsvPreference.STANDARD_PREFERENCE);
-        String[] headers = collectFields(clazz);
-        csvWriter.writeHeader(headers);
-
-        int listSize = transactions.size();
-        int returnLimit = listSize < RETURN_LIMIT ? 0 : listSize - RETURN_LIMIT;
-
-        for (Object harvest : transactions.subList(returnLimit, listSize)) {
-            csvWriter.write(harvest, headers);
+        try (ICsvBeanWriter csvWriter = new CsvBeanWriter(
+            new OutputStreamWriter(out, StandardCharsets.UTF_8),
+            CsvPreference.STANDARD_PREFERENCE)) {
+            String[] headers = collectFields(clazz);
+            csvWriter.writeHeader(headers);
+
+            int count = 0;
+            long lastBlockDate = Long.MIN_VALUE;
+            Iterator<T> iterator = transactions.iterator();
+            while (iterator.hasNext()) {
+                T transaction = iterator.next();
+                long date = blockDate.applyAsLong(transaction);
+                if (count >= RETURN_LIMIT && date != lastBlockDate) {
+                    break;
+                }
+                csvWriter.write(transaction, headers);
+                lastBlockDate = date;
+                count++;
+                if (count % PAGE_SIZE == 0) {
+                    csvWriter.flush();
+                    // read only, written rows are not needed anymore
+                    entityManager.clear();
+                }
+            }
         }
-        response.getWriter().flush();
-        csvWriter.close();
     }
 
     static String[] collectFields(Class<?> clazz) {
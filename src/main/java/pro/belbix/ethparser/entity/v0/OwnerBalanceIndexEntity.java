@@ -0,0 +1,24 @@
+package pro.belbix.ethparser.entity.v0;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import lombok.Data;
+
+@Entity
+@Table(name = "owner_balance_index", indexes = {
+    @Index(name = "idx_owner_balance_index_net", columnList = "network")
+})
+@Data
+public class OwnerBalanceIndexEntity {
+
+    // network + "_" + vault address or uni + "_" + owner
+    @Id
+    private String id;
+    private String network;
+    private String vault;
+    private String owner;
+    private double balanceUsd;
+    private long blockDate;
+}
@@ -0,0 +1,30 @@
+package pro.belbix.ethparser.entity.v0;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import lombok.Data;
+
+@Entity
+@Table(name = "transfer_holders", indexes = {
+    @Index(name = "idx_transfer_holders_net", columnList = "network")
+})
+@Data
+public class TransferHolderEntity {
+
+    // network + "_" + holder address
+    @Id
+    private String id;
+    private String network;
+    private String holder;
+    private double balance;
+    private long blockDate;
+    // state for profits of PS exits
+    private double psStaked;
+    private double psExits;
+    // state for profits of LP sells
+    private double tradeBought;
+    private double tradeBoughtUsd;
+    private int tradeTransfers;
+}
@@ -27,4 +27,37 @@ public class AppProperties {
     private int handleLoopStep = 1000;
     private boolean logBlockLimitations = true;
     private int contractRefreshSeconds = 864000; // 10 days
+    // addresses with generated contracts kept in memory, also the limit of parsed ABIs
+    private int generatedContractsCacheSize = 10_000;
+    private boolean ethCallBatching = true;
+    private int ethCallBatchSize = 50;
+    private int ethCallBatchThreads = 4;
+    // waiting eth calls, callers block when the queue is full
+    private int ethCallQueueSize = 10_000;
+    private int ethCallCacheMb = 64;
+    // directory for persistent eth_call results, empty for memory only
+    private String ethCallCacheDir = "";
+    // limit of the segment files, the oldest segment is deleted
+    private int ethCallCacheDiskMb = 4096;
+    // blocks parsed in parallel before ordered persistence
+    private int blocksInFlight = 4;
+    private int receiptBatchSize = 100;
+    // more than 1 enables COPY of blocks in batches, for historical downloads
+    private int blockBulkBatchSize = 1;
+    // entries of hash and address index caches for block persistence
+    private int hashCacheSize = 1 << 20;
+    private int addressCacheSize = 1 << 20;
+    // log entries kept for parsers, a parser lagging more stops the log flow
+    private int logBusSize = 1 << 16;
+    // BLOCKING, SLEEPING, YIELDING or BUSY_SPIN
+    private String logBusWaitStrategy = "BLOCKING";
+    // workers of parsers with partitioned input, like vault actions
+    private int parserWorkers = 1;
+    // full reload of contract lookups, changes of this instance are applied immediately
+    private int contractRegistryRefreshSeconds = 600;
+    // a cached price of a block not older than this is used instead of a new calculation
+    private int priceFreshBlocks = 0;
+    private int priceCacheBlocks = 10_000;
+    // latest block timestamps loaded per network on start, older ones are read on demand
+    private int blockTimestampsPreload = 1_000_000;
 }
@@ -11,14 +11,20 @@ import org.springframework.validation.annotation.Validated;
 @Setter
 public class BscAppProperties implements NetworkPropertiesI {
 
-  private String web3Url = "";
+  private String web3Url = ""; // comma separated for several nodes
   private String abiProviderKey = "";
   private int blockStep = 100;
+  private boolean adaptiveBlockStep = true;
+  private int minBlockStep = 10;
+  private int maxBlockStep = 2000;
+  private int blockWindowTargetMs = 5000;
   private int web3Timeout = 60;
+  private int web3CallDeadline = 600; // seconds for all retries of one call
 
   // log parsing
   private boolean parseLog = true;
   private String startLogBlock = "";
+  private int logCatchUpThreads = 4;
   private boolean parseUniswapLog = false;
   private boolean parseHarvestLog = true;
   private boolean parseHardWorkLog = true;
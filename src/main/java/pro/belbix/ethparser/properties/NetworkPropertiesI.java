@@ -6,6 +6,7 @@ public interface NetworkPropertiesI {
   String getAbiProviderKey();
   boolean isParseLog();
   String getStartLogBlock();
+  int getLogCatchUpThreads();
   boolean isParseTransactions();
   String getStartTransactionBlock();
   boolean isParseBlocks();
@@ -22,5 +23,10 @@ public interface NetworkPropertiesI {
   boolean isParseDeployerEvents();
   boolean isGrabStratInfo();
   int getBlockStep();
+  boolean isAdaptiveBlockStep();
+  int getMinBlockStep();
+  int getMaxBlockStep();
+  int getBlockWindowTargetMs();
   int getWeb3Timeout();
+  int getWeb3CallDeadline();
 }
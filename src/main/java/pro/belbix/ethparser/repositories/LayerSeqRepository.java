@@ -1,8 +1,34 @@
 package pro.belbix.ethparser.repositories;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import pro.belbix.ethparser.entity.LayerSeqEntity;
 
 public interface LayerSeqRepository extends JpaRepository<LayerSeqEntity, Long> {
 
+    // ids of one nextval call, the sequence value is the start of a chunk
+    long CHUNK_SIZE = 10_000_000;
+
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = ""
+        + "create sequence if not exists layer_id_seq increment by " + CHUNK_SIZE)
+    void createSequence();
+
+    /**
+     * Continue the legacy layer_seq value if the sequence was never used.
+     */
+    @Transactional
+    @Query(nativeQuery = true, value = ""
+        + "select setval('layer_id_seq', :start, false) from layer_id_seq "
+        + "where not is_called")
+    Long initSequence(@Param("start") long start);
+
+    @Transactional
+    @Query(nativeQuery = true, value = "select nextval('layer_id_seq')")
+    long nextChunk();
+
 }
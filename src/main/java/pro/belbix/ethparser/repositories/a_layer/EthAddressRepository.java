@@ -1,8 +1,20 @@
 package pro.belbix.ethparser.repositories.a_layer;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import pro.belbix.ethparser.entity.a_layer.EthAddressEntity;
 
 public interface EthAddressRepository extends JpaRepository<EthAddressEntity, String> {
 
+  /**
+   * @return 0 if the address is already inserted by a concurrent transaction
+   */
+  @Modifying
+  @Query(nativeQuery = true, value = ""
+      + "insert into a_eth_address (address, idx) values (:address, :idx) "
+      + "on conflict do nothing")
+  int insertIfNotExist(@Param("address") String address, @Param("idx") long idx);
+
 }
@@ -1,14 +1,21 @@
 package pro.belbix.ethparser.repositories.a_layer;
 
+import java.util.Collection;
+import java.util.List;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.EntityGraph.EntityGraphType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import pro.belbix.ethparser.entity.a_layer.EthBlockEntity;
 
 public interface EthBlockRepository extends JpaRepository<EthBlockEntity, Long> {
 
     EthBlockEntity findFirstByNetworkOrderByNumberDesc(int network);
 
+    @Query("select b.number from EthBlockEntity b where b.number in :numbers")
+    List<Long> findExistNumbers(@Param("numbers") Collection<Long> numbers);
+
 //    @EntityGraph(value = "block-graph.all", type = EntityGraphType.FETCH)
 //    EthBlockEntity getByNumber(long number);
 
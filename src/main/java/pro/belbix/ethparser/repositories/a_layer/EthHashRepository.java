@@ -1,8 +1,20 @@
 package pro.belbix.ethparser.repositories.a_layer;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import pro.belbix.ethparser.entity.a_layer.EthHashEntity;
 
 public interface EthHashRepository extends JpaRepository<EthHashEntity, String> {
 
+  /**
+   * @return 0 if the hash is already inserted by a concurrent transaction
+   */
+  @Modifying
+  @Query(nativeQuery = true, value = ""
+      + "insert into a_eth_hash (hash, idx) values (:hash, :idx) "
+      + "on conflict do nothing")
+  int insertIfNotExist(@Param("hash") String hash, @Param("idx") long idx);
+
 }
@@ -1,5 +1,7 @@
 package pro.belbix.ethparser.repositories.eth;
 
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -12,4 +14,12 @@ public interface ContractSourceCodeRepository extends JpaRepository<ContractSour
       @Param("address") String address,
       @Param("network") String network
   );
+
+  @Query("select t.id, t.abi from ContractSourceCodeDTO t "
+      + "where t.abi is not null and t.id > :after "
+      + "order by t.id")
+  List<Object[]> fetchAbisAfter(
+      @Param("after") int after,
+      Pageable pageable
+  );
 }
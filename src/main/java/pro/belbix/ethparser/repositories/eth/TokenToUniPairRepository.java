@@ -58,4 +58,14 @@ public interface TokenToUniPairRepository extends JpaRepository<TokenToUniPairEn
         @Param("network") String network
     );
 
+    @Query("select t from TokenToUniPairEntity t "
+        + "left join fetch t.token f1 "
+        + "left join fetch f1.contract f1f1 "
+        + "left join fetch t.uniPair f2 "
+        + "left join fetch f2.contract f2f1 "
+        + "left join fetch f2.token1 f2f3 "
+        + "left join fetch f2.token0 f2f4 "
+        + "order by t.blockStart desc"
+    )
+    List<TokenToUniPairEntity> fetchAll();
 }
@@ -1,6 +1,10 @@
 package pro.belbix.ethparser.repositories.v0;
 
+import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import pro.belbix.ethparser.entity.v0.BlockCacheEntity;
 
 public interface BlockCacheRepository extends JpaRepository<BlockCacheEntity, Long> {
@@ -9,4 +13,14 @@ public interface BlockCacheRepository extends JpaRepository<BlockCacheEntity, Lo
 
     boolean existsByBlockAndNetwork(Long block, String network);
 
+    @Query("select t.block, t.blockDate from BlockCacheEntity t "
+        + "where t.network = :network "
+        + "and t.block < :before "
+        + "order by t.block desc")
+    List<Object[]> fetchTimestampsBefore(
+        @Param("network") String network,
+        @Param("before") long before,
+        Pageable pageable
+    );
+
 }
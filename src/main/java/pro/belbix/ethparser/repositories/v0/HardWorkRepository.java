@@ -1,10 +1,15 @@
 package pro.belbix.ethparser.repositories.v0;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import pro.belbix.ethparser.dto.v0.HardWorkDTO;
 
@@ -126,6 +131,18 @@ public interface HardWorkRepository extends JpaRepository<HardWorkDTO, String> {
         @Param("startTime") long startTime,
         @Param("endTime") long endTime);
 
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select t from HardWorkDTO t where "
+        + "t.vaultAddress = :vault "
+        + "and t.network = :network "
+        + "and t.blockDate between :startTime and :endTime "
+        + "order by t.blockDate")
+    Stream<HardWorkDTO> streamAllByVaultOrderByBlockDate(
+        @Param("vault") String vaultAddress,
+        @Param("network") String network,
+        @Param("startTime") long startTime,
+        @Param("endTime") long endTime);
+
     @Query(nativeQuery = true, value = "" +
         "select distinct on (vault_address) * from hard_work "
         + "where network = :network "
@@ -1,10 +1,15 @@
 package pro.belbix.ethparser.repositories.v0;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import pro.belbix.ethparser.dto.v0.HarvestDTO;
 
@@ -32,6 +37,22 @@ public interface HarvestRepository extends JpaRepository<HarvestDTO, String> {
         @Param("block_date") long blockDate
     );
 
+    @Query(nativeQuery = true, value = "select distinct on (vault_address) * from harvest_tx "
+        + "where network = :network "
+        + "and block_date <= :block_date "
+        + "order by vault_address, block_date desc")
+    List<HarvestDTO> fetchLastForAllVaults(
+        @Param("network") String network,
+        @Param("block_date") long blockDate
+    );
+
+    @Query(nativeQuery = true, value = ""
+        + "select distinct on (vault_address, owner) "
+        + "vault_address, owner, owner_balance_usd, block_date from harvest_tx "
+        + "where network = :network "
+        + "order by vault_address, owner, block_date desc")
+    List<Object[]> fetchLastOwnerBalances(@Param("network") String network);
+
     @Query(nativeQuery = true, value = "select * from harvest_tx "
         + "where vault_address = :vault "
         + "and last_usd_tvl != 0 "
@@ -172,6 +193,19 @@ public interface HarvestRepository extends JpaRepository<HarvestDTO, String> {
         @Param("network") String network
     );
 
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("select t from HarvestDTO t where "
+        + "t.vaultAddress = :vault "
+        + "and t.blockDate between :startTime and :endTime "
+        + "and t.network = :network "
+        + "order by t.blockDate")
+    Stream<HarvestDTO> streamAllByVaultOrderByBlockDate(
+        @Param("vault") String vaultAddress,
+        @Param("startTime") long startTime,
+        @Param("endTime") long endTime,
+        @Param("network") String network
+    );
+
     @Query(nativeQuery = true, value = "" +
         "select distinct on (vault_address) * from harvest_tx "
         + "where network = :network "
@@ -0,0 +1,12 @@
+package pro.belbix.ethparser.repositories.v0;
+
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import pro.belbix.ethparser.entity.v0.OwnerBalanceIndexEntity;
+
+public interface OwnerBalanceIndexRepository extends
+    JpaRepository<OwnerBalanceIndexEntity, String> {
+
+    List<OwnerBalanceIndexEntity> findAllByNetwork(String network);
+
+}
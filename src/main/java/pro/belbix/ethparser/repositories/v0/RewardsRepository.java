@@ -1,10 +1,15 @@
 package pro.belbix.ethparser.repositories.v0;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import pro.belbix.ethparser.dto.v0.HarvestDTO;
 import pro.belbix.ethparser.dto.v0.RewardDTO;
@@ -53,6 +58,19 @@ public interface RewardsRepository extends JpaRepository<RewardDTO, String> {
       @Param("network") String network
   );
 
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+  @Query("select t from RewardDTO t where "
+      + "t.vaultAddress = :vault "
+      + "and t.blockDate between :startTime and :endTime "
+      + "and t.network = :network "
+      + "order by t.blockDate")
+  Stream<RewardDTO> streamAllByVaultOrderByBlockDate(
+      @Param("vault") String vaultAddress,
+      @Param("startTime") long startTime,
+      @Param("endTime") long endTime,
+      @Param("network") String network
+  );
+
   @Query("select t from RewardDTO t where "
       + "t.blockDate between :startTime and :endTime "
       + "and t.network = :network "
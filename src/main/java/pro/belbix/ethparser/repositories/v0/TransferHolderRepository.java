@@ -0,0 +1,11 @@
+package pro.belbix.ethparser.repositories.v0;
+
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import pro.belbix.ethparser.entity.v0.TransferHolderEntity;
+
+public interface TransferHolderRepository extends JpaRepository<TransferHolderEntity, String> {
+
+    List<TransferHolderEntity> findAllByNetwork(String network);
+
+}
@@ -1,6 +1,7 @@
 package pro.belbix.ethparser.repositories.v0;
 
 import java.util.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -45,6 +46,17 @@ public interface TransferRepository extends JpaRepository<TransferDTO, String> {
         @Param("network") String network
     );
 
+    @Query("select t from TransferDTO t where "
+        + "t.network = :network "
+        + "and (t.blockDate > :blockDate or (t.blockDate = :blockDate and t.id > :id)) "
+        + "order by t.blockDate, t.id")
+    List<TransferDTO> fetchPageAfter(
+        @Param("network") String network,
+        @Param("blockDate") long blockDate,
+        @Param("id") String id,
+        Pageable pageable
+    );
+
     @Query(nativeQuery = true, value = ""
         + "select * from transfers where "
         + "(method_name is null or method_name like '0x%') "
@@ -32,6 +32,11 @@ public interface UniswapRepository extends JpaRepository<UniswapDTO, String> {
 
     List<UniswapDTO> findAllByOrderByBlockDate();
 
+    @Query(nativeQuery = true, value = ""
+        + "select distinct on (owner) owner, owner_balance_usd, block_date from uni_tx "
+        + "order by owner, block_date desc")
+    List<Object[]> fetchLastOwnerBalances();
+
     List<UniswapDTO> findAllByBlockDateGreaterThanOrderByBlockDate(long from);
 
     @Query("select t from UniswapDTO t where "
@@ -4,6 +4,8 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import pro.belbix.ethparser.dto.v0.HarvestDTO;
@@ -31,24 +33,13 @@ public class HarvestTvlDBService {
         if (harvestTxEntities == null) {
             return tvlHistoryDTOS;
         }
-        Instant lastDate = null;
+        Predicate<HarvestDTO> hourly = hourlyFilter();
         for (HarvestDTO harvestTxEntity : harvestTxEntities) {
             try {
-                Instant date = Instant.ofEpochSecond(harvestTxEntity.getBlockDate());
-                if (lastDate != null && Duration.between(lastDate, date).getSeconds() < 60 * 60) {
+                if (!hourly.test(harvestTxEntity)) {
                     continue;
                 }
-
-                TvlHistory tvlHistoryDTO = new TvlHistory();
-                tvlHistoryDTO.setCalculateTime(harvestTxEntity.getBlockDate());
-                tvlHistoryDTO.setLastTvl(harvestTxEntity.getLastUsdTvl());
-                tvlHistoryDTO.setLastTvlNative(harvestTxEntity.getLastTvl());
-                tvlHistoryDTO.setSharePrice(harvestTxEntity.getSharePrice());
-                tvlHistoryDTO.setLastOwnersCount(harvestTxEntity.getOwnerCount());
-
-                lastDate = date;
-
-                tvlHistoryDTOS.add(tvlHistoryDTO);
+                tvlHistoryDTOS.add(toTvlHistory(harvestTxEntity));
             } catch (Exception e) {
                 log.error("Error convert " + harvestTxEntity, e);
                 break;
@@ -57,4 +48,40 @@ public class HarvestTvlDBService {
         return tvlHistoryDTOS;
     }
 
+    /**
+     * The same as {@link #fetchTvlByVault} reading rows through a cursor, must be called and
+     * consumed inside a transaction.
+     */
+    public Stream<TvlHistory> streamTvlByVault(
+        String address, long startTime, long endTime, String network
+    ) {
+        return harvestRepository
+            .streamAllByVaultOrderByBlockDate(address, startTime, endTime, network)
+            .filter(hourlyFilter())
+            .map(HarvestTvlDBService::toTvlHistory);
+    }
+
+    // skip harvests in less than an hour after the last taken
+    private static Predicate<HarvestDTO> hourlyFilter() {
+        Instant[] lastDate = {null};
+        return harvest -> {
+            Instant date = Instant.ofEpochSecond(harvest.getBlockDate());
+            if (lastDate[0] != null && Duration.between(lastDate[0], date).getSeconds() < 60 * 60) {
+                return false;
+            }
+            lastDate[0] = date;
+            return true;
+        };
+    }
+
+    private static TvlHistory toTvlHistory(HarvestDTO harvest) {
+        TvlHistory tvlHistoryDTO = new TvlHistory();
+        tvlHistoryDTO.setCalculateTime(harvest.getBlockDate());
+        tvlHistoryDTO.setLastTvl(harvest.getLastUsdTvl());
+        tvlHistoryDTO.setLastTvlNative(harvest.getLastTvl());
+        tvlHistoryDTO.setSharePrice(harvest.getSharePrice());
+        tvlHistoryDTO.setLastOwnersCount(harvest.getOwnerCount());
+        return tvlHistoryDTO;
+    }
+
 }
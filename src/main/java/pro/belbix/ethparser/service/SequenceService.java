@@ -1,16 +1,26 @@
 package pro.belbix.ethparser.service;
 
+import static pro.belbix.ethparser.repositories.LayerSeqRepository.CHUNK_SIZE;
+
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.PostConstruct;
+import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import pro.belbix.ethparser.entity.LayerSeqEntity;
 import pro.belbix.ethparser.repositories.LayerSeqRepository;
 
+/**
+ * Allocates ids from chunks of the DB sequence layer_id_seq. Threads take ranges from the current
+ * chunk with CAS, the DB is called only for a new chunk. Different app instances get different
+ * chunks from the sequence.
+ */
 @Service
+@Log4j2
 public class SequenceService {
 
     private final LayerSeqRepository layerSeqRepository;
-    long seq;
+    private final AtomicReference<Chunk> chunk = new AtomicReference<>(new Chunk(0, 0));
 
     public SequenceService(LayerSeqRepository layerSeqRepository) {
         this.layerSeqRepository = layerSeqRepository;
@@ -18,29 +28,52 @@ public class SequenceService {
 
     @PostConstruct
     private void init() {
-        seq = loadSeq().getSeq();
+        layerSeqRepository.createSequence();
+        List<LayerSeqEntity> legacySeq = layerSeqRepository.findAll();
+        long start = legacySeq.isEmpty() ? 1 : legacySeq.get(0).getSeq() + 1;
+        if (layerSeqRepository.initSequence(start) != null) {
+            log.info("Layer id sequence started from {}", start);
+        }
     }
 
-    private LayerSeqEntity loadSeq() {
-        List<LayerSeqEntity> seqL = layerSeqRepository.findAll();
-        if (seqL.isEmpty()) {
-            LayerSeqEntity seq = new LayerSeqEntity();
-            seq.setSeq(0L);
-            layerSeqRepository.save(seq);
-            return seq;
+    /**
+     * @return the value before the range, ids from value + 1 to value + amount + 1 are released
+     */
+    public long releaseRange(long amount) {
+        long size = amount + 1;
+        if (size > CHUNK_SIZE) {
+            throw new IllegalStateException("Range " + amount + " more than chunk " + CHUNK_SIZE);
+        }
+        while (true) {
+            Chunk current = chunk.get();
+            if (current.end - current.next >= size) {
+                if (chunk.compareAndSet(current, new Chunk(current.next + size, current.end))) {
+                    return current.next - 1;
+                }
+                continue;
+            }
+            nextChunk(current);
         }
-        return seqL.get(0);
     }
 
-    // todo replace on the DB sequence
-    public synchronized long releaseRange(long amount) {
-        long oldSeq = seq;
-        seq = oldSeq + amount + 1;
-        LayerSeqEntity seqEntity = new LayerSeqEntity();
-        seqEntity.setSeq(seq);
-        layerSeqRepository.deleteAll();
-        layerSeqRepository.save(seqEntity);
-        return oldSeq;
+    private synchronized void nextChunk(Chunk exhausted) {
+        if (chunk.get() != exhausted) {
+            // another thread already took a new chunk
+            return;
+        }
+        long start = layerSeqRepository.nextChunk();
+        chunk.set(new Chunk(start, start + CHUNK_SIZE));
+    }
+
+    private static class Chunk {
+
+        private final long next;
+        private final long end;
+
+        private Chunk(long next, long end) {
+            this.next = next;
+            this.end = end;
+        }
     }
 
 }
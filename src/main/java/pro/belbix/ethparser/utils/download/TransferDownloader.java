@@ -53,6 +53,8 @@ public class TransferDownloader {
     if (contractName == null || contractName.isEmpty()) {
       throw new IllegalStateException("Empty contract");
     }
+    // saveDto applies transfers to the ledger, load it before any transaction
+    transferDBService.loadLedger(ETH_NETWORK);
     new LoopHandler(appProperties.getHandleLoopStep(),
         (from, end) -> parse(from, end,
             contractDbService
@@ -1,5 +1,7 @@
 package pro.belbix.ethparser.utils.recalculation;
 
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
 import java.util.List;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Value;
@@ -9,6 +11,7 @@ import pro.belbix.ethparser.dto.v0.UniswapDTO;
 import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.repositories.v0.HarvestRepository;
 import pro.belbix.ethparser.repositories.v0.UniswapRepository;
+import pro.belbix.ethparser.web3.harvest.db.OwnerCountIndex;
 import pro.belbix.ethparser.web3.harvest.db.VaultActionsDBService;
 import pro.belbix.ethparser.web3.uniswap.db.UniswapDbService;
 
@@ -21,6 +24,7 @@ public class OwnerCountRecalculate {
   private final UniswapDbService uniswapDbService;
   private final UniswapRepository uniswapRepository;
   private final AppProperties appProperties;
+  private final OwnerCountIndex ownerCountIndex;
 
   @Value("${owners-count-recalculate.from:}")
   private Integer from;
@@ -35,54 +39,65 @@ public class OwnerCountRecalculate {
       VaultActionsDBService vaultActionsDBService,
       UniswapDbService uniswapDbService,
       UniswapRepository uniswapRepository,
-      AppProperties appProperties) {
+      AppProperties appProperties,
+      OwnerCountIndex ownerCountIndex) {
     this.harvestRepository = harvestRepository;
     this.vaultActionsDBService = vaultActionsDBService;
     this.uniswapDbService = uniswapDbService;
     this.uniswapRepository = uniswapRepository;
     this.appProperties = appProperties;
+    this.ownerCountIndex = ownerCountIndex;
   }
 
+  /**
+   * Rebuild the owner balance index from the whole history of the util network and fill counts of
+   * actions selected by the options. The index is replayed over all actions in any case, counts
+   * depend on the previous state.
+   */
   public void start() {
+    String network = appProperties.getUtilNetwork();
+    List<HarvestDTO> harvests = harvestRepository.findAllByNetworkOrderByBlockDate(network);
+    List<UniswapDTO> uniswaps = ETH_NETWORK.equals(network)
+        ? uniswapRepository.findAllByOrderByBlockDate()
+        : List.of();
+    ownerCountIndex.reset(network);
+
     int count = 0;
-    if (hv) {
-      List<HarvestDTO> harvestDTOList;
-      if (empty != null) {
-        harvestDTOList = harvestRepository.fetchAllWithoutCounts(appProperties.getUtilNetwork());
-      } else if (from == null) {
-        harvestDTOList = harvestRepository
-            .findAllByNetworkOrderByBlockDate(appProperties.getUtilNetwork());
-      } else {
-        harvestDTOList = harvestRepository
-            .findAllByBlockDateGreaterThanAndNetworkOrderByBlockDate(from, appProperties.getUtilNetwork());
-      }
-      for (HarvestDTO harvestDTO : harvestDTOList) {
+    int h = 0;
+    int u = 0;
+    while (h < harvests.size() || u < uniswaps.size()) {
+      boolean nextHarvest = u >= uniswaps.size()
+          || (h < harvests.size()
+          && harvests.get(h).getBlockDate() <= uniswaps.get(u).getBlockDate());
+      if (nextHarvest) {
+        HarvestDTO harvestDTO = harvests.get(h++);
+        boolean save = hv && isSelected(harvestDTO.getBlockDate())
+            && (empty == null || harvestDTO.getAllPoolsOwnersCount() == null);
         vaultActionsDBService.fillOwnersCount(harvestDTO);
-        harvestRepository.save(harvestDTO);
-        count++;
-        if (count % 100 == 0) {
-          log.info("Harvest Recalculated " + count + ", last " + harvestDTO.print());
+        vaultActionsDBService.applyOwnerBalance(harvestDTO);
+        if (save) {
+          harvestRepository.save(harvestDTO);
         }
-      }
-    }
-
-    if (uni) {
-      List<UniswapDTO> uniswapDTOS;
-      if (from == null) {
-        uniswapDTOS = uniswapRepository.findAllByOrderByBlockDate();
       } else {
-        uniswapDTOS = uniswapRepository.findAllByBlockDateGreaterThanOrderByBlockDate(from);
-      }
-
-      count = 0;
-      for (UniswapDTO uniswapDTO : uniswapDTOS) {
+        UniswapDTO uniswapDTO = uniswaps.get(u++);
         uniswapDbService.fillOwnersCount(uniswapDTO);
-        uniswapRepository.save(uniswapDTO);
-        count++;
-        if (count % 100 == 0) {
-          log.info("Uniswap Recalculated " + count + ", last " + uniswapDTO.print());
+        uniswapDbService.applyOwnerBalance(uniswapDTO);
+        if (uni && isSelected(uniswapDTO.getBlockDate())) {
+          uniswapRepository.save(uniswapDTO);
         }
       }
+      count++;
+      if (count % 1000 == 0) {
+        ownerCountIndex.flush(network);
+        log.info("Owners count recalculated {} of {}", count, harvests.size() + uniswaps.size());
+      }
     }
+    ownerCountIndex.flush(network);
+    log.info("Owners count recalculated for {} harvest and {} uniswap actions",
+        harvests.size(), uniswaps.size());
+  }
+
+  private boolean isSelected(Long blockDate) {
+    return from == null || (blockDate != null && blockDate > from);
   }
 }
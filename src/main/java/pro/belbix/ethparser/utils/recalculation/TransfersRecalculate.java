@@ -12,6 +12,7 @@ import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.repositories.v0.TransferRepository;
 import pro.belbix.ethparser.repositories.v0.UniswapRepository;
 import pro.belbix.ethparser.web3.erc20.db.TransferDBService;
+import pro.belbix.ethparser.web3.erc20.db.TransferLedger;
 import pro.belbix.ethparser.web3.erc20.parser.TransferParser;
 import pro.belbix.ethparser.web3.prices.PriceProvider;
 
@@ -25,6 +26,7 @@ public class TransfersRecalculate {
   private final UniswapRepository uniswapRepository;
   private final AppProperties appProperties;
   private final PriceProvider priceProvider;
+  private final TransferLedger transferLedger;
 
   @Value("${transfer-recalculate.fromBlockDate:0}")
   private long fromBlockDate = 0;
@@ -48,13 +50,15 @@ public class TransfersRecalculate {
       TransferRepository transferRepository,
       TransferParser transferParser,
       UniswapRepository uniswapRepository,
-      AppProperties appProperties, PriceProvider priceProvider) {
+      AppProperties appProperties, PriceProvider priceProvider,
+      TransferLedger transferLedger) {
     this.transferDBService = transferDBService;
     this.transferRepository = transferRepository;
     this.transferParser = transferParser;
     this.uniswapRepository = uniswapRepository;
     this.appProperties = appProperties;
     this.priceProvider = priceProvider;
+    this.transferLedger = transferLedger;
   }
 
   public void start() {
@@ -73,6 +77,10 @@ public class TransfersRecalculate {
   }
 
   private void recalculateBalances() {
+    if (fromBlockDate == 0 && !onlyType) {
+      recalculateAllWithLedger();
+      return;
+    }
     List<TransferDTO> dtos = transferRepository
         .fetchAllFromBlockDate(fromBlockDate, appProperties.getUtilNetwork());
     List<TransferDTO> result = new ArrayList<>();
@@ -106,6 +114,47 @@ public class TransfersRecalculate {
     if (!result.isEmpty()) {
       transferRepository.saveAll(result);
     }
+    // types could be changed
+    transferLedger.rebuild(appProperties.getUtilNetwork());
+  }
+
+  private void recalculateAllWithLedger() {
+    String network = appProperties.getUtilNetwork();
+    transferLedger.clear(network);
+    List<TransferDTO> sameDate = new ArrayList<>();
+    transferLedger.forEachPage(network, dtos -> {
+      for (TransferDTO dto : dtos) {
+        try {
+          if (!sameDate.isEmpty() && sameDate.get(0).getBlockDate() != dto.getBlockDate()) {
+            saveWithLedgerBalances(sameDate);
+          }
+          transferParser.fillMethodName(dto);
+          transferParser.fillTransferType(dto);
+          transferDBService.fillProfitFromLedger(dto);
+          sameDate.add(dto);
+        } catch (Exception e) {
+          log.error("Error with " + dto.toString());
+          throw e;
+        }
+      }
+      transferLedger.flush(network);
+    });
+    saveWithLedgerBalances(sameDate);
+    transferLedger.flush(network);
+  }
+
+  // balances at the end of the block date, as they are on chain
+  private void saveWithLedgerBalances(List<TransferDTO> sameDate) {
+    if (sameDate.isEmpty()) {
+      return;
+    }
+    for (TransferDTO dto : sameDate) {
+      dto.setBalanceOwner(transferLedger.balance(dto.getNetwork(), dto.getOwner()));
+      dto.setBalanceRecipient(transferLedger.balance(dto.getNetwork(), dto.getRecipient()));
+    }
+    transferRepository.saveAll(sameDate);
+    log.info("Save " + sameDate.get(sameDate.size() - 1).print());
+    sameDate.clear();
   }
 
   private void reparseEmptyMethods() {
@@ -13,6 +13,7 @@ import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.repositories.v0.HarvestRepository;
 import pro.belbix.ethparser.repositories.v0.HarvestTvlRepository;
 import pro.belbix.ethparser.web3.harvest.db.VaultActionsDBService;
+import pro.belbix.ethparser.web3.harvest.db.VaultTvlAggregator;
 
 @Service
 @Log4j2
@@ -58,11 +59,19 @@ public class TvlRecalculate {
           .findAllByBlockDateGreaterThanAndNetworkOrderByBlockDate(
               from, appProperties.getUtilNetwork());
     }
+    // one walk in the block order with own vault states instead of a query per vault
+    VaultTvlAggregator aggregator = new VaultTvlAggregator();
+    if (from == null) {
+      aggregator.load(appProperties.getUtilNetwork(), List.of());
+    } else {
+      vaultActionsDBService.loadTvlState(aggregator, appProperties.getUtilNetwork(), from);
+    }
     int count = 0;
     List<HarvestTvlEntity> tvls = new ArrayList<>();
     for (HarvestDTO harvestDTO : harvestDTOList) {
       count++;
-      HarvestTvlEntity tvl = vaultActionsDBService.calculateHarvestTvl(harvestDTO, false);
+      HarvestTvlEntity tvl =
+          vaultActionsDBService.calculateHarvestTvl(harvestDTO, false, aggregator);
       tvls.add(tvl);
       if (count % 100 == 0) {
         harvestTvlRepository.saveAll(tvls);
@@ -0,0 +1,97 @@
+package pro.belbix.ethparser.web3;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Adaptive size of block window for flowables. Grows the step when full windows are small and
+ * fast, shrinks it on oversize errors and slow responses.
+ */
+@Log4j2
+public class BlockStepController {
+
+  public static final int LOG_RESULTS_LIMIT = 10_000;
+  private static final double GROW_FACTOR = 1.5;
+
+  private final String name;
+  private final int minStep;
+  private final int maxStep;
+  private final long targetLatencyMs;
+  private final int resultsLimit;
+  private final Timer windowTimer;
+  private volatile int step;
+
+  public BlockStepController(
+      String name,
+      int initialStep,
+      int minStep,
+      int maxStep,
+      long targetLatencyMs,
+      int resultsLimit,
+      String network,
+      MeterRegistry meterRegistry) {
+    this.name = name;
+    this.minStep = Math.max(1, Math.min(minStep, initialStep));
+    this.maxStep = Math.max(maxStep, initialStep);
+    this.targetLatencyMs = targetLatencyMs;
+    this.resultsLimit = resultsLimit;
+    this.step = initialStep;
+    Gauge.builder("ethparser.block.step", this, BlockStepController::getStep)
+        .tag("flow", name)
+        .tag("network", network)
+        .register(meterRegistry);
+    this.windowTimer = Timer.builder("ethparser.block.window")
+        .tag("flow", name)
+        .tag("network", network)
+        .register(meterRegistry);
+  }
+
+  /**
+   * Constant step, the controller only collects metrics.
+   */
+  public static BlockStepController fixed(
+      String name, int step, String network, MeterRegistry meterRegistry) {
+    return new BlockStepController(
+        name, step, step, step, Long.MAX_VALUE, Integer.MAX_VALUE, network, meterRegistry);
+  }
+
+  public int getStep() {
+    return step;
+  }
+
+  /**
+   * @param blocks    size of the handled window
+   * @param results   amount of fetched items for the window
+   * @param latencyMs time spent for fetching the window
+   */
+  public void onSuccess(int blocks, int results, long latencyMs) {
+    windowTimer.record(latencyMs, TimeUnit.MILLISECONDS);
+    int current = step;
+    if (results > resultsLimit / 2 || latencyMs > targetLatencyMs * 2) {
+      changeStep(current / 2);
+      return;
+    }
+    // grow only for full windows, on the chain head windows are small anyway
+    if (blocks >= current && latencyMs < targetLatencyMs && results < resultsLimit / 4) {
+      changeStep((int) Math.ceil(current * GROW_FACTOR));
+    }
+  }
+
+  /**
+   * Call on "more than N results", timeouts and other errors related to the window size.
+   */
+  public void onFailure() {
+    changeStep(step / 2);
+  }
+
+  private void changeStep(int newStep) {
+    newStep = Math.max(minStep, Math.min(maxStep, newStep));
+    if (newStep != step) {
+      log.info("{} block step changed {} -> {}", name, step, newStep);
+      step = newStep;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package pro.belbix.ethparser.web3;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timestamps of blocks per network in primitive chunks of consecutive block numbers. Zero means an
+ * unknown block, a block can't have zero timestamp.
+ */
+class BlockTimestampIndex {
+
+  private static final int CHUNK_BITS = 10;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  private final Map<String, Map<Long, AtomicLongArray>> chunks = new ConcurrentHashMap<>();
+
+  /**
+   * @return timestamp in seconds or 0 if the block is unknown
+   */
+  long get(String network, long block) {
+    Map<Long, AtomicLongArray> networkChunks = chunks.get(network);
+    if (networkChunks == null) {
+      return 0;
+    }
+    AtomicLongArray chunk = networkChunks.get(block >>> CHUNK_BITS);
+    if (chunk == null) {
+      return 0;
+    }
+    return chunk.get((int) (block & (CHUNK_SIZE - 1)));
+  }
+
+  void put(String network, long block, long timestamp) {
+    chunks.computeIfAbsent(network, n -> new ConcurrentHashMap<>())
+        .computeIfAbsent(block >>> CHUNK_BITS, c -> new AtomicLongArray(CHUNK_SIZE))
+        .set((int) (block & (CHUNK_SIZE - 1)), timestamp);
+  }
+}
@@ -1,47 +1,160 @@
 package pro.belbix.ethparser.web3;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 import lombok.extern.log4j.Log4j2;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.web3j.protocol.core.methods.response.EthBlock.Block;
 import pro.belbix.ethparser.entity.v0.BlockCacheEntity;
+import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.repositories.v0.BlockCacheRepository;
 
 @Service
 @Log4j2
 public class EthBlockService {
 
+  private static final int LOAD_PAGE_SIZE = 50_000;
+  private static final int FETCH_BATCH_SIZE = 100;
+  private final BlockTimestampIndex timestamps = new BlockTimestampIndex();
+  private final Set<String> loadedNetworks = ConcurrentHashMap.newKeySet();
+
   private final Web3Functions web3;
   private final BlockCacheRepository blockCacheRepository;
+  private final AppProperties appProperties;
+  private final Counter indexHits;
+  private final Counter indexMisses;
 
   public EthBlockService(Web3Functions web3,
-      BlockCacheRepository blockCacheRepository) {
+      BlockCacheRepository blockCacheRepository,
+      AppProperties appProperties,
+      MeterRegistry meterRegistry) {
     this.web3 = web3;
     this.blockCacheRepository = blockCacheRepository;
+    this.appProperties = appProperties;
+    this.indexHits = meterRegistry.counter("ethparser.blocks.timestamps", "result", "hit");
+    this.indexMisses = meterRegistry.counter("ethparser.blocks.timestamps", "result", "miss");
   }
 
-  public synchronized long getTimestampSecForBlock(long blockNumber, String network) {
+  public long getTimestampSecForBlock(long blockNumber, String network) {
+    loadIndex(network);
+    long timestamp = timestamps.get(network, blockNumber);
+    if (timestamp != 0) {
+      indexHits.increment();
+      return timestamp;
+    }
+    indexMisses.increment();
     BlockCacheEntity cachedBlock =
         blockCacheRepository.findFirstByBlockAndNetwork(blockNumber, network);
     if (cachedBlock != null) {
+      timestamps.put(network, blockNumber, cachedBlock.getBlockDate());
       return cachedBlock.getBlockDate();
     }
     Block block = web3.findBlockByNumber(blockNumber, false, network).getBlock();
     if (block == null) {
       throw new IllegalStateException("Can't fetch block for " + blockNumber);
     }
+    BlockCacheEntity entity = toEntity(block, network);
+    timestamps.put(network, blockNumber, entity.getBlockDate());
+    saveBlocks(List.of(entity));
+    return entity.getBlockDate();
+  }
+
+  /**
+   * Put timestamps of the given blocks to the index with a minimum of requests: one database query
+   * and one JSON-RPC batch per chunk of unknown blocks. Blocks not returned by the node are left
+   * for the regular lookup.
+   */
+  public void prefetchTimestamps(Collection<Long> blockNumbers, String network) {
+    loadIndex(network);
+    List<Long> missing = new TreeSet<>(blockNumbers).stream()
+        .filter(number -> timestamps.get(network, number) == 0)
+        .collect(Collectors.toList());
+    for (int i = 0; i < missing.size(); i += FETCH_BATCH_SIZE) {
+      List<Long> chunk = missing.subList(i, Math.min(i + FETCH_BATCH_SIZE, missing.size()));
+      Set<Long> toFetch = new TreeSet<>(chunk);
+      for (BlockCacheEntity cached : blockCacheRepository.findAllById(chunk)) {
+        if (network.equals(cached.getNetwork())) {
+          timestamps.put(network, cached.getBlock(), cached.getBlockDate());
+          toFetch.remove(cached.getBlock());
+        }
+      }
+      if (toFetch.isEmpty()) {
+        continue;
+      }
+      List<BlockCacheEntity> fetched = new ArrayList<>();
+      web3.findBlocksByNumbersBatch(toFetch, network).forEach(block -> {
+        if (block == null || block.getNumber() == null) {
+          return;
+        }
+        BlockCacheEntity entity = toEntity(block, network);
+        timestamps.put(network, entity.getBlock(), entity.getBlockDate());
+        fetched.add(entity);
+      });
+      saveBlocks(fetched);
+      log.info("{} prefetched {} of {} block timestamps", network, fetched.size(), toFetch.size());
+    }
+  }
+
+  /**
+   * Fill the index with the latest cached blocks once per network, older blocks are read on
+   * demand.
+   */
+  private void loadIndex(String network) {
+    if (loadedNetworks.contains(network)) {
+      return;
+    }
+    synchronized (loadedNetworks) {
+      if (loadedNetworks.contains(network)) {
+        return;
+      }
+      long start = System.currentTimeMillis();
+      int limit = appProperties.getBlockTimestampsPreload();
+      int loaded = 0;
+      long before = Long.MAX_VALUE;
+      while (loaded < limit) {
+        List<Object[]> page = blockCacheRepository.fetchTimestampsBefore(
+            network, before, PageRequest.of(0, Math.min(LOAD_PAGE_SIZE, limit - loaded)));
+        for (Object[] row : page) {
+          before = ((Number) row[0]).longValue();
+          timestamps.put(network, before, ((Number) row[1]).longValue());
+        }
+        loaded += page.size();
+        if (page.size() < LOAD_PAGE_SIZE) {
+          break;
+        }
+      }
+      loadedNetworks.add(network);
+      log.info("{} loaded {} block timestamps in {}ms",
+          network, loaded, System.currentTimeMillis() - start);
+    }
+  }
 
-    cachedBlock = new BlockCacheEntity();
-    cachedBlock.setBlock(blockNumber);
-    cachedBlock.setBlockDate(extractDateFromBlock(block));
-    cachedBlock.setNetwork(network);
+  private void saveBlocks(List<BlockCacheEntity> blocks) {
+    if (blocks.isEmpty()) {
+      return;
+    }
     try {
-      blockCacheRepository.save(cachedBlock);
+      blockCacheRepository.saveAll(blocks);
     } catch (Exception e) {
       // we can have multiply trying to save the same block
-      log.info("Error save block {}", e.getMessage());
+      log.info("Error save blocks {}", e.getMessage());
     }
+  }
 
-    return extractDateFromBlock(block);
+  private static BlockCacheEntity toEntity(Block block, String network) {
+    BlockCacheEntity entity = new BlockCacheEntity();
+    entity.setBlock(block.getNumber().longValue());
+    entity.setBlockDate(extractDateFromBlock(block));
+    entity.setNetwork(network);
+    return entity;
   }
 
   private static long extractDateFromBlock(Block block) {
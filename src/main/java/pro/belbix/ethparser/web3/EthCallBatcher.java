@@ -0,0 +1,145 @@
+package pro.belbix.ethparser.web3;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+import org.web3j.protocol.core.DefaultBlockParameter;
+
+/**
+ * Coalesces eth_call requests from different threads into JSON-RPC batches. A worker takes the
+ * first waiting request and everything else that is queued at this moment, so a lonely call is
+ * sent without delay and concurrent calls share one round-trip. The sender tries a batch once,
+ * requests that it leaves incomplete fail with {@link NotSentException} and callers send them
+ * directly with retries on their own threads, so a failing endpoint doesn't block the workers.
+ */
+@Log4j2
+@SuppressWarnings("rawtypes")
+class EthCallBatcher {
+
+  private final BlockingQueue<EthCallRequest> queue;
+  private final AtomicBoolean run = new AtomicBoolean(true);
+  private final int maxBatchSize;
+  private final Consumer<List<EthCallRequest>> sender;
+
+  /**
+   * @param sender sends requests of one network and completes their futures
+   */
+  EthCallBatcher(int threads, int maxBatchSize, int queueSize,
+      Consumer<List<EthCallRequest>> sender) {
+    this.queue = new LinkedBlockingQueue<>(Math.max(queueSize, 1));
+    this.maxBatchSize = Math.max(maxBatchSize, 1);
+    this.sender = sender;
+    for (int i = 0; i < threads; i++) {
+      Thread thread = new Thread(this::loop, "eth-call-batcher-" + i);
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  CompletableFuture<List<Type>> submit(
+      Function function, String address, DefaultBlockParameter block, String network) {
+    EthCallRequest request = new EthCallRequest(function, address, block, network);
+    try {
+      queue.put(request);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      request.getFuture().completeExceptionally(e);
+    }
+    return request.getFuture();
+  }
+
+  void stop() {
+    run.set(false);
+  }
+
+  private void loop() {
+    while (run.get()) {
+      try {
+        EthCallRequest first = queue.poll(1, SECONDS);
+        if (first == null) {
+          continue;
+        }
+        List<EthCallRequest> batch = new ArrayList<>();
+        batch.add(first);
+        queue.drainTo(batch, maxBatchSize - 1);
+        Map<String, List<EthCallRequest>> byNetwork = new LinkedHashMap<>();
+        for (EthCallRequest request : batch) {
+          byNetwork.computeIfAbsent(request.getNetwork(), n -> new ArrayList<>()).add(request);
+        }
+        for (List<EthCallRequest> requests : byNetwork.values()) {
+          send(requests);
+        }
+      } catch (InterruptedException ignored) {
+      } catch (Exception e) {
+        log.error("Error in eth call batcher loop", e);
+      }
+    }
+  }
+
+  private void send(List<EthCallRequest> requests) {
+    try {
+      log.trace("Send {} eth calls in one batch", requests.size());
+      sender.accept(requests);
+    } catch (Exception e) {
+      requests.forEach(r -> r.getFuture().completeExceptionally(e));
+      return;
+    }
+    // the rest should be sent one by one, don't leave callers hanging
+    requests.stream()
+        .filter(r -> !r.getFuture().isDone())
+        .forEach(r -> r.getFuture().completeExceptionally(new NotSentException()));
+  }
+
+  static boolean isNotSent(Throwable e) {
+    while (e != null) {
+      if (e instanceof NotSentException) {
+        return true;
+      }
+      e = e.getCause();
+    }
+    return false;
+  }
+
+  static class NotSentException extends IllegalStateException {
+
+    NotSentException() {
+      super("Eth call was not sent in a batch");
+    }
+
+    // thrown for every lonely call, the stack trace is useless
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  @Getter
+  static class EthCallRequest {
+
+    private final Function function;
+    private final String address;
+    private final DefaultBlockParameter block;
+    private final String network;
+    private final CompletableFuture<List<Type>> future = new CompletableFuture<>();
+
+    EthCallRequest(Function function, String address, DefaultBlockParameter block,
+        String network) {
+      this.function = function;
+      this.address = address;
+      this.block = block;
+      this.network = network;
+    }
+  }
+}
@@ -0,0 +1,404 @@
+package pro.belbix.ethparser.web3;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Results of eth_calls at a fixed block never change. Keeps them in a LRU map bounded by the size
+ * of keys and values. If a directory is set, results also go to append-only segment files and an
+ * index of them is loaded on start, so the next run reuses results of the previous one. The
+ * number of segments is limited, the oldest segment is deleted together with its index entries.
+ */
+@Log4j2
+class EthCallCache {
+
+  final static long SEGMENT_SIZE = 64L * 1024 * 1024;
+  private final static int OFFSET_BITS = 40;
+  private final static int HEADER_SIZE = 8;
+  // java strings and map entries overhead
+  private final static int ENTRY_OVERHEAD = 64;
+  private final static String SEGMENT_PREFIX = "eth-call-";
+  private final static String SEGMENT_SUFFIX = ".seg";
+
+  private final long maxBytes;
+  private final LinkedHashMap<String, String> memory = new LinkedHashMap<>(1024, 0.75f, true);
+  private long bytes = 0;
+
+  private final Path dir;
+  private final long segmentSize;
+  private final int maxSegments;
+  // key hash -> segment number and offset, collisions are checked by the stored key
+  private final DiskIndex diskIndex = new DiskIndex(1024);
+  private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+  private int firstSegment = 0;
+  private int lastSegment = -1;
+  private long currentSegmentSize = 0;
+
+  private final Counter hits;
+  private final Counter diskHits;
+  private final Counter misses;
+
+  EthCallCache(long maxBytes, String dir, long maxDiskBytes, MeterRegistry meterRegistry) {
+    this(maxBytes, dir, maxDiskBytes, SEGMENT_SIZE, meterRegistry);
+  }
+
+  EthCallCache(long maxBytes, String dir, long maxDiskBytes, long segmentSize,
+      MeterRegistry meterRegistry) {
+    this.maxBytes = maxBytes;
+    this.dir = dir == null || dir.isBlank() ? null : Path.of(dir);
+    this.segmentSize = segmentSize;
+    this.maxSegments = (int) Math.max(2, maxDiskBytes / segmentSize);
+    hits = meterRegistry.counter("ethparser.web3.call.cache", "result", "hit");
+    diskHits = meterRegistry.counter("ethparser.web3.call.cache", "result", "disk");
+    misses = meterRegistry.counter("ethparser.web3.call.cache", "result", "miss");
+    Gauge.builder("ethparser.web3.call.cache.bytes", this, EthCallCache::getBytes)
+        .register(meterRegistry);
+    if (this.dir != null) {
+      try {
+        openSegments();
+        log.info("Loaded {} eth call results from {} segments in {}",
+            diskIndex.size(), segments.size(), this.dir);
+      } catch (IOException e) {
+        throw new IllegalStateException("Can't open eth call cache in " + dir, e);
+      }
+    }
+  }
+
+  static String key(String network, String address, String data, long block) {
+    return network + ":" + block + ":" + address.toLowerCase() + ":" + data;
+  }
+
+  String get(String key) {
+    String value;
+    synchronized (memory) {
+      value = memory.get(key);
+    }
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+    value = readDisk(key);
+    if (value != null) {
+      diskHits.increment();
+      putMemory(key, value);
+      return value;
+    }
+    misses.increment();
+    return null;
+  }
+
+  void put(String key, String value) {
+    putMemory(key, value);
+    writeDisk(key, value);
+  }
+
+  long getBytes() {
+    synchronized (memory) {
+      return bytes;
+    }
+  }
+
+  void close() {
+    for (FileChannel segment : segments.values()) {
+      try {
+        segment.close();
+      } catch (IOException e) {
+        log.warn("Can't close eth call cache segment", e);
+      }
+    }
+  }
+
+  private void putMemory(String key, String value) {
+    synchronized (memory) {
+      String old = memory.put(key, value);
+      if (old != null) {
+        bytes -= entrySize(key, old);
+      }
+      bytes += entrySize(key, value);
+      Iterator<Entry<String, String>> it = memory.entrySet().iterator();
+      while (bytes > maxBytes && it.hasNext()) {
+        Entry<String, String> eldest = it.next();
+        bytes -= entrySize(eldest.getKey(), eldest.getValue());
+        it.remove();
+      }
+    }
+  }
+
+  private static long entrySize(String key, String value) {
+    return 2L * (key.length() + value.length()) + ENTRY_OVERHEAD;
+  }
+
+  private String readDisk(String key) {
+    if (dir == null) {
+      return null;
+    }
+    long position = diskIndex.get(hash(key));
+    if (position < 0) {
+      return null;
+    }
+    FileChannel segment = segments.get((int) (position >>> OFFSET_BITS));
+    if (segment == null) {
+      return null;
+    }
+    long offset = position & ((1L << OFFSET_BITS) - 1);
+    try {
+      ByteBuffer header = read(segment, offset, HEADER_SIZE);
+      int keyLength = header.getInt();
+      int valueLength = header.getInt();
+      ByteBuffer record = read(segment, offset + HEADER_SIZE, keyLength + valueLength);
+      String storedKey = new String(record.array(), 0, keyLength, UTF_8);
+      if (!key.equals(storedKey)) {
+        return null;
+      }
+      return new String(record.array(), keyLength, valueLength, UTF_8);
+    } catch (ClosedChannelException e) {
+      // the segment was evicted during the read
+      return null;
+    } catch (IOException e) {
+      log.warn("Can't read eth call cache", e);
+      return null;
+    }
+  }
+
+  private synchronized void writeDisk(String key, String value) {
+    if (dir == null) {
+      return;
+    }
+    long hash = hash(key);
+    if (diskIndex.get(hash) >= 0) {
+      return;
+    }
+    byte[] keyBytes = key.getBytes(UTF_8);
+    byte[] valueBytes = value.getBytes(UTF_8);
+    ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + keyBytes.length + valueBytes.length);
+    record.putInt(keyBytes.length).putInt(valueBytes.length).put(keyBytes).put(valueBytes);
+    record.flip();
+    try {
+      if (segments.isEmpty() || currentSegmentSize + record.limit() > segmentSize) {
+        newSegment();
+      }
+      FileChannel segment = segments.get(lastSegment);
+      long offset = currentSegmentSize;
+      while (record.hasRemaining()) {
+        offset += segment.write(record, offset);
+      }
+      diskIndex.put(hash, ((long) lastSegment << OFFSET_BITS) | currentSegmentSize);
+      currentSegmentSize = offset;
+    } catch (IOException e) {
+      log.warn("Can't write eth call cache", e);
+    }
+  }
+
+  private void openSegments() throws IOException {
+    Files.createDirectories(dir);
+    List<Path> files;
+    try (Stream<Path> list = Files.list(dir)) {
+      files = list
+          .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+              && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+    for (int i = 0; i < files.size(); i++) {
+      Path file = files.get(i);
+      if (files.size() - i > maxSegments) {
+        Files.delete(file);
+        continue;
+      }
+      int number = segmentNumber(file);
+      FileChannel segment = FileChannel.open(file, READ, WRITE);
+      if (segments.isEmpty()) {
+        firstSegment = number;
+      }
+      segments.put(number, segment);
+      lastSegment = number;
+      currentSegmentSize = indexSegment(segment, number);
+    }
+  }
+
+  private static int segmentNumber(Path file) {
+    String name = file.getFileName().toString();
+    return Integer.parseInt(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  /**
+   * @return size of valid records, a broken tail after a crash is truncated
+   */
+  private long indexSegment(FileChannel segment, int segmentNumber) throws IOException {
+    long size = segment.size();
+    long offset = 0;
+    while (offset + HEADER_SIZE <= size) {
+      ByteBuffer header = read(segment, offset, HEADER_SIZE);
+      int keyLength = header.getInt();
+      int valueLength = header.getInt();
+      long recordSize = HEADER_SIZE + (long) keyLength + valueLength;
+      if (keyLength < 0 || valueLength < 0 || offset + recordSize > size) {
+        break;
+      }
+      String key = new String(
+          read(segment, offset + HEADER_SIZE, keyLength).array(), UTF_8);
+      diskIndex.put(hash(key), ((long) segmentNumber << OFFSET_BITS) | offset);
+      offset += recordSize;
+    }
+    if (offset < size) {
+      log.warn("Truncate broken eth call cache segment {} from {} to {}",
+          segmentNumber, size, offset);
+      segment.truncate(offset);
+    }
+    return offset;
+  }
+
+  private void newSegment() throws IOException {
+    if (segments.size() >= maxSegments) {
+      evictSegment();
+    }
+    int number = lastSegment + 1;
+    segments.put(number, FileChannel.open(segmentFile(number), CREATE, READ, WRITE));
+    if (segments.size() == 1) {
+      firstSegment = number;
+    }
+    lastSegment = number;
+    currentSegmentSize = 0;
+  }
+
+  private void evictSegment() throws IOException {
+    int number = firstSegment;
+    diskIndex.removeSegment(number);
+    FileChannel segment = segments.remove(number);
+    firstSegment = number + 1;
+    if (segment != null) {
+      segment.close();
+    }
+    Files.deleteIfExists(segmentFile(number));
+    log.info("Evicted eth call cache segment {}, {} results left", number, diskIndex.size());
+  }
+
+  private Path segmentFile(int number) {
+    return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  private static ByteBuffer read(FileChannel channel, long offset, int length)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(length);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, offset + buffer.position());
+      if (read < 0) {
+        throw new IOException("Unexpected end of eth call cache segment");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  // FNV-1a, zero is reserved for empty index slots
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash == 0 ? 1 : hash;
+  }
+
+  /**
+   * Open addressing hash table of primitive longs with linear probing, 16 bytes per slot instead
+   * of boxed map entries.
+   */
+  static class DiskIndex {
+
+    private long[] keys;
+    private long[] values;
+    private int size = 0;
+
+    DiskIndex(int capacity) {
+      int length = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+      keys = new long[length];
+      values = new long[length];
+    }
+
+    /**
+     * @return the value or -1
+     */
+    synchronized long get(long key) {
+      int mask = keys.length - 1;
+      for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+        if (keys[i] == key) {
+          return values[i];
+        }
+        if (keys[i] == 0) {
+          return -1;
+        }
+      }
+    }
+
+    synchronized void put(long key, long value) {
+      if ((size + 1) * 3L > keys.length * 2L) {
+        resize(keys.length * 2, -1);
+      }
+      insert(key, value);
+    }
+
+    /**
+     * Drop entries pointing into the segment.
+     */
+    synchronized void removeSegment(int segment) {
+      resize(keys.length, segment);
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    private void insert(long key, long value) {
+      int mask = keys.length - 1;
+      int i = slot(key, mask);
+      while (keys[i] != 0 && keys[i] != key) {
+        i = (i + 1) & mask;
+      }
+      if (keys[i] == 0) {
+        size++;
+      }
+      keys[i] = key;
+      values[i] = value;
+    }
+
+    private void resize(int length, int skipSegment) {
+      long[] oldKeys = keys;
+      long[] oldValues = values;
+      keys = new long[length];
+      values = new long[length];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0 && (oldValues[i] >>> OFFSET_BITS) != skipSegment) {
+          insert(oldKeys[i], oldValues[i]);
+        }
+      }
+    }
+
+    private static int slot(long key, int mask) {
+      return (int) (key ^ (key >>> 32)) & mask;
+    }
+  }
+}
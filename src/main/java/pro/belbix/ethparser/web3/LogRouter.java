@@ -0,0 +1,101 @@
+package pro.belbix.ethparser.web3;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.web3j.protocol.core.methods.response.Log;
+import pro.belbix.ethparser.entity.contracts.ContractEntity;
+import pro.belbix.ethparser.web3.contracts.ContractType;
+
+/**
+ * Defines which log consumers are interested in a log by its first topic and the type of the
+ * emitting contract, so consumers don't check logs they always reject.
+ */
+public class LogRouter {
+
+  private final Map<String, Long> consumersByTopic = new HashMap<>();
+  private final Map<ContractType, Long> consumersByType = new HashMap<>();
+  private long anyTopicConsumers = 0;
+  private long anyAddressConsumers = 0;
+  // consumers without a bit get every published log, so all logs must be published for them
+  private boolean overflowConsumers = false;
+  // network + address -> bit mask of contract type ids
+  private volatile Map<String, Long> typesByAddress = Map.of();
+
+  /**
+   * @param topics  first topics of consumed logs, null for all logs
+   * @param types   types of contracts emitting consumed logs, null for any address
+   */
+  public synchronized void addConsumer(int index, Collection<String> topics,
+      Collection<ContractType> types) {
+    if (index >= Long.SIZE) {
+      // the bus delivers everything to such consumers
+      overflowConsumers = true;
+      return;
+    }
+    long bit = 1L << index;
+    if (topics == null) {
+      anyTopicConsumers |= bit;
+    } else {
+      for (String topic : topics) {
+        consumersByTopic.merge(topic.toLowerCase(), bit, (a, b) -> a | b);
+      }
+    }
+    if (types == null) {
+      anyAddressConsumers |= bit;
+    } else {
+      for (ContractType type : types) {
+        consumersByType.merge(type, bit, (a, b) -> a | b);
+      }
+    }
+  }
+
+  public void updateContracts(List<ContractEntity> contracts) {
+    Map<String, Long> types = new HashMap<>();
+    for (ContractEntity contract : contracts) {
+      if (contract.getAddress() == null || contract.getType() < 0) {
+        continue;
+      }
+      types.merge(key(contract.getNetwork(), contract.getAddress()),
+          typeBit(ContractType.valueOfId(contract.getType())), (a, b) -> a | b);
+    }
+    typesByAddress = types;
+  }
+
+  /**
+   * @return bit mask of consumer indexes interested in the log
+   */
+  public synchronized long route(Log ethLog, String network) {
+    if (overflowConsumers) {
+      return RingBuffer.ALL_CONSUMERS;
+    }
+    List<String> topics = ethLog.getTopics();
+    long consumers = anyTopicConsumers;
+    if (topics != null && !topics.isEmpty() && topics.get(0) != null) {
+      consumers |= consumersByTopic.getOrDefault(topics.get(0).toLowerCase(), 0L);
+    }
+    if (consumers == 0) {
+      return 0;
+    }
+    long byAddress = anyAddressConsumers;
+    long types = ethLog.getAddress() == null ? 0
+        : typesByAddress.getOrDefault(key(network, ethLog.getAddress()), 0L);
+    if (types != 0) {
+      for (Map.Entry<ContractType, Long> entry : consumersByType.entrySet()) {
+        if ((types & typeBit(entry.getKey())) != 0) {
+          byAddress |= entry.getValue();
+        }
+      }
+    }
+    return consumers & byAddress;
+  }
+
+  private static long typeBit(ContractType type) {
+    return 1L << (type.getId() + 1);
+  }
+
+  private static String key(String network, String address) {
+    return network + "_" + address.toLowerCase();
+  }
+}
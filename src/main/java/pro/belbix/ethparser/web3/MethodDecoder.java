@@ -6,10 +6,13 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import java.lang.reflect.ParameterizedType;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
@@ -74,19 +77,34 @@ public abstract class MethodDecoder {
       List<String> topics,
       String data,
       List<TypeReference<Type>> parameters) {
-    List<Type> indexedValues = new ArrayList<>();
     if (parameters == null || data == null) {
+      return new ArrayList<>();
+    }
+    return extractLogIndexedValues(topics, data,
+        getIndexedParameters(parameters), getNonIndexedParameters(parameters));
+  }
+
+  /**
+   * The same as {@link #extractLogIndexedValues(List, String, List)} with already split
+   * parameters.
+   */
+  public static List<Type> extractLogIndexedValues(
+      List<String> topics,
+      String data,
+      List<TypeReference<Type>> indexedParameters,
+      List<TypeReference<Type>> nonIndexedParameters) {
+    List<Type> indexedValues = new ArrayList<>();
+    if (data == null) {
       return indexedValues;
     }
     List<Type> nonIndexedValues;
     try {
-      nonIndexedValues = FunctionReturnDecoder.decode(data, getNonIndexedParameters(parameters));
+      nonIndexedValues = FunctionReturnDecoder.decode(data, nonIndexedParameters);
     } catch (NullPointerException e) {
       // it is an odd bug with loader sometimes happens when the app is not warmed up
       e.printStackTrace();
       return null;
     }
-    List<TypeReference<Type>> indexedParameters = getIndexedParameters(parameters);
     for (int i = 0; i < indexedParameters.size(); i++) {
       String topic = topics.get(i + 1);
       Type value = decodeIndexedValue(topic, indexedParameters.get(i));
@@ -296,6 +314,21 @@ public abstract class MethodDecoder {
     }
   }
 
+  /**
+   * @param names event names, overloaded events with a # suffix in the name are included
+   * @return log first topics of the events
+   */
+  public Set<String> topicsByNames(Collection<String> names) {
+    Set<String> topics = new HashSet<>();
+    for (Map.Entry<String, String> entry : methodIdByFullHex.entrySet()) {
+      String methodName = methodNamesByMethodId.get(entry.getValue());
+      if (methodName != null && names.contains(methodName.split("#")[0])) {
+        topics.add(entry.getKey());
+      }
+    }
+    return topics;
+  }
+
   public Map<String, String> getMethodNamesByMethodId() {
     return methodNamesByMethodId;
   }
@@ -0,0 +1,354 @@
+package pro.belbix.ethparser.web3;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Fan-out bus where every consumer reads all published entries with its own cursor. Entries are
+ * stored once, consumers don't block each other, and a slow consumer stops the producer only when
+ * it is a whole ring behind. An entry can be addressed to some consumers, others skip it.
+ */
+@Log4j2
+public class RingBuffer<T> {
+
+  private static final int SPIN_TRIES = 100;
+  private static final int YIELD_TRIES = 200;
+  private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+  private static final long BLOCKING_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long FULL_WARN_NANOS = TimeUnit.SECONDS.toNanos(15);
+  public static final long ALL_CONSUMERS = -1L;
+
+  private final String name;
+  private final Object[] entries;
+  // bit masks of addressed consumers by their index
+  private final long[] receivers;
+  private final int mask;
+  private final RingWaitStrategy waitStrategy;
+  private final MeterRegistry meterRegistry;
+  private final List<Cursor<T>> cursors = new CopyOnWriteArrayList<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition changed = lock.newCondition();
+  private final AtomicBoolean run = new AtomicBoolean(true);
+  // the sequence of the last published entry
+  private volatile long published = -1;
+
+  public RingBuffer(String name, int capacity, RingWaitStrategy waitStrategy,
+      MeterRegistry meterRegistry) {
+    int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+    this.name = name;
+    this.entries = new Object[size];
+    this.receivers = new long[size];
+    this.mask = size - 1;
+    this.waitStrategy = waitStrategy;
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * The consumer reads entries published after this call. Consumers after the 64th get all
+   * entries.
+   */
+  public synchronized Cursor<T> addConsumer(String consumerName) {
+    Cursor<T> cursor = new Cursor<>(this, consumerName, cursors.size(), published);
+    cursors.add(cursor);
+    Gauge.builder("ethparser.bus.lag", cursor, Cursor::getLag)
+        .tag("bus", name)
+        .tag("consumer", consumerName)
+        .register(meterRegistry);
+    return cursor;
+  }
+
+  public long publish(T value) throws InterruptedException {
+    return publish(value, ALL_CONSUMERS);
+  }
+
+  /**
+   * Expected one producer per bus, for example one bus for each network. Concurrent producers are
+   * serialized.
+   *
+   * @param consumers bit mask of consumer indexes the entry is addressed to
+   * @return the sequence of the entry or -1 if the bus is stopped
+   */
+  public synchronized long publish(T value, long consumers) throws InterruptedException {
+    long next = published + 1;
+    int idle = 0;
+    long waitStart = System.nanoTime();
+    while (next - minConsumed() > entries.length) {
+      if (!run.get()) {
+        return -1;
+      }
+      if (System.nanoTime() - waitStart > FULL_WARN_NANOS) {
+        Cursor<T> slowest = slowest();
+        log.warn("The bus {} is full, the slowest consumer {} lag {}",
+            name, slowest == null ? "" : slowest.getName(), slowest == null ? 0 : slowest.getLag());
+        waitStart = System.nanoTime();
+      }
+      idle(idle++, BLOCKING_WAIT_NANOS);
+    }
+    entries[(int) next & mask] = value;
+    receivers[(int) next & mask] = consumers;
+    published = next;
+    signal();
+    return next;
+  }
+
+  public long getPublished() {
+    return published;
+  }
+
+  public List<Cursor<T>> getCursors() {
+    return cursors;
+  }
+
+  public void stop() {
+    run.set(false);
+    signal();
+  }
+
+  private long minConsumed() {
+    long min = published;
+    for (Cursor<T> cursor : cursors) {
+      min = Math.min(min, cursor.sequence);
+    }
+    return min;
+  }
+
+  private Cursor<T> slowest() {
+    Cursor<T> slowest = null;
+    for (Cursor<T> cursor : cursors) {
+      if (slowest == null || cursor.sequence < slowest.sequence) {
+        slowest = cursor;
+      }
+    }
+    return slowest;
+  }
+
+  private void idle(int counter, long maxNanos) throws InterruptedException {
+    switch (waitStrategy) {
+      case BUSY_SPIN:
+        Thread.onSpinWait();
+        break;
+      case YIELDING:
+        if (counter < SPIN_TRIES) {
+          Thread.onSpinWait();
+        } else {
+          Thread.yield();
+        }
+        break;
+      case SLEEPING:
+        if (counter < SPIN_TRIES) {
+          Thread.onSpinWait();
+        } else if (counter < YIELD_TRIES) {
+          Thread.yield();
+        } else {
+          LockSupport.parkNanos(Math.min(PARK_NANOS, maxNanos));
+        }
+        break;
+      default:
+        lock.lockInterruptibly();
+        try {
+          // the condition is signaled on each change, the timeout covers a missed signal
+          //noinspection ResultOfMethodCallIgnored
+          changed.awaitNanos(Math.min(BLOCKING_WAIT_NANOS, maxNanos));
+        } finally {
+          lock.unlock();
+        }
+    }
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+  }
+
+  private void signal() {
+    if (waitStrategy != RingWaitStrategy.BLOCKING) {
+      return;
+    }
+    lock.lock();
+    try {
+      changed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Cursors of one consumer on several buses, read by one thread in turn.
+   */
+  public static class CursorGroup<T> {
+
+    private static final long WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final List<Cursor<T>> cursors;
+    private int next = 0;
+    private Cursor<T> last;
+
+    public CursorGroup(List<Cursor<T>> cursors) {
+      if (cursors.isEmpty()) {
+        throw new IllegalStateException("Empty cursors");
+      }
+      this.cursors = List.copyOf(cursors);
+    }
+
+    /**
+     * @return the next entry of any bus or null after the timeout
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+      if (cursors.size() == 1) {
+        last = cursors.get(0);
+        return last.poll(timeout, unit);
+      }
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (true) {
+        // a poll of each cursor also marks its previous entry processed
+        for (int i = 0; i < cursors.size(); i++) {
+          Cursor<T> cursor = cursors.get(next);
+          next = (next + 1) % cursors.size();
+          T value = cursor.poll(0, TimeUnit.NANOSECONDS);
+          if (value != null) {
+            last = cursor;
+            return value;
+          }
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return null;
+        }
+        Cursor<T> cursor = cursors.get(next);
+        next = (next + 1) % cursors.size();
+        T value = cursor.poll(Math.min(remaining, WAIT_NANOS), TimeUnit.NANOSECONDS);
+        if (value != null) {
+          last = cursor;
+          return value;
+        }
+      }
+    }
+
+    /**
+     * The last taken entry will be processed by another thread.
+     *
+     * @return the action releasing the entry, see {@link Cursor#release(long)}
+     */
+    public Runnable detach() {
+      Cursor<T> cursor = last;
+      long sequence = cursor.detach();
+      return () -> cursor.release(sequence);
+    }
+
+    public List<Cursor<T>> getCursors() {
+      return cursors;
+    }
+  }
+
+  public static class Cursor<T> {
+
+    private final RingBuffer<T> ring;
+    private final String name;
+    private final int index;
+    // the sequence of the last taken entry
+    private volatile long sequence;
+    // the last taken entry is in processing until the next poll
+    private volatile boolean busy = false;
+    // entries taken by the polling thread and processed by others
+    private final ConcurrentSkipListSet<Long> detached = new ConcurrentSkipListSet<>();
+
+    private Cursor(RingBuffer<T> ring, String name, int index, long sequence) {
+      this.ring = ring;
+      this.name = name;
+      this.index = index;
+      this.sequence = sequence;
+    }
+
+    /**
+     * Only one thread should read from a cursor. Entries addressed to other consumers are
+     * skipped.
+     *
+     * @return the next entry or null after the timeout
+     */
+    @SuppressWarnings("unchecked")
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+      busy = false;
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      int idle = 0;
+      boolean skipped = false;
+      while (true) {
+        long next = sequence + 1;
+        if (ring.published >= next) {
+          int slot = (int) next & ring.mask;
+          T value = (T) ring.entries[slot];
+          if (isReceiver(ring.receivers[slot])) {
+            // busy before the sequence, so the entry never looks processed too early
+            busy = true;
+            sequence = next;
+            ring.signal();
+            return value;
+          }
+          sequence = next;
+          skipped = true;
+          continue;
+        }
+        if (skipped) {
+          ring.signal();
+          skipped = false;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0 || !ring.run.get()) {
+          return null;
+        }
+        ring.idle(idle++, remaining);
+      }
+    }
+
+    private boolean isReceiver(long receivers) {
+      return index >= Long.SIZE || (receivers & (1L << index)) != 0;
+    }
+
+    /**
+     * The last taken entry will be processed by another thread and stays not processed until
+     * {@link #release(long)}.
+     *
+     * @return the sequence of the entry
+     */
+    public long detach() {
+      long current = sequence;
+      detached.add(current);
+      busy = false;
+      return current;
+    }
+
+    public void release(long sequence) {
+      detached.remove(sequence);
+    }
+
+    /**
+     * @return the sequence of the last entry processed with all entries before it
+     */
+    public long getProcessed() {
+      long current = sequence;
+      long processed = busy ? current - 1 : current;
+      Long firstDetached = detached.ceiling(Long.MIN_VALUE);
+      if (firstDetached != null) {
+        processed = Math.min(processed, firstDetached - 1);
+      }
+      return processed;
+    }
+
+    public long getLag() {
+      return ring.published - sequence;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package pro.belbix.ethparser.web3;
+
+/**
+ * How threads wait for a {@link RingBuffer}: consumers for new entries, the producer for free
+ * slots. Spinning strategies have the lowest latency and burn a CPU core per waiting thread.
+ */
+public enum RingWaitStrategy {
+  // lock and condition, the lowest CPU usage
+  BLOCKING,
+  // spin, then yield, then park for a short time
+  SLEEPING,
+  // spin, then yield
+  YIELDING,
+  BUSY_SPIN
+}
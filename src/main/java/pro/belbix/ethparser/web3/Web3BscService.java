@@ -2,6 +2,7 @@ package pro.belbix.ethparser.web3;
 
 import static pro.belbix.ethparser.service.AbiProviderService.BSC_NETWORK;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import javax.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
@@ -12,8 +13,9 @@ import pro.belbix.ethparser.properties.NetworkProperties;
 @Log4j2
 public class Web3BscService extends Web3Service {
 
-  public Web3BscService(AppProperties appProperties, NetworkProperties networkProperties) {
-    super(BSC_NETWORK, appProperties, networkProperties);
+  public Web3BscService(AppProperties appProperties, NetworkProperties networkProperties,
+      MeterRegistry meterRegistry) {
+    super(BSC_NETWORK, appProperties, networkProperties, meterRegistry);
   }
 
   @PreDestroy
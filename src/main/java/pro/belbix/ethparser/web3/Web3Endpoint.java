@@ -0,0 +1,163 @@
+package pro.belbix.ethparser.web3;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.log4j.Log4j2;
+import org.web3j.protocol.Web3j;
+
+/**
+ * One RPC node with its health state. Circuit breaker: after FAILURES_TO_OPEN consecutive
+ * failures the endpoint is ejected for a cooldown, then one trial call decides whether it is
+ * reinstated or ejected again with a doubled cooldown.
+ */
+@Log4j2
+class Web3Endpoint {
+
+  static final int FAILURES_TO_OPEN = 5;
+  static final long MIN_COOLDOWN_MS = 10_000;
+  static final long MAX_COOLDOWN_MS = 5 * 60_000;
+  private static final double LATENCY_ALPHA = 0.2;
+
+  private final String url;
+  private final Web3j web3;
+  private final AtomicInteger outstanding = new AtomicInteger(0);
+  private int consecutiveFailures = 0;
+  private long cooldownMs = MIN_COOLDOWN_MS;
+  private long openUntil = 0;
+  private boolean trial = false;
+  private volatile double latencyMs = 0;
+  private volatile long failures = 0;
+  private volatile long calls = 0;
+
+  Web3Endpoint(String url, Web3j web3) {
+    this.url = url;
+    this.web3 = web3;
+  }
+
+  /**
+   * Available for a new call. In half-open state only one trial call is allowed at once.
+   */
+  synchronized boolean isAvailable(long now) {
+    if (openUntil == 0) {
+      return true;
+    }
+    return now >= openUntil && !trial;
+  }
+
+  /**
+   * Check the availability and mark the endpoint as busy in one step, so concurrent callers can't
+   * start more than one trial call in half-open state.
+   *
+   * @return false if the endpoint is not available
+   */
+  synchronized boolean tryAcquire(long now) {
+    if (openUntil != 0) {
+      if (now < openUntil || trial) {
+        return false;
+      }
+      trial = true;
+    }
+    outstanding.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Mark the endpoint as busy regardless of its state, for the case when all endpoints are
+   * ejected.
+   */
+  synchronized void acquire() {
+    outstanding.incrementAndGet();
+  }
+
+  synchronized void onSuccess(long latency) {
+    outstanding.decrementAndGet();
+    calls++;
+    updateLatency(latency);
+    consecutiveFailures = 0;
+    if (openUntil != 0) {
+      log.info("Web3 endpoint {} reinstated", safeUrl());
+      openUntil = 0;
+      cooldownMs = MIN_COOLDOWN_MS;
+    }
+    trial = false;
+  }
+
+  synchronized void onFailure(long latency, long now) {
+    outstanding.decrementAndGet();
+    calls++;
+    failures++;
+    updateLatency(latency);
+    consecutiveFailures++;
+    if (trial) {
+      trial = false;
+      cooldownMs = Math.min(cooldownMs * 2, MAX_COOLDOWN_MS);
+      openUntil = now + cooldownMs;
+      log.warn("Web3 endpoint {} trial call failed, ejected for {}ms", safeUrl(), cooldownMs);
+    } else if (openUntil == 0 && consecutiveFailures >= FAILURES_TO_OPEN) {
+      openUntil = now + cooldownMs;
+      log.warn("Web3 endpoint {} ejected for {}ms after {} failures",
+          safeUrl(), cooldownMs, consecutiveFailures);
+    }
+  }
+
+  /**
+   * Neutral outcome, for example a node response with an error for the call itself.
+   */
+  synchronized void release(long latency) {
+    outstanding.decrementAndGet();
+    calls++;
+    updateLatency(latency);
+    trial = false;
+  }
+
+  /**
+   * Lower is better. Least outstanding requests weighted by the average latency.
+   */
+  double score() {
+    return (outstanding.get() + 1) * Math.max(latencyMs, 1);
+  }
+
+  private void updateLatency(long latency) {
+    if (latencyMs == 0) {
+      latencyMs = latency;
+    } else {
+      latencyMs = latencyMs * (1 - LATENCY_ALPHA) + latency * LATENCY_ALPHA;
+    }
+  }
+
+  synchronized long getOpenUntil() {
+    return openUntil;
+  }
+
+  synchronized boolean isHealthy() {
+    return openUntil == 0;
+  }
+
+  Web3j getWeb3() {
+    return web3;
+  }
+
+  int getOutstanding() {
+    return outstanding.get();
+  }
+
+  double getLatencyMs() {
+    return latencyMs;
+  }
+
+  long getFailures() {
+    return failures;
+  }
+
+  long getCalls() {
+    return calls;
+  }
+
+  /**
+   * Urls usually contain api keys, don't print them.
+   */
+  String safeUrl() {
+    int idx = url.indexOf("://");
+    int end = url.indexOf('/', idx < 0 ? 0 : idx + 3);
+    return end < 0 ? url : url.substring(0, end);
+  }
+}
@@ -0,0 +1,94 @@
+package pro.belbix.ethparser.web3;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * RPC endpoints of one network. Calls are routed to the healthy endpoint with the lowest
+ * outstanding requests * latency score, ejected endpoints are skipped until their cooldown ends.
+ */
+@Log4j2
+class Web3EndpointPool {
+
+  private final List<Web3Endpoint> endpoints;
+
+  Web3EndpointPool(List<Web3Endpoint> endpoints, String network, MeterRegistry meterRegistry) {
+    if (endpoints.isEmpty()) {
+      throw new IllegalStateException("Empty web3 endpoints for " + network);
+    }
+    this.endpoints = List.copyOf(endpoints);
+    for (int i = 0; i < endpoints.size(); i++) {
+      Web3Endpoint endpoint = endpoints.get(i);
+      String[] tags = {"network", network, "endpoint", i + "_" + endpoint.safeUrl()};
+      Gauge.builder("ethparser.web3.endpoint.outstanding", endpoint,
+          Web3Endpoint::getOutstanding).tags(tags).register(meterRegistry);
+      Gauge.builder("ethparser.web3.endpoint.latency", endpoint,
+          Web3Endpoint::getLatencyMs).tags(tags).register(meterRegistry);
+      Gauge.builder("ethparser.web3.endpoint.healthy", endpoint,
+          e -> e.isHealthy() ? 1 : 0).tags(tags).register(meterRegistry);
+      Gauge.builder("ethparser.web3.endpoint.calls", endpoint,
+          Web3Endpoint::getCalls).tags(tags).register(meterRegistry);
+      Gauge.builder("ethparser.web3.endpoint.failures", endpoint,
+          Web3Endpoint::getFailures).tags(tags).register(meterRegistry);
+    }
+  }
+
+  /**
+   * Choose an endpoint and mark it as busy. The caller must report the outcome to the endpoint.
+   */
+  Web3Endpoint acquire() {
+    long now = System.currentTimeMillis();
+    while (true) {
+      Web3Endpoint best = null;
+      double bestScore = Double.MAX_VALUE;
+      for (Web3Endpoint endpoint : endpoints) {
+        if (!endpoint.isAvailable(now)) {
+          continue;
+        }
+        double score = endpoint.score();
+        if (score < bestScore) {
+          best = endpoint;
+          bestScore = score;
+        }
+      }
+      if (best == null) {
+        break;
+      }
+      // another thread could take the trial call of the endpoint, choose again
+      if (best.tryAcquire(now)) {
+        return best;
+      }
+    }
+    // all nodes are ejected, use the one that will be reinstated first
+    Web3Endpoint best = endpoints.get(0);
+    for (Web3Endpoint endpoint : endpoints) {
+      if (endpoint.getOpenUntil() < best.getOpenUntil()) {
+        best = endpoint;
+      }
+    }
+    log.warn("All web3 endpoints are unhealthy, use {}", best.safeUrl());
+    best.acquire();
+    return best;
+  }
+
+  /**
+   * Any endpoint for building requests outside of calls.
+   */
+  Web3Endpoint any() {
+    long now = System.currentTimeMillis();
+    return endpoints.stream()
+        .filter(e -> e.isAvailable(now))
+        .findFirst()
+        .orElse(endpoints.get(0));
+  }
+
+  List<Web3Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  int size() {
+    return endpoints.size();
+  }
+}
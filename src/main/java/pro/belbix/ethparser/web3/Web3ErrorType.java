@@ -0,0 +1,113 @@
+package pro.belbix.ethparser.web3;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+/**
+ * Classes of web3 call failures with their retry policy. Delay for an attempt is a capped
+ * exponential backoff with equal jitter: half of the delay is fixed, half is random.
+ */
+enum Web3ErrorType {
+  // node returned an error or empty response, the call can be repeated
+  EMPTY_RESPONSE(true, false, 1000, 10_000),
+  RATE_LIMIT(true, true, 2000, 60_000),
+  TIMEOUT(true, true, 1000, 30_000),
+  CONNECTION(true, true, 1000, 30_000),
+  NODE_OUT_OF_SYNC(true, true, 5000, 60_000),
+  INVALID_PARAMS(false, false, 0, 0),
+  REVERTED(false, false, 0, 0),
+  UNKNOWN(true, true, 1000, 30_000);
+
+  private static final List<String> RATE_LIMIT_MESSAGES = List.of(
+      "429", "too many requests", "rate limit", "request limit", "daily request count",
+      "capacity exceeded");
+  private static final List<String> OUT_OF_SYNC_MESSAGES = List.of(
+      "header not found", "missing trie node", "unknown block", "block not found",
+      "not synced");
+  private static final List<String> INVALID_PARAMS_MESSAGES = List.of(
+      "invalid method parameter(s)", "invalid argument", "invalid params");
+
+  private final boolean retryable;
+  private final boolean endpointFailure;
+  private final long baseDelayMs;
+  private final long maxDelayMs;
+
+  Web3ErrorType(boolean retryable, boolean endpointFailure, long baseDelayMs, long maxDelayMs) {
+    this.retryable = retryable;
+    this.endpointFailure = endpointFailure;
+    this.baseDelayMs = baseDelayMs;
+    this.maxDelayMs = maxDelayMs;
+  }
+
+  static Web3ErrorType classify(Exception e) {
+    if (e == null) {
+      return EMPTY_RESPONSE;
+    }
+    String message = e.getMessage() == null ? "" : e.getMessage().toLowerCase();
+    if (e instanceof IllegalStateException && message.startsWith("not retryable response")) {
+      return REVERTED;
+    }
+    if (containsAny(message, INVALID_PARAMS_MESSAGES)) {
+      return INVALID_PARAMS;
+    }
+    if (containsAny(message, RATE_LIMIT_MESSAGES)) {
+      return RATE_LIMIT;
+    }
+    if (containsAny(message, OUT_OF_SYNC_MESSAGES)) {
+      return NODE_OUT_OF_SYNC;
+    }
+    if (e instanceof InterruptedIOException || message.contains("timeout")
+        || message.contains("timed out")) {
+      return TIMEOUT;
+    }
+    if (e instanceof IOException || e instanceof ClientConnectionException) {
+      return CONNECTION;
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * Error responses about node state, not about the call itself. Such calls should be retried.
+   */
+  static boolean isNodeError(String errorMessage) {
+    if (errorMessage == null) {
+      return false;
+    }
+    String message = errorMessage.toLowerCase();
+    return containsAny(message, RATE_LIMIT_MESSAGES)
+        || containsAny(message, OUT_OF_SYNC_MESSAGES);
+  }
+
+  private static boolean containsAny(String message, List<String> patterns) {
+    for (String pattern : patterns) {
+      if (message.contains(pattern)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param attempt starts from 1
+   */
+  long delay(int attempt) {
+    long delay = maxDelayMs;
+    // avoid overflow for big attempts
+    if (attempt < 30) {
+      delay = Math.min(maxDelayMs, baseDelayMs * (1L << (attempt - 1)));
+    }
+    long half = delay / 2;
+    return half + ThreadLocalRandom.current().nextLong(half + 1);
+  }
+
+  boolean isRetryable() {
+    return retryable;
+  }
+
+  boolean isEndpointFailure() {
+    return endpointFailure;
+  }
+}
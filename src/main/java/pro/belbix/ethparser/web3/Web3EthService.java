@@ -2,6 +2,7 @@ package pro.belbix.ethparser.web3;
 
 import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import javax.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
@@ -12,8 +13,9 @@ import pro.belbix.ethparser.properties.NetworkProperties;
 @Log4j2
 public class Web3EthService extends Web3Service {
 
-  public Web3EthService(AppProperties appProperties, NetworkProperties networkProperties) {
-    super(ETH_NETWORK, appProperties, networkProperties);
+  public Web3EthService(AppProperties appProperties, NetworkProperties networkProperties,
+      MeterRegistry meterRegistry) {
+    super(ETH_NETWORK, appProperties, networkProperties, meterRegistry);
   }
 
   @PreDestroy
@@ -6,16 +6,27 @@ import static pro.belbix.ethparser.service.AbiProviderService.BSC_NETWORK;
 import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.ZERO_ADDRESS;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.reactivex.Flowable;
 import java.math.BigInteger;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.util.Strings;
 import org.springframework.stereotype.Service;
@@ -29,6 +40,7 @@ import org.web3j.protocol.core.BatchResponse;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterNumber;
 import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.Response.Error;
 import org.web3j.protocol.core.methods.request.EthFilter;
 import org.web3j.protocol.core.methods.response.EthBlock;
@@ -44,21 +56,80 @@ import org.web3j.protocol.core.methods.response.Log;
 import org.web3j.protocol.core.methods.response.Transaction;
 import org.web3j.protocol.core.methods.response.TransactionReceipt;
 import pro.belbix.ethparser.properties.AppProperties;
+import pro.belbix.ethparser.web3.EthCallBatcher.EthCallRequest;
 
 @Service
 @Log4j2
 public class Web3Functions {
 
   private final static SimpleDecoder SIMPLE_DECODER = new SimpleDecoder();
+  private final static List<String> RANGE_TOO_BIG_ERRORS = List.of(
+      "query returned more than",
+      "block range",
+      "limit exceeded",
+      "response size",
+      "too large"
+  );
   private final AppProperties appProperties;
   private final Web3EthService web3EthService;
   private final Web3BscService web3BscService;
 
+  private final EthCallBatcher ethCallBatcher;
+  private final ExecutorService directCallExecutor;
+  private final EthCallCache ethCallCache;
+
   public Web3Functions(AppProperties appProperties,
-      Web3EthService web3EthService, Web3BscService web3BscService) {
+      Web3EthService web3EthService, Web3BscService web3BscService,
+      MeterRegistry meterRegistry) {
     this.appProperties = appProperties;
     this.web3EthService = web3EthService;
     this.web3BscService = web3BscService;
+    if (appProperties.getEthCallCacheMb() > 0) {
+      ethCallCache = new EthCallCache(appProperties.getEthCallCacheMb() * 1024L * 1024L,
+          appProperties.getEthCallCacheDir(),
+          appProperties.getEthCallCacheDiskMb() * 1024L * 1024L, meterRegistry);
+    } else {
+      ethCallCache = null;
+    }
+    if (appProperties.isEthCallBatching()) {
+      ethCallBatcher = new EthCallBatcher(
+          appProperties.getEthCallBatchThreads(),
+          appProperties.getEthCallBatchSize(),
+          appProperties.getEthCallQueueSize(),
+          this::sendEthCallBatch);
+      directCallExecutor = createDirectCallExecutor(
+          appProperties.getEthCallBatchThreads(), appProperties.getEthCallQueueSize());
+    } else {
+      ethCallBatcher = null;
+      directCallExecutor = null;
+    }
+  }
+
+  @PreDestroy
+  private void close() {
+    if (ethCallBatcher != null) {
+      ethCallBatcher.stop();
+      directCallExecutor.shutdown();
+    }
+    if (ethCallCache != null) {
+      ethCallCache.close();
+    }
+  }
+
+  /**
+   * Sends eth calls of async callers that were not sent in a batch. When the queue is full the
+   * batcher worker sends the call itself, it slows down new batches instead of dropping calls.
+   */
+  private static ExecutorService createDirectCallExecutor(int threads, int queueSize) {
+    AtomicInteger counter = new AtomicInteger(0);
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(Math.max(queueSize, 1)),
+        r -> {
+          Thread thread = new Thread(r, "eth-call-direct-" + counter.getAndIncrement());
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
   }
 
   private Web3Service getWeb3Service(String network) {
@@ -148,6 +219,22 @@ public class Web3Functions {
         .map(r -> ((EthBlock) r).getBlock());
   }
 
+  public Stream<Block> findBlocksByNumbersBatch(Collection<Long> numbers, String network) {
+    BatchResponse batchResponse = getWeb3Service(network).callWithRetry(() -> {
+          BatchRequest batchRequest = getWeb3(network).newBatch();
+          numbers.forEach(number ->
+              batchRequest.add(getWeb3(network).ethGetBlockByNumber(
+                  DefaultBlockParameter.valueOf(BigInteger.valueOf(number)), false)));
+          return batchRequest.send();
+        },
+        "findBlocksByNumbersBatch " + numbers.size() + " " + network);
+    if (batchResponse == null) {
+      return Stream.of();
+    }
+    return batchResponse.getResponses().stream()
+        .map(r -> ((EthBlock) r).getBlock());
+  }
+
   public EthBlock findBlockByHash(
       String blockHash,
       boolean returnFullTransactionObjects,
@@ -214,18 +301,22 @@ public class Web3Functions {
       Integer end,
       String network,
       String... topics) {
-    Request<?, EthLog> request = prepareEthLogRequest(addresses, start, end, network, topics);
-    if (request == null) {
+    if ((start != null && start < 0) || (end != null && end < 0)) {
       return List.of();
     }
     EthLog result = getWeb3Service(network).callWithRetry(() -> {
-      EthLog ethLog = request.send();
+      // build the request inside the call for sending it via the chosen node
+      EthLog ethLog = prepareEthLogRequest(addresses, start, end, network, topics).send();
       if (ethLog == null) {
         log.error("get logs null result");
         return null;
       }
       if (ethLog.getError() != null) {
         log.error("Can't get eth log. " + ethLog.getError().getMessage());
+        if (isRangeTooBig(ethLog.getError().getMessage())) {
+          throw new IllegalStateException(
+              Web3Service.RANGE_TOO_BIG + ethLog.getError().getMessage());
+        }
         return null;
       }
       return ethLog;
@@ -236,6 +327,20 @@ public class Web3Functions {
     return result.getLogs();
   }
 
+  public static boolean isRangeTooBig(Exception e) {
+    return e instanceof IllegalStateException
+        && e.getMessage() != null
+        && e.getMessage().startsWith(Web3Service.RANGE_TOO_BIG);
+  }
+
+  private static boolean isRangeTooBig(String errorMessage) {
+    if (errorMessage == null) {
+      return false;
+    }
+    String message = errorMessage.toLowerCase();
+    return RANGE_TOO_BIG_ERRORS.stream().anyMatch(message::contains);
+  }
+
   public List<LogResult> fetchContractLogsBatch(
       List<String> addresses,
       Integer start,
@@ -395,35 +500,201 @@ public class Web3Functions {
   @SuppressWarnings("rawtypes")
   public List<Type> callFunction(Function function, String contractAddress,
       DefaultBlockParameter block, String network) {
+    try {
+      return submitCall(function, contractAddress, block, network).join();
+    } catch (CompletionException e) {
+      if (EthCallBatcher.isNotSent(e)) {
+        // retries on the caller thread
+        return callFunctionDirect(function, contractAddress, block, network);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * The call will be sent in one JSON-RPC batch with other calls submitted at the same time.
+   * Submit all independent calls before waiting for the results.
+   */
+  @SuppressWarnings("rawtypes")
+  public CompletableFuture<List<Type>> callFunctionAsync(Function function,
+      String contractAddress, DefaultBlockParameter block, String network) {
+    return submitCall(function, contractAddress, block, network)
+        .handle((result, e) -> {
+          if (e == null) {
+            return CompletableFuture.completedFuture(result);
+          }
+          if (EthCallBatcher.isNotSent(e)) {
+            return CompletableFuture.supplyAsync(
+                () -> callFunctionDirect(function, contractAddress, block, network),
+                directCallExecutor);
+          }
+          return CompletableFuture.<List<Type>>failedFuture(e);
+        })
+        .thenCompose(f -> f);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private CompletableFuture<List<Type>> submitCall(Function function,
+      String contractAddress, DefaultBlockParameter block, String network) {
+    String cacheKey = cacheKey(contractAddress, FunctionEncoder.encode(function), block, network);
+    if (cacheKey != null) {
+      String cached = ethCallCache.get(cacheKey);
+      if (cached != null) {
+        return CompletableFuture.completedFuture(
+            decodeEthCall(cached, function, contractAddress, network));
+      }
+    }
+    if (ethCallBatcher == null) {
+      return CompletableFuture.completedFuture(
+          callFunctionDirect(function, contractAddress, block, network));
+    }
+    return ethCallBatcher.submit(function, contractAddress, block, network);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private void sendEthCallBatch(List<EthCallRequest> requests) {
+    String network = requests.get(0).getNetwork();
+    if (requests.size() == 1) {
+      // a lonely call is sent by the caller
+      return;
+    }
+    Map<Long, EthCallRequest> requestsById = new HashMap<>();
+    // one attempt, retries would hold the batcher worker until the call deadline
+    BatchResponse batchResponse = getWeb3Service(network).callOnce(() -> {
+      requestsById.clear();
+      BatchRequest batchRequest = getWeb3(network).newBatch();
+      for (EthCallRequest request : requests) {
+        Request<?, EthCall> ethCall = getWeb3(network).ethCall(
+            createEthCallTransaction(request.getFunction(), request.getAddress()),
+            request.getBlock());
+        requestsById.put(ethCall.getId(), request);
+        batchRequest.add(ethCall);
+      }
+      return batchRequest.send();
+    }, "callFunctionBatch", "callFunctionBatch " + requests.size() + " " + network);
+
+    if (batchResponse != null) {
+      for (Response<?> response : batchResponse.getResponses()) {
+        EthCallRequest request = requestsById.get(response.getId());
+        if (request == null) {
+          continue;
+        }
+        EthCall ethCall = (EthCall) response;
+        if (ethCall.getError() == null) {
+          cacheResult(request.getAddress(), FunctionEncoder.encode(request.getFunction()),
+              request.getBlock(), network, ethCall.getValue());
+          request.getFuture().complete(decodeEthCall(
+              ethCall.getValue(), request.getFunction(), request.getAddress(), network));
+        } else if (isRevertedError(ethCall.getError().getMessage())) {
+          request.getFuture().complete(null);
+        }
+      }
+    }
+    // node errors and missed responses stay incomplete, the callers retry them one by one
+  }
+
+  private static boolean isRevertedError(String errorMessage) {
+    return !Web3ErrorType.isNodeError(errorMessage)
+        && !"execution aborted (timeout = 5s)".equals(errorMessage);
+  }
+
+  private static org.web3j.protocol.core.methods.request.Transaction createEthCallTransaction(
+      Function function, String contractAddress) {
+    return org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction(
+        ZERO_ADDRESS, contractAddress, FunctionEncoder.encode(function));
+  }
+
+  @SuppressWarnings("rawtypes")
+  private List<Type> callFunctionDirect(Function function, String contractAddress,
+      DefaultBlockParameter block, String network) {
+    String data = FunctionEncoder.encode(function);
+    EthCall result = ethCall(function.getName(), contractAddress, data, block, network);
+    if (result == null) {
+      return null;
+    }
+    cacheResult(contractAddress, data, block, network, result.getValue());
+    return decodeEthCall(result.getValue(), function, contractAddress, network);
+  }
+
+  /**
+   * Call with already encoded data, for example a multicall aggregation.
+   *
+   * @return hex encoded result or null if the call failed
+   */
+  public String callFunctionRaw(String name, String contractAddress, String data,
+      DefaultBlockParameter block, String network) {
+    String cacheKey = cacheKey(contractAddress, data, block, network);
+    if (cacheKey != null) {
+      String cached = ethCallCache.get(cacheKey);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    EthCall result = ethCall(name, contractAddress, data, block, network);
+    if (result == null) {
+      return null;
+    }
+    cacheResult(contractAddress, data, block, network, result.getValue());
+    return result.getValue();
+  }
+
+  /**
+   * Only calls at an explicit block number are immutable and can be cached.
+   */
+  private String cacheKey(String contractAddress, String data, DefaultBlockParameter block,
+      String network) {
+    if (ethCallCache == null || !(block instanceof DefaultBlockParameterNumber)) {
+      return null;
+    }
+    return EthCallCache.key(network, contractAddress, data,
+        ((DefaultBlockParameterNumber) block).getBlockNumber().longValue());
+  }
+
+  private void cacheResult(String contractAddress, String data, DefaultBlockParameter block,
+      String network, String value) {
+    String cacheKey = cacheKey(contractAddress, data, block, network);
+    if (cacheKey != null && value != null) {
+      ethCallCache.put(cacheKey, value);
+    }
+  }
+
+  private EthCall ethCall(String name, String contractAddress, String data,
+      DefaultBlockParameter block, String network) {
     org.web3j.protocol.core.methods.request.Transaction transaction =
         org.web3j.protocol.core.methods.request.Transaction.createEthCallTransaction(
-            ZERO_ADDRESS, contractAddress, FunctionEncoder.encode(function));
+            ZERO_ADDRESS, contractAddress, data);
 
-    EthCall result = getWeb3Service(network).callWithRetry(() -> {
+    return getWeb3Service(network).callWithRetry(() -> {
       EthCall ethCall = getWeb3(network).ethCall(transaction, block).send();
       if (ethCall == null) {
-        log.warn("callFunction is null {}", function.getName());
+        log.warn("callFunction is null {}", name);
         return null;
       }
       if (ethCall.getError() != null) {
         if (!"execution reverted".equals(ethCall.getError().getMessage())) {
           log.warn("{} callFunction callback is error: {}",
-              function.getName(), ethCall.getError().getMessage());
+              name, ethCall.getError().getMessage());
         }
         if ("execution aborted (timeout = 5s)".equals(ethCall.getError().getMessage())) {
           return null;
         }
+        if (Web3ErrorType.isNodeError(ethCall.getError().getMessage())) {
+          throw new IllegalStateException(ethCall.getError().getMessage());
+        }
         throw new IllegalStateException(
             "Not retryable response: " + ethCall.getError().getMessage());
       }
       return ethCall;
-    }, "callFunction " + function.getName() + " " + contractAddress
-        + " " + block.getValue() + " " + network);
-    if (result == null) {
-      return null;
-    }
+    }, "callFunction_" + name,
+        "callFunction " + name + " " + contractAddress
+            + " " + block.getValue() + " " + network);
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static List<Type> decodeEthCall(String value, Function function,
+      String contractAddress, String network) {
     try {
-      return FunctionReturnDecoder.decode(result.getValue(), function.getOutputParameters());
+      return FunctionReturnDecoder.decode(value, function.getOutputParameters());
     } catch (Exception e) {
       log.warn("Error decode response {} for {} on {}",
           function.getName(), contractAddress, network);
@@ -1,16 +1,22 @@
 package pro.belbix.ethparser.web3;
 
-import static java.util.concurrent.TimeUnit.SECONDS;
-
 import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.BlockingQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import lombok.extern.log4j.Log4j2;
-import org.web3j.protocol.core.methods.response.EthLog;
 import org.web3j.protocol.core.methods.response.EthLog.LogResult;
 import org.web3j.protocol.core.methods.response.Log;
 import pro.belbix.ethparser.entity.LogLastEntity;
@@ -21,38 +27,65 @@ import pro.belbix.ethparser.repositories.LogLastRepository;
 public class Web3LogFlowable implements Runnable {
 
   public static final int WAIT_BETWEEN_BLOCKS = 5 * 1000;
+  private static final Comparator<Log> LOG_ORDER = Comparator
+      .comparing(Log::getBlockNumber)
+      .thenComparing(Log::getLogIndex);
   private final AtomicBoolean run = new AtomicBoolean(true);
   private final Web3Functions web3Functions;
-  private final Map<String, BlockingQueue<Web3Model<Log>>> logConsumers;
+  private final EthBlockService ethBlockService;
+  private final RingBuffer<Web3Model<Log>> logBus;
+  private final LogRouter logRouter;
   private final String network;
   private Integer from;
   private BigInteger lastBlock;
-  private final int blockStep;
+  private final BlockStepController blockStep;
   private final Supplier<List<String>> addressesSupplier;
   private final Supplier<Long> blockLimitations;
   private final LogLastRepository logLastRepository;
+  private final int catchUpThreads;
+  private final ExecutorService catchUpExecutor;
+  // {bus sequence of the last log, last block} of fetched windows not yet passed by all consumers
+  private final Deque<long[]> windows = new ArrayDeque<>();
+  // in memory only, after a restart all consumers resume from the common last log block
+  private final Map<String, Long> checkpoints = new HashMap<>();
+  private long lastSequence = -1;
+  private long lastSavedBlock = -1;
 
   public Web3LogFlowable(
       Supplier<List<String>> addressesSupplier,
       Integer from,
       Web3Functions web3Functions,
-      Map<String, BlockingQueue<Web3Model<Log>>> logConsumers,
+      EthBlockService ethBlockService,
+      RingBuffer<Web3Model<Log>> logBus,
+      LogRouter logRouter,
       String network,
       Supplier<Long> blockLimitations,
-      int blockStep,
+      BlockStepController blockStep,
+      int catchUpThreads,
       LogLastRepository logLastRepository) {
     this.addressesSupplier = addressesSupplier;
     this.web3Functions = web3Functions;
+    this.ethBlockService = ethBlockService;
     this.from = from;
-    this.logConsumers = logConsumers;
+    this.logBus = logBus;
+    this.logRouter = logRouter;
     this.network = network;
     this.blockStep = blockStep;
     this.blockLimitations = blockLimitations;
     this.logLastRepository = logLastRepository;
+    this.catchUpThreads = Math.max(catchUpThreads, 1);
+    if (this.catchUpThreads > 1) {
+      catchUpExecutor = Executors.newFixedThreadPool(this.catchUpThreads);
+    } else {
+      catchUpExecutor = null;
+    }
   }
 
   public void stop() {
     run.set(false);
+    if (catchUpExecutor != null) {
+      catchUpExecutor.shutdownNow();
+    }
   }
 
   @SuppressWarnings("BusyWait")
@@ -63,18 +96,22 @@ public class Web3LogFlowable implements Runnable {
     while (run.get()) {
       try {
         currentBlock = web3Functions.fetchCurrentBlock(network);
-        if (lastBlock != null && lastBlock.intValue() >= currentBlock.intValue()) {
+        if (lastBlock != null && lastBlock.intValue() >= currentBlock.intValue()
+            && (from == null || from > currentBlock.intValue())) {
           Thread.sleep(WAIT_BETWEEN_BLOCKS);
           continue;
         }
         lastBlock = currentBlock;
         int to = currentBlock.intValue();
+        int step = blockStep.getStep();
         if (from == null) {
           from = to;
         } else {
+          // in catch-up mode take up to catchUpThreads windows at once
+          int maxRange = (step + 1) * catchUpThreads - 1;
           int diff = to - from;
-          if (diff > blockStep) {
-            to = from + blockStep;
+          if (diff > maxRange) {
+            to = from + maxRange;
           }
         }
 
@@ -89,46 +126,167 @@ public class Web3LogFlowable implements Runnable {
           }
         }
 
-        //noinspection rawtypes
-        List<EthLog.LogResult> logResults = web3Functions
-            .fetchContractLogs(addressesSupplier.get(), from, to, network);
-        log.info("Fetched {} logs from {} to {} ({}) on block: {}, size {}",
-            network, from, to, to - from, currentBlock, logResults.size());
-        //noinspection rawtypes
-        for (LogResult logResult : logResults) {
-          Log ethLog = (Log) logResult.get();
-          if (ethLog == null) {
+        List<Log> logs;
+        try {
+          logs = fetchLogs(addressesSupplier.get(), from, to, step);
+        } catch (IllegalStateException e) {
+          if (Web3Functions.isRangeTooBig(e)) {
+            log.warn("{} too big log range {} - {}, reduce step", network, from, to);
+            blockStep.onFailure();
             continue;
           }
-          for (Entry<String, BlockingQueue<Web3Model<Log>>> queue : logConsumers.entrySet()) {
-            writeInQueue(queue.getValue(), queue.getKey(), ethLog, logConsumers.size());
+          throw e;
+        }
+        log.info("Fetched {} logs from {} to {} ({}) on block: {}, size {}",
+            network, from, to, to - from, currentBlock, logs.size());
+        int windowFrom = from;
+        List<Log> routedLogs = new ArrayList<>();
+        List<Long> routes = new ArrayList<>();
+        for (Log ethLog : logs) {
+          long consumers = logRouter.route(ethLog, network);
+          if (consumers != 0) {
+            routedLogs.add(ethLog);
+            routes.add(consumers);
           }
         }
+        prefetchTimestamps(routedLogs);
+        for (int i = 0; i < routedLogs.size(); i++) {
+          long sequence = logBus.publish(
+              new Web3Model<>(routedLogs.get(i), network), routes.get(i));
+          if (sequence < 0) {
+            return;
+          }
+          lastSequence = sequence;
+        }
         from = to + 1;
-        saveLastLog(to);
+        windows.addLast(new long[]{lastSequence, to});
+        saveCheckpoints(windowFrom - 1);
       } catch (Exception e) {
         log.error("Error in log flow", e);
       }
     }
   }
 
-  private void saveLastLog(long block) {
-    LogLastEntity logLastEntity = new LogLastEntity();
-    logLastEntity.setNetwork(network);
-    logLastEntity.setBlock(block);
-    logLastRepository.save(logLastEntity);
+  /**
+   * Parsers need dates of almost all log blocks, fetch them for the whole window at once.
+   */
+  private void prefetchTimestamps(List<Log> logs) {
+    if (logs.isEmpty()) {
+      return;
+    }
+    Set<Long> blocks = new HashSet<>();
+    for (Log ethLog : logs) {
+      blocks.add(ethLog.getBlockNumber().longValue());
+    }
+    try {
+      ethBlockService.prefetchTimestamps(blocks, network);
+    } catch (Exception e) {
+      // parsers will fetch missed blocks one by one
+      log.warn("{} error prefetch block timestamps", network, e);
+    }
   }
 
-  private <T> void writeInQueue(
-      BlockingQueue<Web3Model<T>> queue, String name, T o, int queues) {
+  /**
+   * Split the range on windows with step size and fetch them concurrently. Results are
+   * returned in block/logIndex order so consumers see the same sequence as for one big request.
+   */
+  private List<Log> fetchLogs(List<String> addresses, int from, int to, int step)
+      throws Exception {
+    List<int[]> ranges = new ArrayList<>();
+    int start = from;
+    while (start <= to) {
+      int end = Math.min(start + step, to);
+      ranges.add(new int[]{start, end});
+      start = end + 1;
+    }
+    long startTime = System.currentTimeMillis();
+    if (ranges.size() <= 1 || catchUpExecutor == null) {
+      List<Log> logs = toLogs(web3Functions.fetchContractLogs(addresses, from, to, network));
+      blockStep.onSuccess(to - from, logs.size(), System.currentTimeMillis() - startTime);
+      return logs;
+    }
+    List<Future<List<Log>>> futures = new ArrayList<>();
+    for (int[] range : ranges) {
+      futures.add(catchUpExecutor.submit(() -> toLogs(
+          web3Functions.fetchContractLogs(addresses, range[0], range[1], network))));
+    }
+    List<Log> logs = new ArrayList<>();
     try {
-      Web3Model<T> model = new Web3Model<>(o, network);
-      while (!queue.offer(model, 15, SECONDS)) {
-        log.warn("The queue is full for {} {}, size {}. All queues this type {}",
-            network, name, queue.size(), queues);
+      for (Future<List<Log>> future : futures) {
+        logs.addAll(future.get());
       }
-    } catch (Exception e) {
-      log.error("Error write in queue", e);
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(true));
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+    logs.sort(LOG_ORDER);
+    // windows are fetched in parallel, so the latency relates to each of them
+    blockStep.onSuccess(step, logs.size() / ranges.size(),
+        System.currentTimeMillis() - startTime);
+    log.info("{} catch-up fetched {} ranges from {} to {}", network, ranges.size(), from, to);
+    return logs;
+  }
+
+  @SuppressWarnings("rawtypes")
+  private static List<Log> toLogs(List<LogResult> logResults) {
+    List<Log> logs = new ArrayList<>();
+    for (LogResult logResult : logResults) {
+      Log ethLog = (Log) logResult.get();
+      if (ethLog == null) {
+        continue;
+      }
+      logs.add(ethLog);
+    }
+    return logs;
+  }
+
+  /**
+   * A consumer checkpoint is the last block of the latest window with all logs processed by the
+   * consumer. The common last log block is the minimum of them, so after a restart no consumer
+   * misses logs, and faster consumers skip what they have already seen with duplicate checks.
+   *
+   * @param defaultBlock checkpoint for consumers without processed windows
+   */
+  private void saveCheckpoints(long defaultBlock) {
+    long minBlock = Long.MAX_VALUE;
+    long minProcessed = Long.MAX_VALUE;
+    for (RingBuffer.Cursor<Web3Model<Log>> cursor : logBus.getCursors()) {
+      long processed = cursor.getProcessed();
+      minProcessed = Math.min(minProcessed, processed);
+      Long saved = checkpoints.get(cursor.getName());
+      long block = saved == null ? defaultBlock : saved;
+      for (long[] window : windows) {
+        if (window[0] > processed) {
+          break;
+        }
+        block = Math.max(block, window[1]);
+      }
+      checkpoints.put(cursor.getName(), block);
+      minBlock = Math.min(minBlock, block);
     }
+    if (minBlock == Long.MAX_VALUE) {
+      // nobody listens, nothing to keep
+      minBlock = windows.getLast()[1];
+      windows.clear();
+    } else {
+      // the last window stays for windows without logs
+      while (windows.size() > 1 && windows.peekFirst()[0] <= minProcessed) {
+        windows.pollFirst();
+      }
+    }
+    if (minBlock != lastSavedBlock) {
+      saveLastLog(minBlock);
+      lastSavedBlock = minBlock;
+    }
+  }
+
+  private void saveLastLog(long block) {
+    LogLastEntity logLastEntity = new LogLastEntity();
+    logLastEntity.setNetwork(network);
+    logLastEntity.setBlock(block);
+    logLastRepository.save(logLastEntity);
   }
 }
@@ -2,6 +2,8 @@ package pro.belbix.ethparser.web3;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -21,8 +23,10 @@ public abstract class Web3Parser<T extends DtoI, K> {
 
   protected final BlockingQueue<Web3Model<K>> input = new ArrayBlockingQueue<>(INPUT_QUEUE_SIZE);
   protected final BlockingQueue<T> output = new ArrayBlockingQueue<>(OUTPUT_OUTPUT_SIZE);
+  // parsers subscribed on a bus read it instead of the input queue
+  protected RingBuffer.CursorGroup<Web3Model<K>> inputCursor;
   protected static final AtomicBoolean run = new AtomicBoolean(true);
-  protected Instant lastTx = Instant.now();
+  protected volatile Instant lastTx = Instant.now();
   private int emptyMessageCount = 0;
 
   private final ParserInfo parserInfo;
@@ -42,47 +46,132 @@ public abstract class Web3Parser<T extends DtoI, K> {
   public void startParse() {
     parserInfo.addParser(this);
     subscribeToInput();
+    int workers = workers();
+    if (workers > 1) {
+      startPartitioned(workers);
+      return;
+    }
     new Thread(() -> {
       while (run.get()) {
-        Web3Model<K> web3Model = null;
-        try {
-          web3Model = input.poll(5, TimeUnit.SECONDS);
-          if (web3Model == null) {
-            incrementAndPrintEmptyCount();
+        Web3Model<K> web3Model = pollInput();
+        if (web3Model != null) {
+          handle(web3Model);
+        }
+      }
+    }).start();
+  }
+
+  /**
+   * Models with the same partition key are handled by the same worker in the input order, models
+   * with different keys are handled in parallel.
+   */
+  private void startPartitioned(int workers) {
+    List<BlockingQueue<Partitioned<K>>> queues = new ArrayList<>();
+    for (int i = 0; i < workers; i++) {
+      BlockingQueue<Partitioned<K>> queue = new ArrayBlockingQueue<>(INPUT_QUEUE_SIZE);
+      queues.add(queue);
+      new Thread(() -> {
+        while (run.get()) {
+          Partitioned<K> partitioned;
+          try {
+            partitioned = queue.poll(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            return;
           }
-          if (web3Model == null || !isActiveForNetwork(web3Model.getNetwork())) {
+          if (partitioned == null) {
             continue;
           }
-          Instant startParse = Instant.now();
-          T dto = parse(web3Model.getValue(), web3Model.getNetwork());
-          if (dto != null && run.get()) {
-            log.trace("Web3Object for {} parsed by {}",
-                getClass().getSimpleName(), Duration.between(startParse, Instant.now()).toMillis());
-            lastTx = Instant.now();
-            if (save(dto) && run.get()) {
-              log.trace("Web3Object for {} persisted by {}",
-                  getClass().getSimpleName(), Duration.between(lastTx, Instant.now()).toMillis());
-              sendToWs(dto);
+          try {
+            handle(partitioned.web3Model);
+          } finally {
+            if (partitioned.release != null) {
+              partitioned.release.run();
             }
           }
-        } catch (Exception e) {
-          // don't show errors after shutdown
-          if (run.get()) {
-            log.error("Error in loop {} with {}",
-                this.getClass().getSimpleName(), web3Model, e);
-            errorDbService.saveErrorWeb3ModelToDb(web3Model, getClass().getSimpleName());
-          } else {
-            log.debug("After shutdown - Error in loop {} with {}",
-                this.getClass().getSimpleName(), web3Model, e);
-          }
-          if (appProperties.isStopOnParseError()) {
-            System.exit(-1);
+        }
+      }, getClass().getSimpleName() + "-" + i).start();
+    }
+    new Thread(() -> {
+      int next = 0;
+      while (run.get()) {
+        Web3Model<K> web3Model = pollInput();
+        if (web3Model == null) {
+          continue;
+        }
+        Runnable release = inputCursor != null ? inputCursor.detach() : null;
+        String key = partitionKey(web3Model.getValue());
+        int worker;
+        if (key == null) {
+          worker = next++ % workers;
+        } else {
+          worker = Math.floorMod(key.toLowerCase().hashCode(), workers);
+        }
+        Partitioned<K> partitioned = new Partitioned<>(web3Model, release);
+        try {
+          while (!queues.get(worker).offer(partitioned, 5, TimeUnit.SECONDS)) {
+            if (!run.get()) {
+              return;
+            }
+            log.debug("Worker queue {} is full for {}", worker, getClass().getSimpleName());
           }
+        } catch (InterruptedException e) {
+          return;
         }
       }
     }).start();
   }
 
+  private Web3Model<K> pollInput() {
+    Web3Model<K> web3Model = null;
+    try {
+      if (inputCursor != null) {
+        web3Model = inputCursor.poll(5, TimeUnit.SECONDS);
+      } else {
+        web3Model = input.poll(5, TimeUnit.SECONDS);
+      }
+    } catch (InterruptedException e) {
+      log.warn("Interrupted input poll for {}", getClass().getSimpleName());
+    }
+    if (web3Model == null) {
+      incrementAndPrintEmptyCount();
+    }
+    return web3Model;
+  }
+
+  private void handle(Web3Model<K> web3Model) {
+    try {
+      if (!isActiveForNetwork(web3Model.getNetwork())) {
+        return;
+      }
+      Instant startParse = Instant.now();
+      T dto = parse(web3Model.getValue(), web3Model.getNetwork());
+      if (dto != null && run.get()) {
+        log.trace("Web3Object for {} parsed by {}",
+            getClass().getSimpleName(), Duration.between(startParse, Instant.now()).toMillis());
+        Instant parsed = Instant.now();
+        lastTx = parsed;
+        if (save(dto) && run.get()) {
+          log.trace("Web3Object for {} persisted by {}",
+              getClass().getSimpleName(), Duration.between(parsed, Instant.now()).toMillis());
+          sendToWs(dto);
+        }
+      }
+    } catch (Exception e) {
+      // don't show errors after shutdown
+      if (run.get()) {
+        log.error("Error in loop {} with {}",
+            this.getClass().getSimpleName(), web3Model, e);
+        errorDbService.saveErrorWeb3ModelToDb(web3Model, getClass().getSimpleName());
+      } else {
+        log.debug("After shutdown - Error in loop {} with {}",
+            this.getClass().getSimpleName(), web3Model, e);
+      }
+      if (appProperties.isStopOnParseError()) {
+        System.exit(-1);
+      }
+    }
+  }
+
   private void incrementAndPrintEmptyCount() {
     emptyMessageCount++;
     log.trace("Handled {} empty messages fro {}",
@@ -92,6 +181,21 @@ public abstract class Web3Parser<T extends DtoI, K> {
 
   protected abstract void subscribeToInput();
 
+  /**
+   * Parsers with more than one worker must be thread safe and define partition keys for models
+   * that need ordered processing.
+   */
+  protected int workers() {
+    return 1;
+  }
+
+  /**
+   * @return key of models that must be handled in the input order, null for any order
+   */
+  protected String partitionKey(K value) {
+    return null;
+  }
+
   public abstract T parse(K ethObject, String network);
 
   protected abstract boolean save(T dto);
@@ -125,4 +229,16 @@ public abstract class Web3Parser<T extends DtoI, K> {
   public Instant getLastTx() {
     return lastTx;
   }
+
+  private static class Partitioned<K> {
+
+    private final Web3Model<K> web3Model;
+    // releases the bus entry, null for the input queue
+    private final Runnable release;
+
+    private Partitioned(Web3Model<K> web3Model, Runnable release) {
+      this.web3Model = web3Model;
+      this.release = release;
+    }
+  }
 }
@@ -1,14 +1,16 @@
 package pro.belbix.ethparser.web3;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicBoolean;
 import lombok.extern.log4j.Log4j2;
 import okhttp3.OkHttpClient;
 import org.apache.logging.log4j.util.Strings;
 import org.web3j.protocol.Web3j;
-import org.web3j.protocol.exceptions.ClientConnectionException;
 import org.web3j.protocol.http.HttpService;
 import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.properties.NetworkProperties;
@@ -18,20 +20,27 @@ abstract class Web3Service {
 
   private static final AtomicBoolean run = new AtomicBoolean(true);
   public final static int RETRY_COUNT = 5000;
+  // response with this prefix means that the request range should be reduced
+  final static String RANGE_TOO_BIG = "Range too big: ";
   private final String network;
   final AppProperties appProperties;
   final NetworkProperties networkProperties;
+  private final MeterRegistry meterRegistry;
+  // endpoint of the current call, requests should be built and sent via the same node
+  private final ThreadLocal<Web3Endpoint> currentEndpoint = new ThreadLocal<>();
 
-  private Web3j web3;
+  private Web3EndpointPool pool;
   private boolean init = false;
   private transient boolean initStarted = false;
 
   public Web3Service(String network,
       AppProperties appProperties,
-      NetworkProperties networkProperties) {
+      NetworkProperties networkProperties,
+      MeterRegistry meterRegistry) {
     this.network = network;
     this.appProperties = appProperties;
     this.networkProperties = networkProperties;
+    this.meterRegistry = meterRegistry;
   }
 
   void init() {
@@ -44,23 +53,38 @@ abstract class Web3Service {
       throw new IllegalStateException("Web3 url not defined");
     }
     int timeout = networkProperties.get(network).getWeb3Timeout();
-    web3 = Web3j.build(
-        new HttpService(
-            web3Url,
-            new OkHttpClient.Builder()
-                .readTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
-                .callTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
-                .writeTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
-                .connectTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
-                .build(),
-            false)
-    );
-    log.info("{} web3 service successfully connected", network);
+    List<Web3Endpoint> endpoints = new ArrayList<>();
+    for (String url : web3Url.split(",")) {
+      if (Strings.isBlank(url)) {
+        continue;
+      }
+      Web3j web3 = Web3j.build(
+          new HttpService(
+              url.trim(),
+              new OkHttpClient.Builder()
+                  .readTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
+                  .callTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
+                  .writeTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
+                  .connectTimeout(Duration.of(timeout, ChronoUnit.SECONDS))
+                  .build(),
+              false)
+      );
+      endpoints.add(new Web3Endpoint(url.trim(), web3));
+    }
+    pool = new Web3EndpointPool(endpoints, network, meterRegistry);
+    log.info("{} web3 service successfully connected to {} endpoints", network, pool.size());
     init = true;
   }
 
+  /**
+   * Web3j of the node chosen for the current call or any healthy node outside of calls.
+   */
   Web3j getWeb3() {
-    return web3;
+    Web3Endpoint endpoint = currentEndpoint.get();
+    if (endpoint != null) {
+      return endpoint.getWeb3();
+    }
+    return pool.any().getWeb3();
   }
 
   void waitInit() {
@@ -85,53 +109,102 @@ abstract class Web3Service {
   void close() {
     log.info("Close {} web3 service", network);
     run.set(false);
-    if (web3 != null) {
-      web3.shutdown();
+    if (pool != null) {
+      pool.getEndpoints().forEach(e -> e.getWeb3().shutdown());
     }
     init = false;
     initStarted = false;
   }
 
   public <T> T callWithRetry(Callable<T> callable, String logMessage) {
+    int idx = logMessage.indexOf(' ');
+    return callWithRetry(callable, idx < 0 ? logMessage : logMessage.substring(0, idx),
+        logMessage);
+  }
+
+  /**
+   * Call with retries until a result, a not retryable error or the call deadline.
+   *
+   * @param method name for metrics, should have low cardinality
+   */
+  public <T> T callWithRetry(Callable<T> callable, String method, String logMessage) {
+    return call(callable, method, logMessage, RETRY_COUNT);
+  }
+
+  /**
+   * Call without retries, for callers that have their own fallback and must not wait for the
+   * call deadline.
+   */
+  public <T> T callOnce(Callable<T> callable, String method, String logMessage) {
+    return call(callable, method, logMessage, 0);
+  }
+
+  private <T> T call(Callable<T> callable, String method, String logMessage, int retries) {
     int count = 0;
+    long deadline = System.currentTimeMillis()
+        + networkProperties.get(network).getWeb3CallDeadline() * 1000L;
     while (run.get()) {
       waitInit();
       T result = null;
       Exception lastError = null;
+      Web3Endpoint endpoint = pool.acquire();
+      Web3Endpoint outerEndpoint = currentEndpoint.get();
+      currentEndpoint.set(endpoint);
+      long start = System.currentTimeMillis();
       try {
         result = callable.call();
       } catch (IllegalStateException e) {
-        if (e.getMessage().startsWith("Not retryable response")) {
-          return null;
+        if (e.getMessage() != null && e.getMessage().startsWith(RANGE_TOO_BIG)) {
+          endpoint.release(System.currentTimeMillis() - start);
+          throw e;
         }
-      } catch (ClientConnectionException e) {
-        if (e.getMessage().contains("Invalid method parameter(s)")) {
-          return null;
-        }
-        log.warn(logMessage + " Retryable client error", e);
         lastError = e;
       } catch (Exception e) { //by default all errors, but can be filtered by type
-        log.warn(logMessage + " Retryable error", e);
         lastError = e;
+      } finally {
+        currentEndpoint.set(outerEndpoint);
       }
 
+      Web3ErrorType errorType = Web3ErrorType.classify(lastError);
+      long now = System.currentTimeMillis();
       if (result != null) {
+        endpoint.onSuccess(now - start);
         return result;
+      } else if (errorType.isEndpointFailure()) {
+        endpoint.onFailure(now - start, now);
+      } else {
+        endpoint.release(now - start);
+      }
+
+      if (!errorType.isRetryable()) {
+        countFailure(method, errorType);
+        return null;
       }
       count++;
-      if (count > RETRY_COUNT) {
-        if (lastError != null) {
-          lastError.printStackTrace();
-        }
+      long delay = errorType.delay(count);
+      if (count > retries || now + delay > deadline) {
+        log.error("{} failed after {} retries, last error {}",
+            logMessage, count, errorType, lastError);
+        countFailure(method, errorType);
         return null;
       }
-      log.warn("Fail call web3, retry " + count);
+      if (lastError != null) {
+        log.warn(logMessage + " Retryable " + errorType + " error", lastError);
+      }
+      log.warn("Fail call web3 {}, retry {} after {}ms", method, count, delay);
+      meterRegistry.counter("ethparser.web3.retries",
+          "network", network, "method", method, "type", errorType.name()).increment();
       try {
         //noinspection BusyWait
-        Thread.sleep(1000);
+        Thread.sleep(delay);
       } catch (InterruptedException ignore) {
       }
     }
     return null;
   }
+
+  private void countFailure(String method, Web3ErrorType errorType) {
+    meterRegistry.counter("ethparser.web3.failures",
+        "network", network, "method", method, "type", errorType.name()).increment();
+  }
 }
@@ -2,10 +2,13 @@ package pro.belbix.ethparser.web3;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.reactivex.disposables.Disposable;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -22,12 +25,15 @@ import org.web3j.protocol.core.methods.response.Transaction;
 import pro.belbix.ethparser.entity.LogLastEntity;
 import pro.belbix.ethparser.entity.TransactionLastEntity;
 import pro.belbix.ethparser.entity.a_layer.EthBlockEntity;
+import pro.belbix.ethparser.entity.contracts.ContractEntity;
 import pro.belbix.ethparser.model.Web3Model;
 import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.properties.NetworkProperties;
+import pro.belbix.ethparser.properties.NetworkPropertiesI;
 import pro.belbix.ethparser.repositories.LogLastRepository;
 import pro.belbix.ethparser.repositories.TransactionLastRepository;
 import pro.belbix.ethparser.repositories.a_layer.EthBlockRepository;
+import pro.belbix.ethparser.web3.contracts.ContractType;
 import pro.belbix.ethparser.web3.contracts.ContractUtils;
 import pro.belbix.ethparser.web3.contracts.db.ContractDbService;
 import pro.belbix.ethparser.web3.deployer.db.DeployerDbService;
@@ -40,6 +46,7 @@ public class Web3Subscriber {
 
   private static final AtomicBoolean run = new AtomicBoolean(true);
   private final Web3Functions web3Functions;
+  private final EthBlockService ethBlockService;
   private final AppProperties appProperties;
   private final UniswapDbService uniswapDbService;
   private final VaultActionsDBService vaultActionsDBService;
@@ -49,9 +56,12 @@ public class Web3Subscriber {
   private final DeployerDbService deployerDbService;
   private final LogLastRepository logLastRepository;
   private final TransactionLastRepository transactionLastRepository;
+  private final MeterRegistry meterRegistry;
 
   private final List<BlockingQueue<Web3Model<Transaction>>> transactionConsumers = new ArrayList<>();
-  private final Map<String, BlockingQueue<Web3Model<Log>>> logConsumers = new HashMap<>();
+  // one bus for each network, producers don't hold each other
+  private final Map<String, RingBuffer<Web3Model<Log>>> logBuses = new LinkedHashMap<>();
+  private final LogRouter logRouter = new LogRouter();
   private final List<BlockingQueue<Web3Model<EthBlock>>> blockConsumers = new ArrayList<>();
   private final Map<String, Disposable> subscriptions = new HashMap<>();
 
@@ -59,6 +69,7 @@ public class Web3Subscriber {
   private final Map<String, Web3TransactionFlowable> web3TransactionFlowable = new HashMap<>();
 
   public Web3Subscriber(Web3Functions web3Functions,
+      EthBlockService ethBlockService,
       AppProperties appProperties,
       UniswapDbService uniswapDbService,
       VaultActionsDBService vaultActionsDBService,
@@ -67,8 +78,10 @@ public class Web3Subscriber {
       ContractDbService contractDbService,
       DeployerDbService deployerDbService,
       LogLastRepository logLastRepository,
-      TransactionLastRepository transactionLastRepository) {
+      TransactionLastRepository transactionLastRepository,
+      MeterRegistry meterRegistry) {
     this.web3Functions = web3Functions;
+    this.ethBlockService = ethBlockService;
     this.appProperties = appProperties;
     this.uniswapDbService = uniswapDbService;
     this.vaultActionsDBService = vaultActionsDBService;
@@ -78,6 +91,11 @@ public class Web3Subscriber {
     this.deployerDbService = deployerDbService;
     this.logLastRepository = logLastRepository;
     this.transactionLastRepository = transactionLastRepository;
+    this.meterRegistry = meterRegistry;
+    for (String network : appProperties.getNetworks()) {
+      logBuses.put(network, new RingBuffer<>("log_" + network, appProperties.getLogBusSize(),
+          RingWaitStrategy.valueOf(appProperties.getLogBusWaitStrategy()), meterRegistry));
+    }
   }
 
   public void subscribeLogFlowable(String network) {
@@ -93,10 +111,20 @@ public class Web3Subscriber {
     } else {
       from = new BigInteger(networkProperties.get(network).getStartLogBlock()).intValue();
     }
-    startLogFlowableThread(contractDbService::getSubscriptions, from, network);
+    startLogFlowableThread(this::logSubscriptions, from, network);
     log.info("Subscribe to Log Flowable from {}", from);
   }
 
+  /**
+   * Routes are updated with the same contracts as the log filter, so a log from a new contract
+   * is routed with its type.
+   */
+  private List<String> logSubscriptions() {
+    List<ContractEntity> contracts = contractDbService.getAllContracts();
+    logRouter.updateContracts(contracts);
+    return contractDbService.getSubscriptions(contracts);
+  }
+
   public void subscribeTransactionFlowable(String network) {
     if (!networkProperties.get(network).isParseTransactions()) {
       return;
@@ -191,15 +219,35 @@ public class Web3Subscriber {
         addressesSupplier,
         from,
         web3Functions,
-        logConsumers,
+        ethBlockService,
+        logBus(network),
+        logRouter,
         network,
         () -> logBlockLimitation(network),
-        networkProperties.get(network).getBlockStep(),
+        createBlockStepController("log", BlockStepController.LOG_RESULTS_LIMIT, network),
+        networkProperties.get(network).getLogCatchUpThreads(),
         logLastRepository);
     new Thread(logFlowable).start();
     web3LogFlowable.put(network, logFlowable);
   }
 
+  private BlockStepController createBlockStepController(
+      String name, int resultsLimit, String network) {
+    NetworkPropertiesI properties = networkProperties.get(network);
+    if (!properties.isAdaptiveBlockStep()) {
+      return BlockStepController.fixed(name, properties.getBlockStep(), network, meterRegistry);
+    }
+    return new BlockStepController(
+        name,
+        properties.getBlockStep(),
+        properties.getMinBlockStep(),
+        properties.getMaxBlockStep(),
+        properties.getBlockWindowTargetMs(),
+        resultsLimit,
+        network,
+        meterRegistry);
+  }
+
   private Long logBlockLimitation(String network) {
     if (appProperties.isLogBlockLimitations()
         && networkProperties.get(network).isParseTransactions()) {
@@ -218,7 +266,7 @@ public class Web3Subscriber {
             web3Functions,
             transactionConsumers,
             network,
-            networkProperties.get(network).getBlockStep(),
+            createBlockStepController("transaction", Integer.MAX_VALUE, network),
             transactionLastRepository);
     new Thread(web3TransactionFlowable)
         .start();
@@ -229,8 +277,30 @@ public class Web3Subscriber {
     transactionConsumers.add(queue);
   }
 
-  public void subscribeOnLogs(BlockingQueue<Web3Model<Log>> queue, String name) {
-    logConsumers.put(name, queue);
+  /**
+   * Each consumer reads logs with own pace, a lagging consumer doesn't hold others until the log
+   * bus is full.
+   *
+   * @param topics first topics of consumed logs, null for all logs
+   * @param types  types of contracts emitting consumed logs, null for any address
+   */
+  public synchronized RingBuffer.CursorGroup<Web3Model<Log>> subscribeOnLogs(String name,
+      Collection<String> topics, Collection<ContractType> types) {
+    List<RingBuffer.Cursor<Web3Model<Log>>> cursors = new ArrayList<>();
+    for (RingBuffer<Web3Model<Log>> logBus : logBuses.values()) {
+      cursors.add(logBus.addConsumer(name));
+    }
+    // consumers are added to all buses in the same order, so indexes are equal
+    logRouter.addConsumer(cursors.get(0).getIndex(), topics, types);
+    return new RingBuffer.CursorGroup<>(cursors);
+  }
+
+  private RingBuffer<Web3Model<Log>> logBus(String network) {
+    RingBuffer<Web3Model<Log>> logBus = logBuses.get(network);
+    if (logBus == null) {
+      throw new IllegalStateException("No log bus for " + network);
+    }
+    return logBus;
   }
 
   public void subscribeOnBlocks(BlockingQueue<Web3Model<EthBlock>> queue) {
@@ -261,6 +331,7 @@ public class Web3Subscriber {
     run.set(false);
     web3TransactionFlowable.values().forEach(Web3TransactionFlowable::stop);
     web3LogFlowable.values().forEach(Web3LogFlowable::stop);
+    logBuses.values().forEach(RingBuffer::stop);
     subscriptions.forEach((s, disposable) -> {
       if (disposable != null && !disposable.isDisposed()) {
         disposable.dispose();
@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import lombok.extern.log4j.Log4j2;
 import org.web3j.protocol.core.methods.response.EthBlock.Block;
 import org.web3j.protocol.core.methods.response.Transaction;
@@ -23,7 +24,7 @@ public class Web3TransactionFlowable implements Runnable {
   private final Web3Functions web3Functions;
   private final List<BlockingQueue<Web3Model<Transaction>>> transactionConsumers;
   private final String network;
-  private final int blockStep;
+  private final BlockStepController blockStep;
   private final TransactionLastRepository transactionLastRepository;
   private Integer from;
   private BigInteger lastBlock;
@@ -34,7 +35,7 @@ public class Web3TransactionFlowable implements Runnable {
       Web3Functions web3Functions,
       List<BlockingQueue<Web3Model<Transaction>>> transactionConsumers,
       String network,
-      int blockStep,
+      BlockStepController blockStep,
       TransactionLastRepository transactionLastRepository) {
     this.web3Functions = web3Functions;
     this.from = from;
@@ -56,7 +57,8 @@ public class Web3TransactionFlowable implements Runnable {
     while (run.get()) {
       try {
         currentBlock = web3Functions.fetchCurrentBlock(network);
-        if (lastBlock != null && lastBlock.intValue() >= currentBlock.intValue()) {
+        if (lastBlock != null && lastBlock.intValue() >= currentBlock.intValue()
+            && (from == null || from > currentBlock.intValue())) {
           Thread.sleep(WAIT_BETWEEN_BLOCKS);
           continue;
         }
@@ -65,22 +67,28 @@ public class Web3TransactionFlowable implements Runnable {
         if (from == null) {
           from = to;
         } else {
+          int step = blockStep.getStep();
           int diff = to - from;
-          if (diff > blockStep) {
-            to = from + blockStep;
+          if (diff > step) {
+            to = from + step;
           }
         }
         AtomicInteger counter = new AtomicInteger(0);
-        web3Functions.findBlocksByBlockBatch(from, to, network)
+        long startTime = System.currentTimeMillis();
+        List<Block> blocks = web3Functions.findBlocksByBlockBatch(from, to, network)
             .sorted(Comparator.comparing(Block::getNumber))
-            .forEach(block ->
-                transactionConsumers.forEach(queue ->
-                    block.getTransactions().forEach(t -> {
-                      counter.incrementAndGet();
-                      writeInQueue(queue, (Transaction) t.get(), transactionConsumers.size());
-                    })
-                )
-            );
+            .collect(Collectors.toList());
+        blockStep.onSuccess(to - from,
+            blocks.stream().mapToInt(b -> b.getTransactions().size()).sum(),
+            System.currentTimeMillis() - startTime);
+        blocks.forEach(block ->
+            transactionConsumers.forEach(queue ->
+                block.getTransactions().forEach(t -> {
+                  counter.incrementAndGet();
+                  writeInQueue(queue, (Transaction) t.get(), transactionConsumers.size());
+                })
+            )
+        );
         lastParsedBlock = to;
         saveLast(to);
         log.info("Parse {} transactions from {} to {} on block: {} - {}",
@@ -88,6 +96,7 @@ public class Web3TransactionFlowable implements Runnable {
         from = to + 1;
       } catch (Exception e) {
         log.error("Error in transaction flow", e);
+        blockStep.onFailure();
       }
     }
   }
@@ -13,18 +13,22 @@ import static pro.belbix.ethparser.web3.abi.FunctionsNames.TOKEN1;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.ZERO_ADDRESS;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
+import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
 import org.web3j.abi.datatypes.Address;
 import org.web3j.abi.datatypes.Bool;
@@ -56,16 +60,20 @@ public class FunctionsUtils {
   public final static String TYPE_STR = "str";
   public final static String TYPE_INT = "int";
   public final static String TYPE_BOOL = "bool";
+  private final static int MULTICALL_MAX_CALLS = 100;
 
-  private final Map<String, Function> functionsCache = new HashMap<>();
+  private final Map<String, Function> functionsCache = new ConcurrentHashMap<>();
 
   private final Web3Functions web3Functions;
   private final ContractDbService contractDbService;
+  private final MeterRegistry meterRegistry;
 
   public FunctionsUtils(Web3Functions web3Functions,
-      ContractDbService contractDbService) {
+      ContractDbService contractDbService,
+      MeterRegistry meterRegistry) {
     this.web3Functions = web3Functions;
     this.contractDbService = contractDbService;
+    this.meterRegistry = meterRegistry;
   }
 
   // todo complex functions should be decomposed and use simple calls ************************
@@ -213,6 +221,24 @@ public class FunctionsUtils {
     return callUint256Function(findSimpleFunction(functionName, TYPE_INT), hash, block, network);
   }
 
+  /**
+   * Independent uint256 calls without arguments for one contract, sent in one batch.
+   */
+  public Map<String, Optional<BigInteger>> callIntByNames(
+      List<String> functionNames,
+      String hash,
+      Long block,
+      String network) {
+    Map<String, CompletableFuture<List<Type>>> futures = new LinkedHashMap<>();
+    for (String functionName : functionNames) {
+      futures.put(functionName, web3Functions.callFunctionAsync(
+          findSimpleFunction(functionName, TYPE_INT), hash, resolveBlock(block), network));
+    }
+    Map<String, Optional<BigInteger>> result = new LinkedHashMap<>();
+    futures.forEach((name, future) -> result.put(name, firstUint256(future.join())));
+    return result;
+  }
+
   public Optional<Boolean> callBoolByName(String functionName, String hash, Long block,
       String network) {
     return callBoolFunction(findSimpleFunction(functionName, TYPE_BOOL), hash, block, network);
@@ -248,8 +274,84 @@ public class FunctionsUtils {
 
   public Optional<String> callViewFunction(Function function, String address, long block,
       String network) {
-    List<Type> response = web3Functions.callFunction(function, address,
+    return toStringValue(web3Functions.callFunction(function, address,
+        DefaultBlockParameter.valueOf(BigInteger.valueOf(block)), network));
+  }
+
+  /**
+   * Call functions without arguments of one contract. All calls go in one multicall aggregation if
+   * the network has a multicall contract at this block, otherwise in one JSON-RPC batch.
+   *
+   * @return values by function names, failed calls are absent
+   */
+  public Map<String, String> callViewFunctions(List<Function> functions, String address,
+      long block, String network) {
+    Map<String, String> values = new LinkedHashMap<>();
+    if (functions.isEmpty()) {
+      return values;
+    }
+    String multicall = ContractUtils.getMulticall(block, network);
+    List<Function> rest = functions;
+    if (multicall != null) {
+      rest = new ArrayList<>();
+      for (int i = 0; i < functions.size(); i += MULTICALL_MAX_CALLS) {
+        List<Function> chunk =
+            functions.subList(i, Math.min(i + MULTICALL_MAX_CALLS, functions.size()));
+        if (!multicall(chunk, address, multicall, block, network, values)) {
+          rest.addAll(chunk);
+        }
+      }
+    }
+
+    Map<Function, CompletableFuture<List<Type>>> futures = new LinkedHashMap<>();
+    for (Function function : rest) {
+      futures.put(function, web3Functions.callFunctionAsync(function, address,
+          DefaultBlockParameter.valueOf(BigInteger.valueOf(block)), network));
+    }
+    futures.forEach((function, future) ->
+        toStringValue(future.join()).ifPresent(v -> values.put(function.getName(), v)));
+    return values;
+  }
+
+  private boolean multicall(List<Function> functions, String address, String multicall,
+      long block, String network, Map<String, String> values) {
+    String response = web3Functions.callFunctionRaw("tryAggregate", multicall,
+        MulticallCodec.encodeTryAggregate(functions, address),
         DefaultBlockParameter.valueOf(BigInteger.valueOf(block)), network);
+    if (response == null) {
+      log.warn("Multicall failed for {} at {}, fallback to batch", address, block);
+      return false;
+    }
+    List<String> results;
+    try {
+      results = MulticallCodec.decodeTryAggregate(response);
+    } catch (Exception e) {
+      log.warn("Can't decode multicall response for {} at {}", address, block, e);
+      return false;
+    }
+    if (results.size() != functions.size()) {
+      log.warn("Multicall returned {} results for {} calls", results.size(), functions.size());
+      return false;
+    }
+    for (int i = 0; i < functions.size(); i++) {
+      Function function = functions.get(i);
+      if (results.get(i) == null) {
+        continue;
+      }
+      try {
+        toStringValue(FunctionReturnDecoder.decode(results.get(i),
+            function.getOutputParameters()))
+            .ifPresent(v -> values.put(function.getName(), v));
+      } catch (Exception e) {
+        log.warn("Error decode multicall response {} for {}", function.getName(), address);
+      }
+    }
+    meterRegistry.counter("ethparser.web3.multicall.saved", "network", network)
+        .increment(functions.size() - 1);
+    return true;
+  }
+
+  private static Optional<String> toStringValue(List<Type> response) {
     if (response == null || response.isEmpty()) {
       return Optional.empty();
     }
@@ -371,10 +473,13 @@ public class FunctionsUtils {
 
   private Optional<BigInteger> callUint256Function(Function function, String hash, Long block,
       String network) {
-    List<Type> types = web3Functions.callFunction(function, hash, resolveBlock(block), network);
+    return firstUint256(
+        web3Functions.callFunction(function, hash, resolveBlock(block), network));
+  }
+
+  private static Optional<BigInteger> firstUint256(List<Type> types) {
     if (types == null || types.isEmpty()) {
       // we use an absent function for determination a contract type
-//      log.warn(function.getName() + " Wrong callback for hash: " + hash);
       return Optional.empty();
     }
     return Optional.ofNullable((BigInteger) types.get(0).getValue());
@@ -0,0 +1,95 @@
+package pro.belbix.ethparser.web3.abi;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.web3j.abi.FunctionEncoder;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.crypto.Hash;
+import org.web3j.utils.Numeric;
+
+/**
+ * ABI codec for Multicall2 tryAggregate(bool,(address,bytes)[]). Written by hand because web3j
+ * can't decode arrays of dynamic structs reliably.
+ */
+public class MulticallCodec {
+
+  private final static int WORD = 32;
+  private final static String TRY_AGGREGATE_ID =
+      Hash.sha3String("tryAggregate(bool,(address,bytes)[])").substring(0, 10);
+
+  private MulticallCodec() {
+  }
+
+  /**
+   * Encode tryAggregate call without the requirement of success for each call.
+   */
+  public static String encodeTryAggregate(List<Function> functions, String address) {
+    List<byte[]> callsData = new ArrayList<>();
+    for (Function function : functions) {
+      callsData.add(Numeric.hexStringToByteArray(FunctionEncoder.encode(function)));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writeWord(out, BigInteger.ZERO); // requireSuccess = false
+    writeWord(out, BigInteger.valueOf(2 * WORD)); // offset of the calls array
+    writeWord(out, BigInteger.valueOf(callsData.size()));
+    // offsets of tuples relative to the start of the array content
+    long offset = (long) callsData.size() * WORD;
+    for (byte[] data : callsData) {
+      writeWord(out, BigInteger.valueOf(offset));
+      offset += 3 * WORD + padded(data.length);
+    }
+    byte[] target = Numeric.toBytesPadded(Numeric.toBigInt(address), WORD);
+    for (byte[] data : callsData) {
+      out.writeBytes(target);
+      writeWord(out, BigInteger.valueOf(2 * WORD)); // offset of bytes inside the tuple
+      writeWord(out, BigInteger.valueOf(data.length));
+      out.writeBytes(Arrays.copyOf(data, padded(data.length)));
+    }
+    return TRY_AGGREGATE_ID + Numeric.toHexStringNoPrefix(out.toByteArray());
+  }
+
+  /**
+   * Decode (bool success, bytes returnData)[] response.
+   *
+   * @return hex return data for each call or null for failed calls
+   */
+  public static List<String> decodeTryAggregate(String response) {
+    byte[] data = Numeric.hexStringToByteArray(response);
+    int arrayStart = readInt(data, 0);
+    int size = readInt(data, arrayStart);
+    int contentStart = arrayStart + WORD;
+    List<String> results = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      int tupleStart = contentStart + readInt(data, contentStart + i * WORD);
+      boolean success = readInt(data, tupleStart) != 0;
+      int bytesStart = tupleStart + readInt(data, tupleStart + WORD);
+      int length = readInt(data, bytesStart);
+      if (!success) {
+        results.add(null);
+        continue;
+      }
+      results.add(Numeric.toHexString(
+          Arrays.copyOfRange(data, bytesStart + WORD, bytesStart + WORD + length)));
+    }
+    return results;
+  }
+
+  private static int padded(int length) {
+    return (length + WORD - 1) / WORD * WORD;
+  }
+
+  private static void writeWord(ByteArrayOutputStream out, BigInteger value) {
+    out.writeBytes(Numeric.toBytesPadded(value, WORD));
+  }
+
+  private static int readInt(byte[] data, int offset) {
+    if (offset < 0 || offset + WORD > data.length) {
+      throw new IllegalStateException("Wrong multicall response, offset " + offset
+          + " out of " + data.length);
+    }
+    return new BigInteger(1, Arrays.copyOfRange(data, offset, offset + WORD)).intValueExact();
+  }
+}
@@ -83,6 +83,13 @@ public class ContractConstants {
           6952687L, "0x643cF46eef91Bd878D9710ceEB6a7E6F929F2608".toLowerCase())
   );
 
+  // Multicall2 with tryAggregate, a network without an entry uses batched eth_calls
+  final static Map<String, Map<Long, String>> MULTICALLS = Map.of(
+      ETH_NETWORK,
+      Map.of(12336033L, "0x5BA1e12693Dc8F9c48aAD8770482f4739bEeD696".toLowerCase()),
+      BSC_NETWORK, Map.of()
+  );
+
   final static Map<String, Map<String, String>> ORACLES_BY_FACTORY = Map.of(
       ETH_NETWORK,
       Map.of(UNISWAP_FACTORY_ADDRESS,
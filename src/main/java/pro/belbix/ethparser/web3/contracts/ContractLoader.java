@@ -116,9 +116,11 @@ public class ContractLoader {
       tokenEntity.setContract(tokenContract);
       enrichToken(tokenEntity, block, network);
       tokenRepository.save(tokenEntity);
+      contractDbService.invalidate(tokenContract.getAddress(), network);
     } else if (appProperties.isUpdateContracts()) {
       enrichToken(tokenEntity, block, network);
       tokenRepository.save(tokenEntity);
+      contractDbService.invalidate(tokenContract.getAddress(), network);
     }
   }
 
@@ -132,9 +134,11 @@ public class ContractLoader {
       vaultEntity.setContract(vaultContract);
       enrichVault(vaultEntity, block, network);
       vaultRepository.save(vaultEntity);
+      contractDbService.invalidate(vaultContract.getAddress(), network);
     } else if (appProperties.isUpdateContracts()) {
       enrichVault(vaultEntity, block, network);
       vaultRepository.save(vaultEntity);
+      contractDbService.invalidate(vaultContract.getAddress(), network);
     }
   }
 
@@ -147,9 +151,11 @@ public class ContractLoader {
       poolEntity.setContract(poolContract);
       enrichPool(poolEntity, block, network);
       poolRepository.save(poolEntity);
+      contractDbService.invalidate(poolContract.getAddress(), network);
     } else if (appProperties.isUpdateContracts()) {
       enrichPool(poolEntity, block, network);
       poolRepository.save(poolEntity);
+      contractDbService.invalidate(poolContract.getAddress(), network);
     }
 
   }
@@ -189,9 +195,11 @@ public class ContractLoader {
       uniPairEntity.setContract(poolContract);
       enrichUniPair(uniPairEntity, block, network);
       uniPairRepository.save(uniPairEntity);
+      contractDbService.invalidate(poolContract.getAddress(), network);
     } else if (appProperties.isUpdateContracts()) {
       enrichUniPair(uniPairEntity, block, network);
       uniPairRepository.save(uniPairEntity);
+      contractDbService.invalidate(poolContract.getAddress(), network);
     }
   }
 
@@ -451,6 +459,8 @@ public class ContractLoader {
       tokenToUniPairEntity.setUniPair(uniPair);
       tokenToUniPairEntity.setBlockStart(blockStart);
       tokenToUniPairRepository.save(tokenToUniPairEntity);
+      contractDbService.invalidate(token.getContract().getAddress(), network);
+      contractDbService.invalidate(uniPair.getContract().getAddress(), network);
       log.info("Create new {} to {} link",
           token.getContract().getName(), uniPair.getContract().getName());
     }
@@ -529,7 +539,10 @@ public class ContractLoader {
       entity.setUnderlying(underlying);
       log.info("Created new contract {}", name);
       contractRepository.save(entity);
+      contractDbService.invalidate(entity);
     } else if (rewrite) {
+      // the previous name
+      contractDbService.invalidate(entity);
       if (!Strings.isBlank(name)) {
         entity.setName(name);
       }
@@ -545,6 +558,7 @@ public class ContractLoader {
         entity.setUpdatedDate(blockDate);
       }
       contractRepository.save(entity);
+      contractDbService.invalidate(entity);
     }
     return entity;
   }
@@ -8,6 +8,7 @@ import static pro.belbix.ethparser.web3.contracts.ContractConstants.CONTROLLERS;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.ETH_BLOCK_NUMBER_30_AUGUST_2020;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.FARM_TOKEN;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.FULL_PARSABLE_UNI_PAIRS;
+import static pro.belbix.ethparser.web3.contracts.ContractConstants.MULTICALLS;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.ONE_DOLLAR_TOKENS;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.ONE_INCH_FACTORY_ADDRESS;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.ONE_INCH_FACTORY_BSC;
@@ -118,6 +119,18 @@ public class ContractUtils {
     return entry.getValue();
   }
 
+  public static String getMulticall(long block, String network) {
+    Map<Long, String> multicalls = MULTICALLS.get(network);
+    if (multicalls == null) {
+      return null;
+    }
+    Entry<Long, String> entry = new TreeMap<>(multicalls).floorEntry(block);
+    if (entry == null) {
+      return null;
+    }
+    return entry.getValue();
+  }
+
   public static String getPriceOracle(long block, String network) {
     Entry<Long, String> entry = new TreeMap<>(ORACLES.get(network)).floorEntry(block);
     if (entry == null) {
@@ -4,9 +4,14 @@ import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
 import static pro.belbix.ethparser.web3.contracts.ContractUtils.getBaseAddressInsteadOfZero;
 import static pro.belbix.ethparser.web3.contracts.ContractUtils.getControllerAddressByNetwork;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -20,6 +25,7 @@ import pro.belbix.ethparser.entity.contracts.TokenEntity;
 import pro.belbix.ethparser.entity.contracts.TokenToUniPairEntity;
 import pro.belbix.ethparser.entity.contracts.UniPairEntity;
 import pro.belbix.ethparser.entity.contracts.VaultEntity;
+import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.repositories.eth.ContractRepository;
 import pro.belbix.ethparser.repositories.eth.PoolRepository;
 import pro.belbix.ethparser.repositories.eth.TokenRepository;
@@ -30,16 +36,29 @@ import pro.belbix.ethparser.web3.contracts.ContractConstants;
 import pro.belbix.ethparser.web3.contracts.ContractType;
 import pro.belbix.ethparser.web3.contracts.ContractUtils;
 
+/**
+ * Lookups return entities cached for all threads, they must not be changed. Change a copy or a
+ * fresh entity from the repository and call {@link #invalidate(ContractEntity)} after saving.
+ */
 @Service
 public class ContractDbService {
 
+  private static final String ADDRESS_INDEX = "address";
+  private static final String NAME_INDEX = "name";
+  private static final String VAULT_INDEX = "vault";
+  private static final String POOL_INDEX = "pool";
+  private static final String LP_INDEX = "lp";
+  private static final String TOKEN_INDEX = "token";
+  private static final String PAIRS_BY_TOKEN_INDEX = "pairs_by_token";
+  private static final String TOKENS_BY_PAIR_INDEX = "tokens_by_pair";
+
   private final ContractRepository contractRepository;
   private final PoolRepository poolRepository;
   private final VaultRepository vaultRepository;
   private final UniPairRepository uniPairRepository;
   private final TokenRepository tokenRepository;
   private final TokenToUniPairRepository tokenToUniPairRepository;
-
+  private final ContractRegistry registry;
 
   public ContractDbService(
       ContractRepository contractRepository,
@@ -47,34 +66,141 @@ public class ContractDbService {
       VaultRepository vaultRepository,
       UniPairRepository uniPairRepository,
       TokenRepository tokenRepository,
-      TokenToUniPairRepository tokenToUniPairRepository) {
+      TokenToUniPairRepository tokenToUniPairRepository,
+      AppProperties appProperties,
+      MeterRegistry meterRegistry) {
     this.contractRepository = contractRepository;
     this.poolRepository = poolRepository;
     this.vaultRepository = vaultRepository;
     this.uniPairRepository = uniPairRepository;
     this.tokenRepository = tokenRepository;
     this.tokenToUniPairRepository = tokenToUniPairRepository;
+    this.registry = new ContractRegistry(
+        appProperties.getContractRegistryRefreshSeconds() * 1000L,
+        this::loadRegistry,
+        ContractDbService::references,
+        meterRegistry);
+  }
+
+  private void loadRegistry(ContractRegistry.Snapshot registry) {
+    Map<String, ContractEntity> byName = new HashMap<>();
+    for (ContractEntity contract : contractRepository.findAll()) {
+      if (contract.getAddress() == null) {
+        continue;
+      }
+      registry.put(ADDRESS_INDEX, key(contract.getAddress(), contract.getNetwork()), contract);
+      byName.merge(nameKey(contract.getName(), contract.getType(), contract.getNetwork()),
+          contract, ContractDbService::latest);
+    }
+    byName.forEach((k, v) -> registry.put(NAME_INDEX, k, v));
+
+    Map<String, List<TokenToUniPairEntity>> byToken = new HashMap<>();
+    Map<String, List<TokenToUniPairEntity>> byPair = new HashMap<>();
+    for (TokenToUniPairEntity link : tokenToUniPairRepository.fetchAll()) {
+      ContractEntity token = link.getToken().getContract();
+      ContractEntity pair = link.getUniPair().getContract();
+      byToken.computeIfAbsent(key(token.getAddress(), token.getNetwork()),
+          k -> new ArrayList<>()).add(link);
+      byPair.computeIfAbsent(key(pair.getAddress(), pair.getNetwork()),
+          k -> new ArrayList<>()).add(link);
+    }
+    byToken.forEach((k, v) -> registry.put(PAIRS_BY_TOKEN_INDEX, k, v));
+    byPair.forEach((k, v) -> registry.put(TOKENS_BY_PAIR_INDEX, k, v));
+  }
+
+  /**
+   * Address keys of contracts embedded in the cached value, the value is invalidated with them.
+   */
+  private static Collection<String> references(Object value) {
+    List<ContractEntity> contracts = new ArrayList<>();
+    if (value instanceof Collection) {
+      List<String> keys = new ArrayList<>();
+      for (Object item : (Collection<?>) value) {
+        keys.addAll(references(item));
+      }
+      return keys;
+    } else if (value instanceof ContractEntity) {
+      contracts.add((ContractEntity) value);
+    } else if (value instanceof VaultEntity) {
+      VaultEntity vault = (VaultEntity) value;
+      contracts.addAll(Arrays.asList(vault.getContract(), vault.getController(),
+          vault.getGovernance(), vault.getStrategy(), vault.getUnderlying()));
+    } else if (value instanceof PoolEntity) {
+      PoolEntity pool = (PoolEntity) value;
+      contracts.addAll(Arrays.asList(pool.getContract(), pool.getController(),
+          pool.getGovernance(), pool.getOwner(), pool.getLpToken(), pool.getRewardToken()));
+    } else if (value instanceof UniPairEntity) {
+      UniPairEntity pair = (UniPairEntity) value;
+      contracts.addAll(Arrays.asList(pair.getContract(), pair.getToken0(), pair.getToken1()));
+    } else if (value instanceof TokenEntity) {
+      contracts.add(((TokenEntity) value).getContract());
+    } else if (value instanceof TokenToUniPairEntity) {
+      TokenToUniPairEntity link = (TokenToUniPairEntity) value;
+      List<String> keys = new ArrayList<>();
+      if (link.getToken() != null) {
+        keys.addAll(references(link.getToken()));
+      }
+      if (link.getUniPair() != null) {
+        keys.addAll(references(link.getUniPair()));
+      }
+      return keys;
+    }
+    List<String> keys = new ArrayList<>();
+    for (ContractEntity contract : contracts) {
+      if (contract != null && contract.getAddress() != null) {
+        keys.add(key(contract.getAddress(), contract.getNetwork()));
+      }
+    }
+    return keys;
+  }
+
+  private static ContractEntity latest(ContractEntity a, ContractEntity b) {
+    long aCreated = a.getCreated() == null ? 0 : a.getCreated();
+    long bCreated = b.getCreated() == null ? 0 : b.getCreated();
+    return bCreated > aCreated ? b : a;
+  }
+
+  /**
+   * Should be called after changes of contracts, pools, vaults, tokens, LPs or links with the
+   * address.
+   */
+  public void invalidate(String address, String network) {
+    if (address == null) {
+      return;
+    }
+    registry.invalidate(key(address, network));
+  }
+
+  public void invalidate(ContractEntity contract) {
+    if (contract == null) {
+      return;
+    }
+    invalidate(contract.getAddress(), contract.getNetwork());
+    registry.invalidate(nameKey(contract.getName(), contract.getType(), contract.getNetwork()));
   }
 
   public Optional<ContractEntity> getContractByAddress(String address, String network) {
-    return Optional.ofNullable(contractRepository
-        .findFirstByAddress(address.toLowerCase(), network));
+    return registry.get(ADDRESS_INDEX, key(address, network),
+        () -> contractRepository.findFirstByAddress(address.toLowerCase(), network));
   }
 
   public Optional<ContractEntity> getContractByAddressAndType(
       String address,
       ContractType type,
       String network) {
-    return Optional.ofNullable(contractRepository
-        .findFirstByAddressAndType(address.toLowerCase(), type.getId(), network));
+    // address and network are unique
+    return getContractByAddress(address, network)
+        .filter(c -> c.getType() == type.getId());
   }
 
   public Optional<ContractEntity> getContractByNameAndType(
       String name, ContractType type, String network) {
-    return Optional.ofNullable(contractRepository
-        .findByNameAndType(name, type.getId(), network, PageRequest.of(0, 1)))
-        .filter(c -> !c.isEmpty())
-        .map(c -> c.get(0));
+    return registry.get(NAME_INDEX, nameKey(name, type.getId(), network),
+        () -> Optional.ofNullable(contractRepository
+            .findByNameAndType(name, type.getId(), network, PageRequest.of(0, 1)))
+            .filter(c -> !c.isEmpty())
+            .map(c -> c.get(0))
+            .orElse(null));
   }
 
   public Optional<String> getNameByAddress(String address, String network) {
@@ -109,8 +235,7 @@ public class ContractDbService {
   }
 
   public Tuple2<String, String> tokenAddressesByUniPairAddress(String address, String network) {
-    UniPairEntity uniPair = Optional.ofNullable(uniPairRepository
-        .findFirstByAddress(address.toLowerCase(), network))
+    UniPairEntity uniPair = getLpByAddress(address, network)
         .orElseThrow(() -> new IllegalStateException("Not found uni pair by " + address));
     ContractEntity token0 = uniPair.getToken0();
     ContractEntity token1 = uniPair.getToken1();
@@ -151,14 +276,15 @@ public class ContractDbService {
   }
 
   public Optional<UniPairEntity> findLpByAddress(String address, String network) {
-    return Optional.ofNullable(uniPairRepository
-        .findFirstByAddress(address.toLowerCase(), network));
+    return getLpByAddress(address, network);
   }
 
   public Optional<TokenToUniPairEntity> findPairByToken(String tokenAddress, long block,
       String network) {
-    List<TokenToUniPairEntity> pairs = tokenToUniPairRepository
-        .findByToken(tokenAddress.toLowerCase(), network);
+    List<TokenToUniPairEntity> pairs = registry.<List<TokenToUniPairEntity>>get(
+        PAIRS_BY_TOKEN_INDEX, key(tokenAddress, network),
+        () -> tokenToUniPairRepository.findByToken(tokenAddress.toLowerCase(), network))
+        .orElse(null);
     if (pairs == null || pairs.isEmpty()) {
       return Optional.empty();
     }
@@ -178,8 +304,10 @@ public class ContractDbService {
       String lpAddress,
       long block,
       String network) {
-    List<TokenToUniPairEntity> pairs = tokenToUniPairRepository
-        .findByUniPair(lpAddress.toLowerCase(), network);
+    List<TokenToUniPairEntity> pairs = registry.<List<TokenToUniPairEntity>>get(
+        TOKENS_BY_PAIR_INDEX, key(lpAddress, network),
+        () -> tokenToUniPairRepository.findByUniPair(lpAddress.toLowerCase(), network))
+        .orElse(null);
     if (pairs == null || pairs.isEmpty()) {
       return Optional.empty();
     }
@@ -220,32 +348,40 @@ public class ContractDbService {
   }
 
   public Optional<PoolEntity> getPoolByAddress(String address, String network) {
-    return Optional.ofNullable(poolRepository
-        .findFirstByAddress(address.toLowerCase(), network));
+    return registry.get(POOL_INDEX, key(address, network),
+        () -> poolRepository.findFirstByAddress(address.toLowerCase(), network));
   }
 
   public Optional<VaultEntity> getVaultByAddress(String address, String network) {
-    return Optional.ofNullable(vaultRepository
-        .findFirstByContract(address.toLowerCase(), network));
+    return registry.get(VAULT_INDEX, key(address, network),
+        () -> vaultRepository.findFirstByContract(address.toLowerCase(), network));
   }
 
   public Optional<UniPairEntity> getLpByAddress(String address, String network) {
-    return Optional.ofNullable(uniPairRepository
-        .findFirstByAddress(address.toLowerCase(), network));
+    return registry.get(LP_INDEX, key(address, network),
+        () -> uniPairRepository.findFirstByAddress(address.toLowerCase(), network));
   }
 
   public Optional<TokenEntity> getTokenByAddress(String address, String network) {
-    return Optional.ofNullable(tokenRepository
-        .findFirstByAddress(address.toLowerCase(), network));
+    return registry.get(TOKEN_INDEX, key(address, network),
+        () -> tokenRepository.findFirstByAddress(address.toLowerCase(), network));
+  }
+
+  public List<ContractEntity> getAllContracts() {
+    return contractRepository.findAll();
   }
 
   public List<String> getSubscriptions() {
+    return getSubscriptions(getAllContracts());
+  }
+
+  public List<String> getSubscriptions(List<ContractEntity> allContracts) {
     Set<String> contracts = new HashSet<>(Set.of(
         ContractConstants.FARM_TOKEN
     ));
     contracts.addAll(Objects.requireNonNull(getControllerAddressByNetwork(ETH_NETWORK)));
     contracts.addAll(
-        contractRepository.findAll().stream()
+        allContracts.stream()
             .map(ContractEntity::getAddress)
             .collect(Collectors.toList())
     );
@@ -257,4 +393,12 @@ public class ContractDbService {
         ContractUtils.getBaseNetworkWrappedTokenAddress(network), network);
   }
 
+  private static String key(String address, String network) {
+    return network + "_" + address.toLowerCase();
+  }
+
+  private static String nameKey(String name, int type, String network) {
+    return network + "_" + type + "_" + name;
+  }
+
 }
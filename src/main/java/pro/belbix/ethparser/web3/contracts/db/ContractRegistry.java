@@ -0,0 +1,197 @@
+package pro.belbix.ethparser.web3.contracts.db;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * In-memory indexes for contract lookups. Indexes are filled by a full load, missed keys are read
+ * through from the database, including absent values, and written keys are invalidated together
+ * with values that reference them. All indexes are reloaded after the refresh interval to catch
+ * changes from other instances: new indexes are built aside while lookups use the old ones, then
+ * swapped at once.
+ * <p>
+ * Cached values are shared between threads, callers must not change them.
+ */
+@Log4j2
+class ContractRegistry {
+
+  // absent values of keys from random addresses must not fill the memory
+  private static final int MAX_ABSENT = 100_000;
+
+  private volatile Map<String, Index> indexes = new ConcurrentHashMap<>();
+  private final long refreshIntervalMs;
+  private final Consumer<Snapshot> loader;
+  // keys of other values referenced by the value, like the underlying of a vault
+  private final Function<Object, Collection<String>> references;
+  private final MeterRegistry meterRegistry;
+  private final Counter refreshCounter;
+  private final AtomicLong invalidations = new AtomicLong();
+  private final AtomicBoolean refreshing = new AtomicBoolean(false);
+  private final Object swapLock = new Object();
+  // keys invalidated while new indexes are loading, null if nothing is loading
+  private Set<String> invalidatedOnLoad;
+  private volatile long loaded = 0;
+
+  ContractRegistry(long refreshIntervalMs, Consumer<Snapshot> loader,
+      Function<Object, Collection<String>> references, MeterRegistry meterRegistry) {
+    this.refreshIntervalMs = refreshIntervalMs;
+    this.loader = loader;
+    this.references = references;
+    this.meterRegistry = meterRegistry;
+    this.refreshCounter = meterRegistry.counter("ethparser.contracts.registry.refresh");
+  }
+
+  <T> Optional<T> get(String indexName, String key, Supplier<T> reader) {
+    checkRefresh();
+    Index index = index(indexes, indexName);
+    Optional<Object> value = index.values.get(key);
+    if (value != null) {
+      index.hits.increment();
+      //noinspection unchecked
+      return (Optional<T>) value;
+    }
+    index.misses.increment();
+    long version = invalidations.get();
+    T result = reader.get();
+    // a value read before a concurrent write must not be cached
+    if (invalidations.get() == version) {
+      put(indexName, key, result);
+    }
+    return Optional.ofNullable(result);
+  }
+
+  void put(String indexName, String key, Object value) {
+    index(indexes, indexName).put(key, value);
+  }
+
+  /**
+   * Removes the key and values referencing it from all indexes, the next lookup reads them from
+   * the database.
+   */
+  void invalidate(String key) {
+    synchronized (swapLock) {
+      invalidations.incrementAndGet();
+      for (Index index : indexes.values()) {
+        index.invalidate(key, references);
+      }
+      if (invalidatedOnLoad != null) {
+        invalidatedOnLoad.add(key);
+      }
+    }
+  }
+
+  private void checkRefresh() {
+    if (loaded != 0 && System.currentTimeMillis() - loaded < refreshIntervalMs) {
+      return;
+    }
+    if (loaded == 0) {
+      // nothing to serve yet, other threads wait for the first load
+      synchronized (this) {
+        if (loaded == 0) {
+          refresh();
+        }
+      }
+      return;
+    }
+    // only one thread reloads, others use current indexes meanwhile
+    if (!refreshing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      if (System.currentTimeMillis() - loaded >= refreshIntervalMs) {
+        refresh();
+      }
+    } finally {
+      refreshing.set(false);
+    }
+  }
+
+  private void refresh() {
+    long start = System.currentTimeMillis();
+    synchronized (swapLock) {
+      invalidatedOnLoad = new HashSet<>();
+    }
+    Snapshot snapshot = new Snapshot();
+    try {
+      loader.accept(snapshot);
+    } catch (RuntimeException e) {
+      synchronized (swapLock) {
+        invalidatedOnLoad = null;
+      }
+      throw e;
+    }
+    synchronized (swapLock) {
+      // the loader could read rows before their concurrent changes
+      for (String key : invalidatedOnLoad) {
+        for (Index index : snapshot.indexes.values()) {
+          index.invalidate(key, references);
+        }
+      }
+      invalidatedOnLoad = null;
+      indexes = snapshot.indexes;
+    }
+    loaded = System.currentTimeMillis();
+    refreshCounter.increment();
+    log.info("Contract registry loaded in {}ms", loaded - start);
+  }
+
+  private Index index(Map<String, Index> indexes, String name) {
+    return indexes.computeIfAbsent(name, n -> new Index(
+        meterRegistry.counter("ethparser.contracts.registry", "index", n, "result", "hit"),
+        meterRegistry.counter("ethparser.contracts.registry", "index", n, "result", "miss")));
+  }
+
+  /**
+   * New indexes filled by the loader, not visible for lookups until the load is finished.
+   */
+  class Snapshot {
+
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+
+    void put(String indexName, String key, Object value) {
+      index(indexes, indexName).put(key, value);
+    }
+  }
+
+  private static class Index {
+
+    private final Map<String, Optional<Object>> values = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    // approximate, only for the memory bound
+    private volatile int absent = 0;
+
+    private Index(Counter hits, Counter misses) {
+      this.hits = hits;
+      this.misses = misses;
+    }
+
+    private void put(String key, Object value) {
+      if (value == null) {
+        if (absent >= MAX_ABSENT) {
+          values.values().removeIf(Optional::isEmpty);
+          absent = 0;
+        }
+        absent++;
+      }
+      values.put(key, Optional.ofNullable(value));
+    }
+
+    private void invalidate(String key, Function<Object, Collection<String>> references) {
+      values.remove(key);
+      values.values().removeIf(v -> v.isPresent() && references.apply(v.get()).contains(key));
+    }
+  }
+}
@@ -20,7 +20,10 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import pro.belbix.ethparser.dto.v0.TransferDTO;
+import pro.belbix.ethparser.entity.v0.TransferHolderEntity;
 import pro.belbix.ethparser.repositories.v0.TransferRepository;
 import pro.belbix.ethparser.web3.prices.PriceProvider;
 
@@ -43,32 +46,57 @@ public class TransferDBService {
   private final TransferRepository transferRepository;
   private final EntityManager entityManager;
   private final PriceProvider priceProvider;
+  private final TransferLedger transferLedger;
 
   public TransferDBService(TransferRepository transferRepository, EntityManager entityManager,
-      PriceProvider priceProvider) {
+      PriceProvider priceProvider, TransferLedger transferLedger) {
     this.transferRepository = transferRepository;
     this.entityManager = entityManager;
     this.priceProvider = priceProvider;
+    this.transferLedger = transferLedger;
   }
 
+  /**
+   * Holder states are saved with the transfer and applied to the ledger only after the commit.
+   * The ledger must be loaded before, see {@link TransferLedger#load(String)}.
+   */
   @Transactional
   public boolean saveDto(TransferDTO dto) {
     if (transferRepository.existsById(dto.getId())) {
       log.warn("Duplicate transfer info " + dto);
       return false;
     }
+    TransferLedger.Change change = transferLedger.prepare(dto);
     entityManager.persist(dto);
-    checkBalances(dto);
-    fillProfit(dto);
+    if (change != null && change.isActual()) {
+      checkBalances(dto, change);
+      fillProfitForReward(dto);
+    } else {
+      log.info("Transfer is older than the ledger state, use history for " + dto.print());
+      checkBalances(dto, null);
+      fillProfit(dto);
+    }
+    if (change != null) {
+      transferLedger.save(change);
+      afterCommit(() -> transferLedger.commit(change));
+    }
     transferRepository.save(dto);
     return true;
   }
 
-  public boolean checkBalances(TransferDTO dto) {
+  public void loadLedger(String network) {
+    transferLedger.load(network);
+  }
+
+  /**
+   * @param change balances after the transfer, null for summing the history
+   */
+  public boolean checkBalances(TransferDTO dto, TransferLedger.Change change) {
     return checkBalance(
-        dto.getOwner(), dto.getBalanceOwner(), dto.getBlockDate(), dto.getNetwork())
+        dto.getOwner(), dto.getBalanceOwner(), dto.getBlockDate(), dto.getNetwork(), change)
         && checkBalance(
-        dto.getRecipient(), dto.getBalanceRecipient(), dto.getBlockDate(), dto.getNetwork());
+        dto.getRecipient(), dto.getBalanceRecipient(), dto.getBlockDate(), dto.getNetwork(),
+        change);
   }
 
   public void fillProfit(TransferDTO dto) {
@@ -77,12 +105,23 @@ public class TransferDBService {
     fillProfitForTrade(dto);
   }
 
-  private boolean checkBalance(
-      String holder, double expectedBalance, long blockDate, String network) {
+  /**
+   * Transfers must come in the block date order after {@link TransferLedger#clear(String)}.
+   * Used only for recalculation.
+   */
+  public void fillProfitFromLedger(TransferDTO dto) {
+    transferLedger.apply(dto);
+    fillProfitForReward(dto);
+  }
+
+  private boolean checkBalance(String holder, double expectedBalance, long blockDate,
+      String network, TransferLedger.Change change) {
     if (notCheckableAddresses.contains(holder.toLowerCase())) {
       return true;
     }
-    Double balance = transferRepository.getBalanceForOwner(holder, blockDate, network);
+    Double balance = change != null
+        ? change.balance(holder)
+        : transferRepository.getBalanceForOwner(holder, blockDate, network);
     if (balance == null) {
       balance = 0.0;
     }
@@ -149,103 +188,143 @@ public class TransferDBService {
   }
 
   static double calculatePsProfit(List<TransferDTO> transfers) {
-    double stacked = 0.0;
-    double exits = 0.0;
+    TransferHolderEntity state = new TransferHolderEntity();
     double lastProfit = 0.0;
     for (TransferDTO transfer : transfers) {
-      lastProfit = 0;
-      if (!PS_EXIT.name().equalsIgnoreCase(transfer.getType())
-          && !PS_STAKE.name().equalsIgnoreCase(transfer.getType())) {
-        continue;
-      }
+      lastProfit = applyPsTransfer(state, transfer);
+    }
+    return lastProfit;
+  }
 
-      if (PS_EXIT.name().equalsIgnoreCase(transfer.getType())) {
-        exits += transfer.getValue();
-      }
-      //count all stacked
-      if (PS_STAKE.name().equalsIgnoreCase(transfer.getType())) {
-        stacked += transfer.getValue();
-      }
+  /**
+   * One step of {@link #calculatePsProfit(List)} over the holder state.
+   *
+   * @return profit if the transfer is a full exit, otherwise 0
+   */
+  static double applyPsTransfer(TransferHolderEntity state, TransferDTO transfer) {
+    if (!PS_EXIT.name().equalsIgnoreCase(transfer.getType())
+        && !PS_STAKE.name().equalsIgnoreCase(transfer.getType())) {
+      return 0;
+    }
 
-      // return profit only for last exit, so refresh balances after each full exit
-      // it is a shortcut
-      // will not work in rare situation when holder has profit more than initial stake amount (impossible I guess)
-      if (exits > stacked) {
-        lastProfit = exits - stacked;
-        stacked = 0;
-        exits = 0;
-      }
+    if (PS_EXIT.name().equalsIgnoreCase(transfer.getType())) {
+      state.setPsExits(state.getPsExits() + transfer.getValue());
     }
-    return lastProfit;
+    //count all stacked
+    if (PS_STAKE.name().equalsIgnoreCase(transfer.getType())) {
+      state.setPsStaked(state.getPsStaked() + transfer.getValue());
+    }
+
+    // return profit only for last exit, so refresh balances after each full exit
+    // it is a shortcut
+    // will not work in rare situation when holder has profit more than initial stake amount (impossible I guess)
+    if (state.getPsExits() > state.getPsStaked()) {
+      double profit = state.getPsExits() - state.getPsStaked();
+      state.setPsStaked(0);
+      state.setPsExits(0);
+      return profit;
+    }
+    return 0;
   }
 
   static double calculateSellProfits(List<TransferDTO> transfers, String owner) {
-    double bought = 0;
-    double boughtUsd = 0;
+    TransferHolderEntity state = new TransferHolderEntity();
     double profit = 0;
     for (int i = 0; i < transfers.size(); i++) {
       TransferDTO transfer = transfers.get(i);
-//            //remember how many we bought
-      if (LP_BUY.name().equalsIgnoreCase(transfer.getType())) {
-        bought += transfer.getValue();
-        boughtUsd += transfer.getValue() * transfer.getPrice();
+      if (i == 0 && LP_SELL.name().equalsIgnoreCase(transfer.getType())) {
+        log.error("Wrong sequence");
       }
+      profit = 0;
+      Double sellProfit = applySellTransfer(state, transfer, owner);
+      if (sellProfit != null) {
+        transfer.setProfit(
+            sellProfit / transfer.getPrice()); // it is synthetic value for compatibility
+        transfer.setProfitUsd(sellProfit);
+        profit = sellProfit / transfer.getPrice();
+      }
+    }
+    return profit;
+  }
 
-      // count transfers between accounts
-      if (NOT_TRADE.contains(transfer.getType()) && KEEP_OWNERSHIP.contains(transfer.getType())) {
-        if (owner.equalsIgnoreCase(transfer.getRecipient())) {
-          bought += transfer.getValue();
-          boughtUsd += transfer.getValue() * transfer.getPrice();
-        } else if (owner.equalsIgnoreCase(transfer.getOwner())) {
-          bought -= transfer.getValue();
-          boughtUsd -= transfer.getValue() * transfer.getPrice();
-        } else {
-          throw new IllegalStateException("Wrong owner " + owner + " for " + transfer);
-        }
+  /**
+   * One step of {@link #calculateSellProfits(List, String)} over the holder state.
+   *
+   * @return profit in USD if the transfer is a counted sell, otherwise null, a sell can't be the
+   * first transfer of the holder
+   */
+  static Double applySellTransfer(TransferHolderEntity state, TransferDTO transfer, String owner) {
+    boolean first = state.getTradeTransfers() == 0;
+    state.setTradeTransfers(state.getTradeTransfers() + 1);
+    double bought = state.getTradeBought();
+    double boughtUsd = state.getTradeBoughtUsd();
+    Double profit = null;
+    //remember how many we bought
+    if (LP_BUY.name().equalsIgnoreCase(transfer.getType())) {
+      bought += transfer.getValue();
+      boughtUsd += transfer.getValue() * transfer.getPrice();
+    }
+
+    // count transfers between accounts
+    if (NOT_TRADE.contains(transfer.getType()) && KEEP_OWNERSHIP.contains(transfer.getType())) {
+      if (owner.equalsIgnoreCase(transfer.getRecipient())) {
+        bought += transfer.getValue();
+        boughtUsd += transfer.getValue() * transfer.getPrice();
+      } else if (owner.equalsIgnoreCase(transfer.getOwner())) {
+        bought -= transfer.getValue();
+        boughtUsd -= transfer.getValue() * transfer.getPrice();
+      } else {
+        throw new IllegalStateException("Wrong owner " + owner + " for " + transfer);
       }
+    }
 
-      // let's check sells
-      if (LP_SELL.name().equalsIgnoreCase(transfer.getType())) {
-        if (i == 0) {
-          log.error("Wrong sequence");
-          continue;
-        }
+    // let's check sells
+    if (LP_SELL.name().equalsIgnoreCase(transfer.getType())) {
+      //received tokens sells don't count
+      if (!first && !(bought < 0.01 && bought > -0.01)) {
         double sell = transfer.getValue();
         double sellPrice = transfer.getPrice();
-        //received tokens sells don't count
-        if (bought < 0.01 && bought > -0.01) {
-          continue;
-        }
 
         //if we sell more than bought, just skip a part for not bought tokens
         if (sell > bought) {
           sell = bought;
         }
 
-        if (sell <= bought) {
-          double rate = (sell / bought);
-          bought -= sell; // keep only uncovered amount
-          double coveredUsd = boughtUsd * rate;
-          boughtUsd -= coveredUsd;
-          double sellUsd = sell * sellPrice;
-          double sellProfit = sellUsd - coveredUsd;
-          if (transfer.getPrice() != 0) {
-            transfer.setProfit(
-                sellProfit / transfer.getPrice()); // it is synthetic value for compatibility
-            transfer.setProfitUsd(sellProfit);
-            if (i == transfers.size() - 1) {
-              profit = sellProfit / transfer.getPrice();
-            }
-          }
+        double rate = (sell / bought);
+        bought -= sell; // keep only uncovered amount
+        double coveredUsd = boughtUsd * rate;
+        boughtUsd -= coveredUsd;
+        double sellUsd = sell * sellPrice;
+        if (transfer.getPrice() != 0) {
+          profit = sellUsd - coveredUsd;
         }
       }
-      if (bought == 0) {
-        boughtUsd = 0;
-      }
     }
+    if (bought == 0) {
+      boughtUsd = 0;
+    }
+    state.setTradeBought(bought);
+    state.setTradeBoughtUsd(boughtUsd);
     return profit;
   }
 
+  /**
+   * The ledger must not keep states of a rolled back transfer.
+   */
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
+  }
+
   // used only for recalculation
   public void fillBalances(TransferDTO dto) {
     Double balanceOwner = transferRepository
@@ -0,0 +1,349 @@
+package pro.belbix.ethparser.web3.erc20.db;
+
+import static pro.belbix.ethparser.web3.erc20.TransferType.LP_SELL;
+import static pro.belbix.ethparser.web3.erc20.TransferType.PS_EXIT;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import pro.belbix.ethparser.dto.v0.TransferDTO;
+import pro.belbix.ethparser.entity.v0.TransferHolderEntity;
+import pro.belbix.ethparser.repositories.v0.TransferHolderRepository;
+import pro.belbix.ethparser.repositories.v0.TransferRepository;
+
+/**
+ * Running balance and profit state of each transfers holder, updated on every saved transfer
+ * instead of summing and replaying the holder history. The state is stored in transfer_holders
+ * and rebuilt from the transfers table when it is empty. Loading reads the whole table, so it must
+ * run outside of save transactions, see {@link #load(String)}.
+ */
+@Service
+@Log4j2
+public class TransferLedger {
+
+  private static final String PROFIT_TOKEN = "FARM";
+  private final Pageable page = PageRequest.of(0, 10_000);
+  private final TransferHolderRepository transferHolderRepository;
+  private final TransferRepository transferRepository;
+  private final Map<String, NetworkHolders> networks = new ConcurrentHashMap<>();
+  // loading of one network doesn't block others
+  private final Map<String, Object> loadLocks = new ConcurrentHashMap<>();
+
+  public TransferLedger(TransferHolderRepository transferHolderRepository,
+      TransferRepository transferRepository) {
+    this.transferHolderRepository = transferHolderRepository;
+    this.transferRepository = transferRepository;
+  }
+
+  /**
+   * Apply the transfer to both holders and fill its profit for PS exits and LP sells.
+   *
+   * @return false if a holder already has a later transfer, the transfer is counted but the
+   * balances and the profit are not actual for it
+   */
+  public boolean apply(TransferDTO dto) {
+    Change change = prepare(dto);
+    if (change == null) {
+      return false;
+    }
+    networkHolders(dto.getNetwork()).commit(change, true);
+    return change.actual;
+  }
+
+  /**
+   * Fill the profit of the transfer and compute new states of its holders without changing the
+   * ledger. The states must be saved with the transfer by {@link #save(Change)} and applied by
+   * {@link #commit(Change)} after the transaction is committed. Transfers of a network must be
+   * prepared and committed one by one.
+   *
+   * @return null if the transfer doesn't have both holders
+   */
+  public Change prepare(TransferDTO dto) {
+    if (dto.getOwner() == null || dto.getRecipient() == null) {
+      return null;
+    }
+    return networkHolders(dto.getNetwork()).prepare(dto);
+  }
+
+  public void save(Change change) {
+    transferHolderRepository.saveAll(change.entities());
+  }
+
+  public void commit(Change change) {
+    networkHolders(change.network).commit(change, false);
+  }
+
+  public double balance(String network, String holder) {
+    if (holder == null) {
+      return 0;
+    }
+    return networkHolders(network).balance(holder.toLowerCase());
+  }
+
+  /**
+   * Save holders changed by {@link #apply(TransferDTO)} since the last flush.
+   */
+  public void flush(String network) {
+    List<TransferHolderEntity> changed = networkHolders(network).takeChanged();
+    if (!changed.isEmpty()) {
+      transferHolderRepository.saveAll(changed);
+    }
+  }
+
+  /**
+   * Forget the state of the network before replaying transfers from the start.
+   */
+  public void clear(String network) {
+    synchronized (loadLock(network)) {
+      transferHolderRepository.deleteAll(transferHolderRepository.findAllByNetwork(network));
+      networks.put(network, new NetworkHolders(network));
+    }
+    log.info("Transfer ledger cleared for {}", network);
+  }
+
+  /**
+   * Replay all transfers of the network page by page. Must run without an outer transaction, so
+   * read transfers are detached and changed profits are not written back.
+   */
+  public void rebuild(String network) {
+    clear(network);
+    replay(networks.get(network));
+  }
+
+  /**
+   * Load the state of the network from transfer_holders or rebuild it from transfers if the table
+   * is empty. Must run without an outer transaction, like {@link #rebuild(String)}.
+   */
+  public void load(String network) {
+    networkHolders(network);
+  }
+
+  /**
+   * Iterate all transfers of the network in the block date order without loading the whole table.
+   */
+  public void forEachPage(String network, Consumer<List<TransferDTO>> consumer) {
+    long blockDate = Long.MIN_VALUE;
+    String id = "";
+    while (true) {
+      List<TransferDTO> transfers =
+          transferRepository.fetchPageAfter(network, blockDate, id, page);
+      if (transfers == null || transfers.isEmpty()) {
+        return;
+      }
+      TransferDTO last = transfers.get(transfers.size() - 1);
+      blockDate = last.getBlockDate();
+      id = last.getId();
+      consumer.accept(transfers);
+    }
+  }
+
+  private void replay(NetworkHolders holders) {
+    long start = System.currentTimeMillis();
+    int[] count = {0};
+    forEachPage(holders.network, transfers -> {
+      for (TransferDTO dto : transfers) {
+        if (dto.getOwner() != null && dto.getRecipient() != null) {
+          holders.commit(holders.prepare(dto), true);
+        }
+      }
+      List<TransferHolderEntity> changed = holders.takeChanged();
+      if (!changed.isEmpty()) {
+        transferHolderRepository.saveAll(changed);
+      }
+      count[0] += transfers.size();
+    });
+    log.info("Transfer ledger rebuilt for {} from {} transfers in {}ms",
+        holders.network, count[0], System.currentTimeMillis() - start);
+  }
+
+  private NetworkHolders networkHolders(String network) {
+    NetworkHolders holders = networks.get(network);
+    if (holders != null) {
+      return holders;
+    }
+    synchronized (loadLock(network)) {
+      holders = networks.get(network);
+      if (holders != null) {
+        return holders;
+      }
+      if (TransactionSynchronizationManager.isActualTransactionActive()) {
+        throw new IllegalStateException("Transfer ledger is not loaded for " + network);
+      }
+      holders = new NetworkHolders(network);
+      List<TransferHolderEntity> entities = transferHolderRepository.findAllByNetwork(network);
+      if (entities.isEmpty()) {
+        replay(holders);
+      } else {
+        for (TransferHolderEntity entity : entities) {
+          holders.holders.put(entity.getHolder(), entity);
+        }
+        log.info("Loaded {} transfer holders for {}", entities.size(), network);
+      }
+      networks.put(network, holders);
+      return holders;
+    }
+  }
+
+  private Object loadLock(String network) {
+    return loadLocks.computeIfAbsent(network, n -> new Object());
+  }
+
+  /**
+   * New states of the holders of one transfer.
+   */
+  public static class Change {
+
+    private final String network;
+    private final TransferHolderEntity owner;
+    private final TransferHolderEntity recipient;
+    private final boolean actual;
+
+    private Change(String network, TransferHolderEntity owner, TransferHolderEntity recipient,
+        boolean actual) {
+      this.network = network;
+      this.owner = owner;
+      this.recipient = recipient;
+      this.actual = actual;
+    }
+
+    /**
+     * @return false if a holder already has a later transfer
+     */
+    public boolean isActual() {
+      return actual;
+    }
+
+    /**
+     * @return the balance of the holder after the transfer
+     */
+    public double balance(String holder) {
+      if (owner.getHolder().equalsIgnoreCase(holder)) {
+        return owner.getBalance();
+      }
+      if (recipient.getHolder().equalsIgnoreCase(holder)) {
+        return recipient.getBalance();
+      }
+      throw new IllegalStateException("Holder " + holder + " is not in the transfer");
+    }
+
+    private List<TransferHolderEntity> entities() {
+      return owner == recipient ? List.of(copy(owner)) : List.of(copy(owner), copy(recipient));
+    }
+  }
+
+  private static class NetworkHolders {
+
+    private final String network;
+    private final Map<String, TransferHolderEntity> holders = new HashMap<>();
+    private final Map<String, TransferHolderEntity> changed = new HashMap<>();
+
+    private NetworkHolders(String network) {
+      this.network = network;
+    }
+
+    synchronized Change prepare(TransferDTO dto) {
+      TransferHolderEntity owner = copy(holder(dto.getOwner().toLowerCase()));
+      TransferHolderEntity recipient = owner.getHolder().equalsIgnoreCase(dto.getRecipient())
+          ? owner
+          : copy(holder(dto.getRecipient().toLowerCase()));
+      boolean actual = owner.getBlockDate() <= dto.getBlockDate()
+          && recipient.getBlockDate() <= dto.getBlockDate();
+
+      owner.setBalance(owner.getBalance() - dto.getValue());
+      recipient.setBalance(recipient.getBalance() + dto.getValue());
+      owner.setBlockDate(Math.max(owner.getBlockDate(), dto.getBlockDate()));
+      recipient.setBlockDate(Math.max(recipient.getBlockDate(), dto.getBlockDate()));
+      Change change = new Change(network, owner, recipient, actual);
+
+      if (!PROFIT_TOKEN.equals(dto.getName())) {
+        return change;
+      }
+      // the history of a holder contains transfers in both directions
+      double psProfit = TransferDBService.applyPsTransfer(recipient, dto);
+      Double sellProfit = TransferDBService.applySellTransfer(owner, dto, dto.getOwner());
+      if (owner != recipient) {
+        TransferDBService.applyPsTransfer(owner, dto);
+        TransferDBService.applySellTransfer(recipient, dto, dto.getRecipient());
+      }
+
+      if (PS_EXIT.name().equals(dto.getType())) {
+        dto.setProfit(psProfit);
+        dto.setProfitUsd(psProfit * dto.getPrice());
+      } else if (LP_SELL.name().equals(dto.getType())) {
+        if (owner.getTradeTransfers() == 1) {
+          log.error("Wrong sequence");
+        }
+        double profit = sellProfit == null ? 0 : sellProfit / dto.getPrice();
+        dto.setProfit(profit);
+        dto.setProfitUsd(profit * dto.getPrice());
+      }
+      return change;
+    }
+
+    /**
+     * @param flush keep the holders for {@link #takeChanged()}, false if they are already saved
+     */
+    synchronized void commit(Change change, boolean flush) {
+      holders.put(change.owner.getHolder(), change.owner);
+      holders.put(change.recipient.getHolder(), change.recipient);
+      if (flush) {
+        changed.put(change.owner.getId(), change.owner);
+        changed.put(change.recipient.getId(), change.recipient);
+      } else {
+        // saved copies are newer than the pending ones
+        changed.remove(change.owner.getId());
+        changed.remove(change.recipient.getId());
+      }
+    }
+
+    synchronized double balance(String holder) {
+      TransferHolderEntity entity = holders.get(holder);
+      return entity == null ? 0 : entity.getBalance();
+    }
+
+    synchronized List<TransferHolderEntity> takeChanged() {
+      List<TransferHolderEntity> result = new ArrayList<>();
+      // copies, saved entities become managed in the session
+      for (TransferHolderEntity entity : changed.values()) {
+        result.add(copy(entity));
+      }
+      changed.clear();
+      return result;
+    }
+
+    private TransferHolderEntity holder(String address) {
+      TransferHolderEntity entity = holders.get(address);
+      if (entity != null) {
+        return entity;
+      }
+      entity = new TransferHolderEntity();
+      entity.setId(network + "_" + address);
+      entity.setNetwork(network);
+      entity.setHolder(address);
+      return entity;
+    }
+  }
+
+  private static TransferHolderEntity copy(TransferHolderEntity entity) {
+    TransferHolderEntity copy = new TransferHolderEntity();
+    copy.setId(entity.getId());
+    copy.setNetwork(entity.getNetwork());
+    copy.setHolder(entity.getHolder());
+    copy.setBalance(entity.getBalance());
+    copy.setBlockDate(entity.getBlockDate());
+    copy.setPsStaked(entity.getPsStaked());
+    copy.setPsExits(entity.getPsExits());
+    copy.setTradeBought(entity.getTradeBought());
+    copy.setTradeBoughtUsd(entity.getTradeBoughtUsd());
+    copy.setTradeTransfers(entity.getTradeTransfers());
+    return copy;
+  }
+}
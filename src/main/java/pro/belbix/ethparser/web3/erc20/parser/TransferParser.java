@@ -4,6 +4,7 @@ import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
 import static pro.belbix.ethparser.web3.abi.FunctionsNames.BALANCE_OF;
 
 import java.math.BigInteger;
+import java.util.List;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.web3j.protocol.core.methods.response.Log;
@@ -62,9 +63,23 @@ public class TransferParser extends Web3Parser<TransferDTO, Log> {
     this.contractDbService = contractDbService;
   }
 
+  /**
+   * Ledgers read all transfers on the first start, it must not happen in a save transaction.
+   */
+  @Override
+  public void startParse() {
+    for (String network : appProperties.getNetworks()) {
+      if (isActiveForNetwork(network)) {
+        transferDBService.loadLedger(network);
+      }
+    }
+    super.startParse();
+  }
+
   @Override
   protected void subscribeToInput() {
-    web3Subscriber.subscribeOnLogs(input, this.getClass().getSimpleName());
+    inputCursor = web3Subscriber.subscribeOnLogs(this.getClass().getSimpleName(),
+        erc20Decoder.topicsByNames(List.of("Transfer")), null);
   }
 
   @Override
@@ -0,0 +1,251 @@
+package pro.belbix.ethparser.web3.harvest.db;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import pro.belbix.ethparser.dto.v0.HardWorkDTO;
+import pro.belbix.ethparser.repositories.v0.HardWorkRepository;
+
+/**
+ * Prefix sums of hard work rewards and buybacks by block date, per vault and for all vaults. It
+ * mirrors the hard_work table, so sums for any date or period are binary searches instead of
+ * aggregate queries over the whole history. Every saved hard work must be passed to {@link
+ * #add(HardWorkDTO)}, a row with the same id replaces the previous one.
+ */
+@Service
+@Log4j2
+public class HardWorkAggregates {
+
+  private final HardWorkRepository hardWorkRepository;
+  private final Map<String, NetworkAggregates> networks = new ConcurrentHashMap<>();
+
+  public HardWorkAggregates(HardWorkRepository hardWorkRepository) {
+    this.hardWorkRepository = hardWorkRepository;
+  }
+
+  public void add(HardWorkDTO dto) {
+    networkAggregates(dto.getNetwork()).add(dto);
+  }
+
+  /**
+   * @return sum of rewards of the vault with block date less or equal
+   */
+  public double vaultRewardAt(String network, String vaultAddress, long blockDate) {
+    return networkAggregates(network).vaultReward(vaultAddress, Long.MIN_VALUE, blockDate);
+  }
+
+  /**
+   * @return sum of rewards of the vault with block date in the period, both ends included, or null
+   * without hard works in the period, like the sum query
+   */
+  public Double vaultRewardForPeriod(String network, String vaultAddress, long from, long to) {
+    return networkAggregates(network).vaultRewardOrNull(vaultAddress, from, to);
+  }
+
+  public boolean hasVaultHardWorkAt(String network, String vaultAddress, long blockDate) {
+    return networkAggregates(network).hasVaultHardWork(vaultAddress, blockDate);
+  }
+
+  /**
+   * @return sum of rewards of all vaults with block date less or equal, or null without hard works
+   */
+  public Double allRewardAt(String network, long blockDate) {
+    return networkAggregates(network).allRewards.sumOrNull(Long.MIN_VALUE, blockDate);
+  }
+
+  /**
+   * @return sum of rewards of all vaults with block date in the period, both ends included, or
+   * null without hard works in the period
+   */
+  public Double allRewardForPeriod(String network, long from, long to) {
+    return networkAggregates(network).allRewards.sumOrNull(from, to);
+  }
+
+  /**
+   * @return sum of buybacks of all vaults with block date strictly less
+   */
+  public double allBuybackBefore(String network, long blockDate) {
+    return networkAggregates(network).allBuybacks.sum(Long.MIN_VALUE, blockDate - 1);
+  }
+
+  private NetworkAggregates networkAggregates(String network) {
+    NetworkAggregates aggregates = networks.get(network);
+    if (aggregates != null) {
+      return aggregates;
+    }
+    synchronized (networks) {
+      aggregates = networks.get(network);
+      if (aggregates != null) {
+        return aggregates;
+      }
+      long start = System.currentTimeMillis();
+      aggregates = new NetworkAggregates();
+      List<HardWorkDTO> dtos = hardWorkRepository.fetchAllInRange(0, Long.MAX_VALUE, network);
+      for (HardWorkDTO dto : dtos) {
+        aggregates.add(dto);
+      }
+      networks.put(network, aggregates);
+      log.info("Loaded {} hard works aggregates for {} in {}ms",
+          dtos.size(), network, System.currentTimeMillis() - start);
+      return aggregates;
+    }
+  }
+
+  private static class NetworkAggregates {
+
+    private final Map<String, PrefixSums> vaultRewards = new HashMap<>();
+    private final PrefixSums allRewards = new PrefixSums();
+    private final PrefixSums allBuybacks = new PrefixSums();
+    // the state of already added rows by id
+    private final Map<String, Row> rows = new HashMap<>();
+
+    synchronized void add(HardWorkDTO dto) {
+      Row previous = rows.get(dto.getId());
+      if (previous != null) {
+        apply(previous, -1);
+      }
+      Row row = new Row(dto.getVaultAddress(), dto.getBlockDate(), dto.getFullRewardUsd(),
+          dto.getFarmBuyback());
+      rows.put(dto.getId(), row);
+      apply(row, 1);
+    }
+
+    private void apply(Row row, int sign) {
+      if (row.vaultAddress != null) {
+        vaultRewards.computeIfAbsent(row.vaultAddress, v -> new PrefixSums())
+            .add(row.blockDate, sign * row.fullRewardUsd, sign);
+      }
+      allRewards.add(row.blockDate, sign * row.fullRewardUsd, sign);
+      allBuybacks.add(row.blockDate, sign * row.farmBuyback, sign);
+    }
+
+    synchronized double vaultReward(String vaultAddress, long from, long to) {
+      if (vaultAddress == null) {
+        return 0;
+      }
+      PrefixSums sums = vaultRewards.get(vaultAddress.toLowerCase());
+      return sums == null ? 0 : sums.sum(from, to);
+    }
+
+    synchronized Double vaultRewardOrNull(String vaultAddress, long from, long to) {
+      if (vaultAddress == null) {
+        return null;
+      }
+      PrefixSums sums = vaultRewards.get(vaultAddress.toLowerCase());
+      return sums == null ? null : sums.sumOrNull(from, to);
+    }
+
+    synchronized boolean hasVaultHardWork(String vaultAddress, long blockDate) {
+      if (vaultAddress == null) {
+        return false;
+      }
+      PrefixSums sums = vaultRewards.get(vaultAddress.toLowerCase());
+      return sums != null && sums.count(Long.MIN_VALUE, blockDate) > 0;
+    }
+  }
+
+  /**
+   * Only the fields of a hard work needed for the sums.
+   */
+  private static class Row {
+
+    private final String vaultAddress;
+    private final long blockDate;
+    private final double fullRewardUsd;
+    private final double farmBuyback;
+
+    private Row(String vaultAddress, long blockDate, double fullRewardUsd, double farmBuyback) {
+      this.vaultAddress = vaultAddress == null ? null : vaultAddress.toLowerCase();
+      this.blockDate = blockDate;
+      this.fullRewardUsd = fullRewardUsd;
+      this.farmBuyback = farmBuyback;
+    }
+  }
+
+  /**
+   * Sorted block dates with a running sum of values and a running count of rows up to each date.
+   * Appending the latest date is O(1), an older date shifts the tail.
+   */
+  static class PrefixSums {
+
+    private long[] dates = new long[8];
+    private double[] sums = new double[8];
+    private int[] counts = new int[8];
+    private int size = 0;
+
+    /**
+     * @param count added rows, negative for removed
+     */
+    synchronized void add(long date, double value, int count) {
+      int i = Arrays.binarySearch(dates, 0, size, date);
+      if (i < 0) {
+        i = -i - 1;
+        if (size == dates.length) {
+          dates = Arrays.copyOf(dates, size * 2);
+          sums = Arrays.copyOf(sums, size * 2);
+          counts = Arrays.copyOf(counts, size * 2);
+        }
+        System.arraycopy(dates, i, dates, i + 1, size - i);
+        System.arraycopy(sums, i, sums, i + 1, size - i);
+        System.arraycopy(counts, i, counts, i + 1, size - i);
+        dates[i] = date;
+        sums[i] = i == 0 ? 0 : sums[i - 1];
+        counts[i] = i == 0 ? 0 : counts[i - 1];
+        size++;
+      }
+      for (int j = i; j < size; j++) {
+        sums[j] += value;
+        counts[j] += count;
+      }
+    }
+
+    /**
+     * @return sum of values with dates in the period or null without rows in it
+     */
+    synchronized Double sumOrNull(long from, long to) {
+      return count(from, to) == 0 ? null : sum(from, to);
+    }
+
+    /**
+     * @return rows with dates in the period, both ends included
+     */
+    synchronized int count(long from, long to) {
+      if (to < from) {
+        return 0;
+      }
+      int toIdx = floor(to);
+      if (toIdx < 0) {
+        return 0;
+      }
+      int fromIdx = from == Long.MIN_VALUE ? -1 : floor(from - 1);
+      return counts[toIdx] - (fromIdx < 0 ? 0 : counts[fromIdx]);
+    }
+
+    /**
+     * @return sum of values with dates in the period, both ends included
+     */
+    synchronized double sum(long from, long to) {
+      if (to < from) {
+        return 0;
+      }
+      int toIdx = floor(to);
+      if (toIdx < 0) {
+        return 0;
+      }
+      int fromIdx = from == Long.MIN_VALUE ? -1 : floor(from - 1);
+      return sums[toIdx] - (fromIdx < 0 ? 0 : sums[fromIdx]);
+    }
+
+    /**
+     * @return index of the latest date less or equal or -1
+     */
+    synchronized int floor(long date) {
+      int i = Arrays.binarySearch(dates, 0, size, date);
+      return i >= 0 ? i : -i - 2;
+    }
+  }
+}
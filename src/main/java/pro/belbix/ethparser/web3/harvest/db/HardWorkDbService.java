@@ -31,14 +31,17 @@ public class HardWorkDbService {
   private final HarvestRepository harvestRepository;
   private final AppProperties appProperties;
   private final PriceProvider priceProvider;
+  private final HardWorkAggregates hardWorkAggregates;
 
   public HardWorkDbService(HardWorkRepository hardWorkRepository,
       HarvestRepository harvestRepository,
-      AppProperties appProperties, PriceProvider priceProvider) {
+      AppProperties appProperties, PriceProvider priceProvider,
+      HardWorkAggregates hardWorkAggregates) {
     this.hardWorkRepository = hardWorkRepository;
     this.harvestRepository = harvestRepository;
     this.appProperties = appProperties;
     this.priceProvider = priceProvider;
+    this.hardWorkAggregates = hardWorkAggregates;
   }
 
   public boolean save(HardWorkDTO dto) {
@@ -49,16 +52,13 @@ public class HardWorkDbService {
     enrich(dto);
     fillExtraInfo(dto);
     hardWorkRepository.saveAndFlush(dto);
+    hardWorkAggregates.add(dto);
     return true;
   }
 
   public void enrich(HardWorkDTO dto) {
-    Double all = hardWorkRepository
-        .getSumForVault(dto.getVaultAddress(), dto.getBlockDate(), dto.getNetwork());
-    if (all == null) {
-      all = 0.0;
-    }
-    dto.setFullRewardUsdTotal(all);
+    dto.setFullRewardUsdTotal(hardWorkAggregates
+        .vaultRewardAt(dto.getNetwork(), dto.getVaultAddress(), dto.getBlockDate()));
 
     calculateVaultProfits(dto);
     calculatePsProfits(dto);
@@ -72,31 +72,28 @@ public class HardWorkDbService {
             .fetchLastByVaultAndDateNotZero(dto.getVaultAddress(), dto.getNetwork(), dto.getBlockDate()))
         .ifPresentOrElse(harvestDTO -> {
           dto.setTvl(harvestDTO.getLastUsdTvl());
-          silentCall(() -> hardWorkRepository
-              .fetchPercentForPeriod(
-                  dto.getVaultAddress(), dto.getBlockDate() - 1, dto.getNetwork(), limitOne))
-              .filter(Caller::isNotEmptyList)
-              .ifPresentOrElse(sumOfPercL -> {
-                silentCall(() -> harvestRepository
-                    .fetchPeriodOfWork(dto.getVaultAddress(), dto.getBlockDate(), dto.getNetwork(), limitOne))
-                    .filter(periodL -> !periodL.isEmpty() && periodL.get(0) != null)
-                    .ifPresentOrElse(periodL -> {
-                      dto.setPeriodOfWork(periodL.get(0));
-                    }, () -> log.warn("Not found period for " + dto.print()));
-              }, () -> log.warn("Not found profit for period for " + dto.print()));
-
-          silentCall(() -> hardWorkRepository
-              .fetchProfitForPeriod(
-                  dto.getVaultAddress(),
-                  dto.getBlockDate() - (long) SECONDS_IN_WEEK,
-                  dto.getBlockDate() - 1,
-                  dto.getNetwork(),
-                  limitOne))
-              .filter(Caller::isNotEmptyList)
-              .ifPresentOrElse(sumOfProfitL -> {
-                double sumOfProfit = sumOfProfitL.get(0) + dto.getFullRewardUsd();
-                dto.setWeeklyProfit(sumOfProfit);
-              }, () -> log.warn("Not found profit for period for " + dto.print()));
+          if (hardWorkAggregates.hasVaultHardWorkAt(
+              dto.getNetwork(), dto.getVaultAddress(), dto.getBlockDate() - 1)) {
+            silentCall(() -> harvestRepository
+                .fetchPeriodOfWork(dto.getVaultAddress(), dto.getBlockDate(), dto.getNetwork(), limitOne))
+                .filter(periodL -> !periodL.isEmpty() && periodL.get(0) != null)
+                .ifPresentOrElse(periodL -> {
+                  dto.setPeriodOfWork(periodL.get(0));
+                }, () -> log.warn("Not found period for " + dto.print()));
+          } else {
+            log.warn("Not found profit for period for " + dto.print());
+          }
+
+          Double weeklyProfit = hardWorkAggregates.vaultRewardForPeriod(
+              dto.getNetwork(),
+              dto.getVaultAddress(),
+              dto.getBlockDate() - (long) SECONDS_IN_WEEK,
+              dto.getBlockDate() - 1);
+          if (weeklyProfit != null) {
+            dto.setWeeklyProfit(weeklyProfit + dto.getFullRewardUsd());
+          } else {
+            log.warn("Not found profit for period for " + dto.print());
+          }
 
           silentCall(() -> harvestRepository
               .fetchAverageTvl(
@@ -112,14 +109,15 @@ public class HardWorkDbService {
 
         }, () -> log.warn("Not found harvest for " + dto.print()));
 
-    silentCall(() -> hardWorkRepository
-        .fetchAllProfitForPeriod(dto.getBlockDate() - (long) SECONDS_IN_WEEK,
-            dto.getBlockDate() - 1, dto.getNetwork(), limitOne))
-        .filter(sumOfProfitL -> !sumOfProfitL.isEmpty() && sumOfProfitL.get(0) != null)
-        .ifPresentOrElse(
-            sumOfProfitL -> dto.setWeeklyAllProfit(sumOfProfitL.get(0) + dto.getFullRewardUsd()),
-            () -> log.warn("Not found weekly profits for all vaults for " + dto.print()));
-
+    Double weeklyAllProfit = hardWorkAggregates.allRewardForPeriod(
+        dto.getNetwork(),
+        dto.getBlockDate() - (long) SECONDS_IN_WEEK,
+        dto.getBlockDate() - 1);
+    if (weeklyAllProfit != null) {
+      dto.setWeeklyAllProfit(weeklyAllProfit + dto.getFullRewardUsd());
+    } else {
+      log.warn("Not found weekly profits for all vaults for " + dto.print());
+    }
   }
 
   private void calculatePsProfits(HardWorkDTO dto) {
@@ -132,10 +130,11 @@ public class HardWorkDbService {
     if (harvestDTO != null) {
       dto.setPsTvlUsd(harvestDTO.getLastUsdTvl());
 
-      List<Double> allProfitL = hardWorkRepository
-          .fetchAllProfitAtDate(dto.getBlockDate(), dto.getNetwork(), limitOne);
-      if (allProfitL != null && !allProfitL.isEmpty() && allProfitL.get(0) != null) {
-        double allProfit = allProfitL.get(0);
+      // without hard works at the date nothing is filled, like with the sum query
+      Double allProfitAtDate =
+          hardWorkAggregates.allRewardAt(dto.getNetwork(), dto.getBlockDate());
+      if (allProfitAtDate != null) {
+        double allProfit = allProfitAtDate;
         dto.setAllProfit(allProfit);
         double allPsProfit = allProfit * 0.3;
 
@@ -163,7 +162,6 @@ public class HardWorkDbService {
           double apr = (SECONDS_OF_YEAR / period) * psProfitPerc;
           dto.setPsApr(apr);
         }
-
       }
 
     } else {
@@ -172,11 +170,8 @@ public class HardWorkDbService {
   }
 
   public void calculateFarmBuybackSum(HardWorkDTO dto) {
-    silentCall(() -> hardWorkRepository
-        .fetchAllBuybacksAtDate(dto.getBlockDate() - 1, dto.getNetwork(), limitOne))
-        .filter(Caller::isNotEmptyList)
-        .ifPresentOrElse(l -> dto.setFarmBuybackSum(l.get(0) + dto.getFarmBuyback()),
-            () -> dto.setFarmBuybackSum(dto.getFarmBuyback()));
+    dto.setFarmBuybackSum(hardWorkAggregates
+        .allBuybackBefore(dto.getNetwork(), dto.getBlockDate() - 1) + dto.getFarmBuyback());
   }
 
   public void fillExtraInfo(HardWorkDTO dto) {
@@ -0,0 +1,317 @@
+package pro.belbix.ethparser.web3.harvest.db;
+
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+import static pro.belbix.ethparser.web3.contracts.ContractConstants.iPS_ADDRESS;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.stereotype.Service;
+import pro.belbix.ethparser.entity.v0.OwnerBalanceIndexEntity;
+import pro.belbix.ethparser.repositories.v0.HarvestRepository;
+import pro.belbix.ethparser.repositories.v0.OwnerBalanceIndexRepository;
+import pro.belbix.ethparser.repositories.v0.UniswapRepository;
+import pro.belbix.ethparser.web3.contracts.ContractUtils;
+
+/**
+ * The latest USD balance of each owner in each vault and the uniswap pool, maintained on every
+ * saved action instead of window queries over the whole history. Owner counts are kept up to date
+ * with balance changes, so reading them is O(1). The state is stored in owner_balance_index and
+ * can be rebuilt from history by the owners-count-recalculate util. An empty table, like after
+ * the first deploy, is filled from the latest balances in harvest_tx and uni_tx on first use.
+ */
+@Service
+@Log4j2
+public class OwnerCountIndex {
+
+  public static final String UNI_KEY = "uni";
+  // owners with less balance are not counted
+  private static final double MIN_BALANCE_USD = 10;
+
+  private final OwnerBalanceIndexRepository ownerBalanceIndexRepository;
+  private final HarvestRepository harvestRepository;
+  private final UniswapRepository uniswapRepository;
+  private final Map<String, NetworkOwners> networks = new ConcurrentHashMap<>();
+
+  public OwnerCountIndex(OwnerBalanceIndexRepository ownerBalanceIndexRepository,
+      HarvestRepository harvestRepository,
+      UniswapRepository uniswapRepository) {
+    this.ownerBalanceIndexRepository = ownerBalanceIndexRepository;
+    this.harvestRepository = harvestRepository;
+    this.uniswapRepository = uniswapRepository;
+  }
+
+  /**
+   * Actions older than the known balance of the owner are ignored.
+   *
+   * @param vault vault address or {@link #UNI_KEY}
+   */
+  public void update(String network, String vault, String owner, Double balanceUsd,
+      long blockDate) {
+    if (vault == null || owner == null) {
+      return;
+    }
+    double balance = balanceUsd == null ? 0 : balanceUsd;
+    networkOwners(network).update(vault.toLowerCase(), owner.toLowerCase(), balance, blockDate);
+  }
+
+  public int ownerCount(String network, String vault) {
+    return networkOwners(network).ownerCount(vault.toLowerCase());
+  }
+
+  /**
+   * @return the owner count of the vault as if the action was applied, the index is not changed
+   */
+  public int ownerCountAfter(String network, String vault, String owner, Double balanceUsd,
+      long blockDate) {
+    if (owner == null) {
+      return ownerCount(network, vault);
+    }
+    double balance = balanceUsd == null ? 0 : balanceUsd;
+    return networkOwners(network)
+        .ownerCountAfter(vault.toLowerCase(), owner.toLowerCase(), balance, blockDate);
+  }
+
+  /**
+   * @return owners who ever had an action in any vault or the uniswap pool
+   */
+  public int allOwnersCount(String network) {
+    return networkOwners(network).allOwnersCount();
+  }
+
+  /**
+   * @return all owners count as if the action was applied, the index is not changed
+   */
+  public int allOwnersCountAfter(String network, String vault, String owner) {
+    if (vault == null || owner == null) {
+      return allOwnersCount(network);
+    }
+    return networkOwners(network).allOwnersCountAfter(owner.toLowerCase());
+  }
+
+  /**
+   * @return owners with a balance in at least one vault, PS vaults are not counted
+   */
+  public int allPoolsOwnersCount(String network) {
+    return networkOwners(network).allPoolsOwnersCount();
+  }
+
+  /**
+   * Save balances changed since the last flush. Concurrent flushes of a network are saved one by
+   * one, so an older balance can't overwrite a newer one.
+   */
+  public void flush(String network) {
+    NetworkOwners owners = networkOwners(network);
+    synchronized (owners.flushLock) {
+      List<OwnerBalanceIndexEntity> changed = owners.takeChanged();
+      if (!changed.isEmpty()) {
+        ownerBalanceIndexRepository.saveAll(changed);
+      }
+    }
+  }
+
+  /**
+   * Forget all balances of the network before a rebuild from history.
+   */
+  public void reset(String network) {
+    synchronized (networks) {
+      ownerBalanceIndexRepository.deleteAll(
+          ownerBalanceIndexRepository.findAllByNetwork(network));
+      networks.put(network, new NetworkOwners(network));
+    }
+    log.info("Owner balance index reset for {}", network);
+  }
+
+  private NetworkOwners networkOwners(String network) {
+    NetworkOwners owners = networks.get(network);
+    if (owners != null) {
+      return owners;
+    }
+    synchronized (networks) {
+      owners = networks.get(network);
+      if (owners != null) {
+        return owners;
+      }
+      long start = System.currentTimeMillis();
+      owners = new NetworkOwners(network);
+      List<OwnerBalanceIndexEntity> entities =
+          ownerBalanceIndexRepository.findAllByNetwork(network);
+      if (entities.isEmpty()) {
+        rebuildFromHistory(owners, network);
+      } else {
+        for (OwnerBalanceIndexEntity entity : entities) {
+          owners.update(entity.getVault(), entity.getOwner(), entity.getBalanceUsd(),
+              entity.getBlockDate());
+        }
+        owners.takeChanged();
+        log.info("Loaded {} owner balances for {} in {}ms",
+            entities.size(), network, System.currentTimeMillis() - start);
+      }
+      networks.put(network, owners);
+      return owners;
+    }
+  }
+
+  /**
+   * The latest balance of each owner is enough for current counts.
+   */
+  private void rebuildFromHistory(NetworkOwners owners, String network) {
+    long start = System.currentTimeMillis();
+    log.warn("Owner balance index is empty for {}, rebuild it from history", network);
+    for (Object[] row : harvestRepository.fetchLastOwnerBalances(network)) {
+      if (row[0] == null || row[1] == null) {
+        continue;
+      }
+      owners.update(((String) row[0]).toLowerCase(), ((String) row[1]).toLowerCase(),
+          toDouble(row[2]), toLong(row[3]));
+    }
+    // uniswap transactions are parsed only for eth
+    if (ETH_NETWORK.equals(network)) {
+      for (Object[] row : uniswapRepository.fetchLastOwnerBalances()) {
+        if (row[0] == null) {
+          continue;
+        }
+        owners.update(UNI_KEY, ((String) row[0]).toLowerCase(), toDouble(row[1]),
+            toLong(row[2]));
+      }
+    }
+    List<OwnerBalanceIndexEntity> changed = owners.takeChanged();
+    if (!changed.isEmpty()) {
+      ownerBalanceIndexRepository.saveAll(changed);
+    }
+    log.info("Rebuilt {} owner balances for {} in {}ms",
+        changed.size(), network, System.currentTimeMillis() - start);
+  }
+
+  private static double toDouble(Object value) {
+    return value == null ? 0 : ((Number) value).doubleValue();
+  }
+
+  private static long toLong(Object value) {
+    return value == null ? 0 : ((Number) value).longValue();
+  }
+
+  private static boolean isPool(String vault) {
+    return !UNI_KEY.equals(vault)
+        && !ContractUtils.isPsAddress(vault)
+        && !vault.equalsIgnoreCase(iPS_ADDRESS);
+  }
+
+  private static class NetworkOwners {
+
+    private final String network;
+    private final Map<String, VaultOwners> vaults = new HashMap<>();
+    // owner -> number of pools with a balance
+    private final Map<String, Integer> owners = new HashMap<>();
+    // by id, entities are mutable and can't be in a hash set
+    private final Map<String, OwnerBalanceIndexEntity> changed = new HashMap<>();
+    // not the instance lock, updates must not wait for saving
+    private final Object flushLock = new Object();
+    private int poolOwners = 0;
+
+    private NetworkOwners(String network) {
+      this.network = network;
+    }
+
+    synchronized void update(String vault, String owner, double balance, long blockDate) {
+      VaultOwners vaultOwners = vaults.computeIfAbsent(vault, VaultOwners::new);
+      OwnerBalanceIndexEntity entity = vaultOwners.balances.get(owner);
+      if (entity != null && entity.getBlockDate() > blockDate) {
+        return;
+      }
+      boolean wasActive = entity != null && entity.getBalanceUsd() > MIN_BALANCE_USD;
+      boolean active = balance > MIN_BALANCE_USD;
+      if (entity == null) {
+        entity = new OwnerBalanceIndexEntity();
+        entity.setId(network + "_" + vault + "_" + owner);
+        entity.setNetwork(network);
+        entity.setVault(vault);
+        entity.setOwner(owner);
+        vaultOwners.balances.put(owner, entity);
+      }
+      entity.setBalanceUsd(balance);
+      entity.setBlockDate(blockDate);
+      changed.put(entity.getId(), entity);
+
+      int pools = owners.getOrDefault(owner, 0);
+      if (wasActive != active) {
+        vaultOwners.active += active ? 1 : -1;
+        if (vaultOwners.pool) {
+          if (active && pools == 0) {
+            poolOwners++;
+          } else if (!active && pools == 1) {
+            poolOwners--;
+          }
+          pools += active ? 1 : -1;
+        }
+      }
+      owners.put(owner, pools);
+    }
+
+    synchronized int ownerCount(String vault) {
+      VaultOwners vaultOwners = vaults.get(vault);
+      return vaultOwners == null ? 0 : vaultOwners.active;
+    }
+
+    synchronized int ownerCountAfter(String vault, String owner, double balance,
+        long blockDate) {
+      VaultOwners vaultOwners = vaults.get(vault);
+      if (vaultOwners == null) {
+        return balance > MIN_BALANCE_USD ? 1 : 0;
+      }
+      OwnerBalanceIndexEntity entity = vaultOwners.balances.get(owner);
+      if (entity != null && entity.getBlockDate() > blockDate) {
+        return vaultOwners.active;
+      }
+      boolean wasActive = entity != null && entity.getBalanceUsd() > MIN_BALANCE_USD;
+      boolean active = balance > MIN_BALANCE_USD;
+      if (wasActive == active) {
+        return vaultOwners.active;
+      }
+      return vaultOwners.active + (active ? 1 : -1);
+    }
+
+    synchronized int allOwnersCount() {
+      return owners.size();
+    }
+
+    synchronized int allOwnersCountAfter(String owner) {
+      return owners.containsKey(owner) ? owners.size() : owners.size() + 1;
+    }
+
+    synchronized int allPoolsOwnersCount() {
+      return poolOwners;
+    }
+
+    synchronized List<OwnerBalanceIndexEntity> takeChanged() {
+      List<OwnerBalanceIndexEntity> result = new ArrayList<>();
+      // copies, the entities keep changing after the flush
+      for (OwnerBalanceIndexEntity entity : changed.values()) {
+        OwnerBalanceIndexEntity copy = new OwnerBalanceIndexEntity();
+        copy.setId(entity.getId());
+        copy.setNetwork(entity.getNetwork());
+        copy.setVault(entity.getVault());
+        copy.setOwner(entity.getOwner());
+        copy.setBalanceUsd(entity.getBalanceUsd());
+        copy.setBlockDate(entity.getBlockDate());
+        result.add(copy);
+      }
+      changed.clear();
+      return result;
+    }
+  }
+
+  private static class VaultOwners {
+
+    private final boolean pool;
+    private final Map<String, OwnerBalanceIndexEntity> balances = new HashMap<>();
+    private int active = 0;
+
+    private VaultOwners(String vault) {
+      this.pool = isPool(vault);
+    }
+  }
+}
@@ -4,7 +4,6 @@ import static java.time.Duration.between;
 import static java.time.Instant.now;
 import static pro.belbix.ethparser.service.AbiProviderService.BSC_NETWORK;
 import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
-import static pro.belbix.ethparser.web3.contracts.ContractConstants.iPS_ADDRESS;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigInteger;
@@ -36,17 +35,21 @@ public class VaultActionsDBService {
   private final HarvestTvlRepository harvestTvlRepository;
   private final ContractDbService contractDbService;
   private final PriceProvider priceProvider;
+  private final OwnerCountIndex ownerCountIndex;
+  private final VaultTvlAggregator tvlAggregator = new VaultTvlAggregator();
 
   public VaultActionsDBService(HarvestRepository harvestRepository,
       AppProperties appProperties,
       HarvestTvlRepository harvestTvlRepository,
       ContractDbService contractDbService,
-      PriceProvider priceProvider) {
+      PriceProvider priceProvider,
+      OwnerCountIndex ownerCountIndex) {
     this.harvestRepository = harvestRepository;
     this.appProperties = appProperties;
     this.harvestTvlRepository = harvestTvlRepository;
     this.contractDbService = contractDbService;
     this.priceProvider = priceProvider;
+    this.ownerCountIndex = ownerCountIndex;
   }
 
   public boolean saveHarvestDTO(HarvestDTO dto) {
@@ -55,10 +58,10 @@ public class VaultActionsDBService {
       return false;
     }
 
-    harvestRepository.saveAndFlush(dto);
-
     fillOwnersCount(dto);
     harvestRepository.saveAndFlush(dto);
+    applyOwnerBalance(dto);
+    ownerCountIndex.flush(dto.getNetwork());
 
     HarvestTvlEntity harvestTvl = calculateHarvestTvl(dto, true);
     harvestTvlRepository.save(harvestTvl);
@@ -68,39 +71,38 @@ public class VaultActionsDBService {
     return true;
   }
 
+  /**
+   * Fill counts from the index as if the owner balance was applied, the index itself is changed
+   * by {@link #applyOwnerBalance} after the action is saved. Actions must come in the block order,
+   * the index holds only the latest state.
+   */
   public void fillOwnersCount(HarvestDTO dto) {
-    Integer ownerCount = harvestRepository.fetchActualOwnerQuantity(
-        dto.getVaultAddress(),
-        dto.getNetwork(),
-        dto.getBlockDate());
-    if (ownerCount == null) {
-      ownerCount = 0;
+    // the history query counted only previous actions for all pools
+    dto.setAllPoolsOwnersCount(ownerCountIndex.allPoolsOwnersCount(dto.getNetwork()));
+    if (dto.getVaultAddress() != null) {
+      dto.setOwnerCount(ownerCountIndex.ownerCountAfter(dto.getNetwork(), dto.getVaultAddress(),
+          dto.getOwner(), dto.getOwnerBalanceUsd(), dto.getBlockDate()));
+    } else {
+      dto.setOwnerCount(0);
     }
-    dto.setOwnerCount(ownerCount);
+    dto.setAllOwnersCount(ownerCountIndex.allOwnersCountAfter(dto.getNetwork(),
+        dto.getVaultAddress(), dto.getOwner()));
+  }
 
-    Integer allOwnersCount = harvestRepository
-        .fetchAllUsersQuantity(dto.getBlockDate(), dto.getNetwork());
-    if (allOwnersCount == null) {
-      allOwnersCount = 0;
-    }
-    dto.setAllOwnersCount(allOwnersCount);
-
-    Integer allPoolsOwnerCount = harvestRepository.fetchAllPoolsUsersQuantity(
-        contractDbService.getAllVaults(dto.getNetwork()).stream()
-            .map(v -> v.getContract().getAddress())
-            .filter(v -> !ContractUtils.isPsAddress(v))
-            .filter(v -> !v.equalsIgnoreCase(iPS_ADDRESS))
-            .collect(Collectors.toList()),
-        dto.getBlockDate(),
-        dto.getNetwork()
-    );
-    if (allPoolsOwnerCount == null) {
-      allPoolsOwnerCount = 0;
-    }
-    dto.setAllPoolsOwnersCount(allPoolsOwnerCount);
+  public void applyOwnerBalance(HarvestDTO dto) {
+    ownerCountIndex.update(dto.getNetwork(), dto.getVaultAddress(), dto.getOwner(),
+        dto.getOwnerBalanceUsd(), dto.getBlockDate());
   }
 
   public HarvestTvlEntity calculateHarvestTvl(HarvestDTO dto, boolean checkTheSame) {
+    return calculateHarvestTvl(dto, checkTheSame, tvlAggregator);
+  }
+
+  /**
+   * @param aggregator latest vault states, the dto is applied to them
+   */
+  public HarvestTvlEntity calculateHarvestTvl(HarvestDTO dto, boolean checkTheSame,
+      VaultTvlAggregator aggregator) {
     Instant start = now();
     if (checkTheSame && harvestTvlRepository.existsById(dto.getId())) {
       log.warn("Found the same harvestTvl record for " + dto);
@@ -113,11 +115,22 @@ public class VaultActionsDBService {
     fillLastFarmPrice(dto, harvestTvl);
     fillSimpleDataFromDto(dto, harvestTvl);
     //should be after price filling
-    fillTvl(dto, harvestTvl);
+    fillTvl(dto, harvestTvl, aggregator);
     log.trace("Vault action created TVL for {}", between(start, now()).toMillis());
     return harvestTvl;
   }
 
+  /**
+   * Load the latest action of each vault at the block date to the aggregator.
+   */
+  public void loadTvlState(VaultTvlAggregator aggregator, String network, long blockDate) {
+    Instant start = now();
+    List<HarvestDTO> latest = harvestRepository.fetchLastForAllVaults(network, blockDate);
+    aggregator.load(network, latest);
+    log.info("Loaded {} vault states for {} in {}ms",
+        latest.size(), network, between(start, now()).toMillis());
+  }
+
   public void fillSimpleDataFromDto(HarvestDTO dto, HarvestTvlEntity harvestTvl) {
     if (dto.getAllPoolsOwnersCount() != null) {
       harvestTvl.setLastOwnersCount(dto.getAllPoolsOwnersCount());
@@ -137,13 +150,26 @@ public class VaultActionsDBService {
             ContractUtils.getFarmAddress(dto.getNetwork()), dto.getBlock(), dto.getNetwork()));
   }
 
-  public void fillTvl(HarvestDTO dto, HarvestTvlEntity harvestTvl) {
-    double tvl = 0.0;
-
+  public void fillTvl(HarvestDTO dto, HarvestTvlEntity harvestTvl,
+      VaultTvlAggregator aggregator) {
     List<String> contractAddresses = contractDbService.getAllVaults(dto.getNetwork())
         .stream().map(v -> v.getContract().getAddress())
         .collect(Collectors.toList());
 
+    synchronized (aggregator) {
+      if (!aggregator.isLoaded(dto.getNetwork())) {
+        loadTvlState(aggregator, dto.getNetwork(), Long.MAX_VALUE);
+      }
+    }
+    if (aggregator.apply(dto)) {
+      harvestTvl.setLastTvl(aggregator.sum(dto.getNetwork(), contractAddresses,
+          (lastHarvest, lpStat) ->
+              calculateActualTvl(lastHarvest, lpStat, harvestTvl.getLastPrice())));
+      return;
+    }
+
+    // an action from the past, the aggregator knows only the latest states
+    double tvl = 0.0;
     for (String vaultAddress : contractAddresses) {
       HarvestDTO lastHarvest = harvestRepository
           .fetchLastByVaultAndDate(vaultAddress, dto.getNetwork(), dto.getBlockDate());
@@ -153,13 +179,28 @@ public class VaultActionsDBService {
       if (lastHarvest.getId().equalsIgnoreCase(dto.getId())) {
         lastHarvest = dto; // for avoiding JPA wrong synchronisation
       }
-      tvl += calculateActualTvl(lastHarvest, harvestTvl.getLastPrice());
+      tvl += calculateActualTvl(
+          lastHarvest, parseLpStat(lastHarvest.getLpStat()), harvestTvl.getLastPrice());
     }
 
     harvestTvl.setLastTvl(tvl);
   }
 
-  private double calculateActualTvl(HarvestDTO dto, Double farmPrice) {
+  /**
+   * @return null for blank or broken json
+   */
+  static LpStat parseLpStat(String json) {
+    if (Strings.isBlank(json)) {
+      return null;
+    }
+    try {
+      return objectMapper.readValue(json, LpStat.class);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  private double calculateActualTvl(HarvestDTO dto, LpStat lpStat, Double farmPrice) {
     double tvl = 0.0;
     try {
       if (Strings.isBlank(dto.getLpStat())) {
@@ -172,8 +213,6 @@ public class VaultActionsDBService {
         }
         tvl = dto.getLastTvl() * coinPrice;
       } else {
-        LpStat lpStat = objectMapper.readValue(dto.getLpStat(), LpStat.class);
-
         double coin1Price;
         if ("FARM".equalsIgnoreCase(lpStat.getCoin1())) {
           coin1Price = farmPrice;
@@ -0,0 +1,85 @@
+package pro.belbix.ethparser.web3.harvest.db;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleBiFunction;
+import pro.belbix.ethparser.dto.v0.HarvestDTO;
+import pro.belbix.ethparser.model.LpStat;
+
+/**
+ * The latest action of each vault with the parsed LP stat, so the TVL of all vaults at the moment
+ * of an action is a sum over memory instead of a query per vault. Actions must be applied in the
+ * block date order, the state for an older action is already lost.
+ */
+public class VaultTvlAggregator {
+
+  private final Map<String, Map<String, VaultState>> vaults = new HashMap<>();
+  private final Map<String, Long> lastBlockDates = new HashMap<>();
+
+  public synchronized boolean isLoaded(String network) {
+    return vaults.containsKey(network);
+  }
+
+  /**
+   * @param latest the latest action of each vault at some moment in any order, the following
+   *               actions must be newer than all of them
+   */
+  public synchronized void load(String network, List<HarvestDTO> latest) {
+    Map<String, VaultState> states = new HashMap<>();
+    long lastBlockDate = Long.MIN_VALUE;
+    for (HarvestDTO dto : latest) {
+      if (dto.getVaultAddress() == null || dto.getBlockDate() == null) {
+        continue;
+      }
+      states.put(dto.getVaultAddress().toLowerCase(),
+          new VaultState(dto, VaultActionsDBService.parseLpStat(dto.getLpStat())));
+      lastBlockDate = Math.max(lastBlockDate, dto.getBlockDate());
+    }
+    vaults.put(network, states);
+    lastBlockDates.put(network, lastBlockDate);
+  }
+
+  /**
+   * @return false if the action is older than already applied, the sum can't be used for it
+   */
+  public synchronized boolean apply(HarvestDTO dto) {
+    if (dto.getVaultAddress() == null || dto.getBlockDate() == null) {
+      return false;
+    }
+    long lastBlockDate = lastBlockDates.getOrDefault(dto.getNetwork(), Long.MIN_VALUE);
+    if (dto.getBlockDate() < lastBlockDate) {
+      return false;
+    }
+    lastBlockDates.put(dto.getNetwork(), dto.getBlockDate());
+    vaults.computeIfAbsent(dto.getNetwork(), n -> new HashMap<>())
+        .put(dto.getVaultAddress().toLowerCase(),
+            new VaultState(dto, VaultActionsDBService.parseLpStat(dto.getLpStat())));
+    return true;
+  }
+
+  public synchronized double sum(String network, Collection<String> vaultAddresses,
+      ToDoubleBiFunction<HarvestDTO, LpStat> tvlFunction) {
+    Map<String, VaultState> states = vaults.getOrDefault(network, Map.of());
+    double tvl = 0.0;
+    for (String vaultAddress : vaultAddresses) {
+      VaultState state = states.get(vaultAddress.toLowerCase());
+      if (state != null) {
+        tvl += tvlFunction.applyAsDouble(state.dto, state.lpStat);
+      }
+    }
+    return tvl;
+  }
+
+  private static class VaultState {
+
+    private final HarvestDTO dto;
+    private final LpStat lpStat;
+
+    private VaultState(HarvestDTO dto, LpStat lpStat) {
+      this.dto = dto;
+      this.lpStat = lpStat;
+    }
+  }
+}
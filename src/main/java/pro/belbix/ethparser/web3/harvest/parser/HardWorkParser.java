@@ -20,6 +20,8 @@ import static pro.belbix.ethparser.web3.contracts.ContractUtils.getControllerAdd
 
 import java.math.BigInteger;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.web3j.protocol.core.methods.response.Log;
@@ -79,7 +81,8 @@ public class HardWorkParser extends Web3Parser<HardWorkDTO, Log> {
 
   @Override
   protected void subscribeToInput() {
-    web3Subscriber.subscribeOnLogs(input, this.getClass().getSimpleName());
+    inputCursor = web3Subscriber.subscribeOnLogs(this.getClass().getSimpleName(),
+        hardWorkLogDecoder.topicsByNames(List.of("SharePriceChangeLog")), null);
   }
 
   @Override
@@ -348,22 +351,21 @@ public class HardWorkParser extends Web3Parser<HardWorkDTO, Log> {
   }
 
   private void parseVaultInvestedFunds(HardWorkDTO dto, String network) {
-    double underlyingBalanceInVault = functionsUtils.callIntByName(
+    Map<String, Optional<BigInteger>> values = functionsUtils.callIntByNames(List.of(
         UNDERLYING_BALANCE_IN_VAULT,
-        dto.getVaultAddress(),
-        dto.getBlock(), network).orElse(BigInteger.ZERO).doubleValue();
-    double underlyingBalanceWithInvestment = functionsUtils.callIntByName(
         UNDERLYING_BALANCE_WITH_INVESTMENT,
-        dto.getVaultAddress(),
-        dto.getBlock(), network).orElse(BigInteger.ZERO).doubleValue();
-    double vaultFractionToInvestNumerator = functionsUtils.callIntByName(
         VAULT_FRACTION_TO_INVEST_NUMERATOR,
+        VAULT_FRACTION_TO_INVEST_DENOMINATOR),
         dto.getVaultAddress(),
-        dto.getBlock(), network).orElse(BigInteger.ZERO).doubleValue();
-    double vaultFractionToInvestDenominator = functionsUtils.callIntByName(
-        VAULT_FRACTION_TO_INVEST_DENOMINATOR,
-        dto.getVaultAddress(),
-        dto.getBlock(), network).orElse(BigInteger.ZERO).doubleValue();
+        dto.getBlock(), network);
+    double underlyingBalanceInVault = values.get(UNDERLYING_BALANCE_IN_VAULT)
+        .orElse(BigInteger.ZERO).doubleValue();
+    double underlyingBalanceWithInvestment = values.get(UNDERLYING_BALANCE_WITH_INVESTMENT)
+        .orElse(BigInteger.ZERO).doubleValue();
+    double vaultFractionToInvestNumerator = values.get(VAULT_FRACTION_TO_INVEST_NUMERATOR)
+        .orElse(BigInteger.ZERO).doubleValue();
+    double vaultFractionToInvestDenominator = values.get(VAULT_FRACTION_TO_INVEST_DENOMINATOR)
+        .orElse(BigInteger.ZERO).doubleValue();
 
     double invested =
         100.0 * (underlyingBalanceWithInvestment - underlyingBalanceInVault)
@@ -7,6 +7,7 @@ import static pro.belbix.ethparser.web3.contracts.ContractConstants.D18;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigInteger;
+import java.util.List;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.web3j.protocol.core.methods.response.Log;
@@ -59,7 +60,10 @@ public class ImportantEventsParser extends Web3Parser<ImportantEventsDTO, Log> {
 
   @Override
   protected void subscribeToInput() {
-    web3Subscriber.subscribeOnLogs(input, this.getClass().getSimpleName());
+    inputCursor = web3Subscriber.subscribeOnLogs(this.getClass().getSimpleName(),
+        importantEventsLogDecoder.topicsByNames(
+            List.of("StrategyChanged", "StrategyAnnounced", "Transfer")),
+        null);
   }
 
   @Override
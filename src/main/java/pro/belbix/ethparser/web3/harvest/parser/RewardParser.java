@@ -14,6 +14,7 @@ import static pro.belbix.ethparser.web3.contracts.ContractType.POOL;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
+import java.util.List;
 import java.util.Set;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
@@ -72,7 +73,8 @@ public class RewardParser extends Web3Parser<RewardDTO, Log> {
 
   @Override
   protected void subscribeToInput() {
-    web3Subscriber.subscribeOnLogs(input, this.getClass().getSimpleName());
+    inputCursor = web3Subscriber.subscribeOnLogs(this.getClass().getSimpleName(),
+        vaultActionsLogDecoder.topicsByNames(List.of("RewardAdded")), Set.of(POOL));
   }
 
   @Override
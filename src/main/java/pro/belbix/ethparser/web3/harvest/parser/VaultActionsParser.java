@@ -14,6 +14,9 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.web3j.abi.datatypes.Address;
@@ -65,6 +68,7 @@ public class VaultActionsParser extends Web3Parser<HarvestDTO, Log> {
 
   private final HarvestOwnerBalanceCalculator harvestOwnerBalanceCalculator;
   private final ContractDbService contractDbService;
+  private final ReadWriteLock migrationLock = new ReentrantReadWriteLock();
 
   public VaultActionsParser(Web3Functions web3Functions,
       VaultActionsDBService vaultActionsDBService,
@@ -94,17 +98,47 @@ public class VaultActionsParser extends Web3Parser<HarvestDTO, Log> {
 
   @Override
   protected void subscribeToInput() {
-    web3Subscriber.subscribeOnLogs(input, this.getClass().getSimpleName());
+    inputCursor = web3Subscriber.subscribeOnLogs(this.getClass().getSimpleName(),
+        vaultActionsLogDecoder.topicsByNames(List.of("Transfer", "Staked", "Withdrawn")),
+        Set.of(VAULT));
   }
 
+  @Override
+  protected int workers() {
+    return appProperties.getParserWorkers();
+  }
+
+  /**
+   * Owner balances and profits depend on previous actions in the same vault.
+   */
+  @Override
+  protected String partitionKey(Log ethLog) {
+    return ethLog.getAddress();
+  }
+
+  /**
+   * A migration is saved to another vault from the partition of the old vault, so it runs
+   * exclusively, while no other action is saved.
+   */
   @Override
   protected boolean save(HarvestDTO dto) {
+    Lock lock = dto.getMigration() != null
+        ? migrationLock.writeLock() : migrationLock.readLock();
+    lock.lock();
+    try {
+      return saveAction(dto);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean saveAction(HarvestDTO dto) {
     enrichDto(dto, dto.getNetwork());
     harvestOwnerBalanceCalculator.fillBalance(dto, dto.getNetwork());
     boolean success = vaultActionsDBService.saveHarvestDTO(dto);
 
     if (dto.getMigration() != null) {
-      save(dto.getMigration());
+      saveAction(dto.getMigration());
     }
     if (success) {
       log.debug("Successfully saved vault action for {}", dto.getVault());
@@ -0,0 +1,95 @@
+package pro.belbix.ethparser.web3.layers.blocks.db;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of hex keys with a fixed size, like hashes or addresses, to their indexes. Keys
+ * are kept as bytes in one array, without objects per entry. A key is searched in a small window
+ * of slots. When the window is full, a new key replaces the slot at its hash position, so the
+ * cache never grows and a replaced hot key is put back after the next miss.
+ */
+class DictionaryCache {
+
+  private static final int PROBES = 8;
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private final int keySize;
+  private final int mask;
+  private final byte[] keys;
+  private final long[] values;
+
+  DictionaryCache(int keySize, int capacity) {
+    int slots = Integer.highestOneBit(Math.max(capacity, PROBES) - 1) << 1;
+    this.keySize = keySize;
+    this.mask = slots - 1;
+    this.keys = new byte[slots * keySize];
+    this.values = new long[slots];
+    Arrays.fill(values, EMPTY);
+  }
+
+  synchronized Long get(String hex) {
+    byte[] key = toBytes(hex);
+    if (key == null) {
+      return null;
+    }
+    int slot = slot(key);
+    for (int i = 0; i < PROBES; i++) {
+      int s = (slot + i) & mask;
+      if (values[s] == EMPTY) {
+        return null;
+      }
+      if (keyEquals(s, key)) {
+        return values[s];
+      }
+    }
+    return null;
+  }
+
+  synchronized void put(String hex, long idx) {
+    byte[] key = toBytes(hex);
+    if (key == null) {
+      return;
+    }
+    int slot = slot(key);
+    int target = slot;
+    for (int i = 0; i < PROBES; i++) {
+      int s = (slot + i) & mask;
+      if (values[s] == EMPTY || keyEquals(s, key)) {
+        target = s;
+        break;
+      }
+    }
+    System.arraycopy(key, 0, keys, target * keySize, keySize);
+    values[target] = idx;
+  }
+
+  private boolean keyEquals(int slot, byte[] key) {
+    int from = slot * keySize;
+    return Arrays.equals(keys, from, from + keySize, key, 0, keySize);
+  }
+
+  private int slot(byte[] key) {
+    int h = Arrays.hashCode(key);
+    h ^= h >>> 16;
+    return h & mask;
+  }
+
+  /**
+   * @return null for values not in the format 0x + hex with the key size
+   */
+  private byte[] toBytes(String hex) {
+    if (hex == null || hex.length() != 2 + keySize * 2 || !hex.startsWith("0x")) {
+      return null;
+    }
+    byte[] bytes = new byte[keySize];
+    for (int i = 0; i < keySize; i++) {
+      int high = Character.digit(hex.charAt(2 + i * 2), 16);
+      int low = Character.digit(hex.charAt(3 + i * 2), 16);
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+    return bytes;
+  }
+}
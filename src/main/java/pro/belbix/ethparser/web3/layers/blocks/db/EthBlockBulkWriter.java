@@ -0,0 +1,184 @@
+package pro.belbix.ethparser.web3.layers.blocks.db;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import lombok.extern.log4j.Log4j2;
+import org.hibernate.Session;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import pro.belbix.ethparser.entity.a_layer.EthAddressEntity;
+import pro.belbix.ethparser.entity.a_layer.EthBlockEntity;
+import pro.belbix.ethparser.entity.a_layer.EthHashEntity;
+import pro.belbix.ethparser.entity.a_layer.EthLogEntity;
+import pro.belbix.ethparser.entity.a_layer.EthTxEntity;
+import pro.belbix.ethparser.repositories.a_layer.EthBlockRepository;
+
+/**
+ * Writes many blocks with their transactions and logs in one transaction with the COPY protocol,
+ * bypassing the Hibernate session. Already persisted blocks are skipped, so a range can be
+ * ingested again.
+ */
+@Service
+@Log4j2
+public class EthBlockBulkWriter {
+
+  private final static String COPY_BLOCKS = "COPY a_eth_block (number, nonce, author, "
+      + "difficulty, total_difficulty, extra_data, size, gas_limit, gas_used, timestamp, "
+      + "network, hash, parent_hash, miner) FROM STDIN WITH (FORMAT csv)";
+  private final static String COPY_TXS = "COPY a_eth_tx (id, nonce, transaction_index, value, "
+      + "gas_price, gas, input, creates, public_key, raw, cumulative_gas_used, gas_used, root, "
+      + "status, revert_reason, hash, from_address, to_address, contract_address, block_number) "
+      + "FROM STDIN WITH (FORMAT csv)";
+  private final static String COPY_LOGS = "COPY a_eth_log (id, log_id, removed, "
+      + "transaction_index, data, type, topics, address, first_topic, tx_id, block_number) "
+      + "FROM STDIN WITH (FORMAT csv)";
+  private final static String NEXT_IDS = "select nextval(pg_get_serial_sequence(?, 'id')) "
+      + "from generate_series(1, ?)";
+
+  private final EthBlockDbService ethBlockDbService;
+  private final EthBlockRepository ethBlockRepository;
+  private final EntityManager entityManager;
+
+  public EthBlockBulkWriter(EthBlockDbService ethBlockDbService,
+      EthBlockRepository ethBlockRepository,
+      EntityManager entityManager) {
+    this.ethBlockDbService = ethBlockDbService;
+    this.ethBlockRepository = ethBlockRepository;
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * @return persisted blocks, without the blocks that already exist
+   */
+  @Transactional
+  public List<EthBlockEntity> write(List<EthBlockEntity> blocks) {
+    Set<Long> exist = new HashSet<>(ethBlockRepository.findExistNumbers(
+        blocks.stream().map(EthBlockEntity::getNumber).collect(Collectors.toList())));
+    List<EthBlockEntity> newBlocks = new ArrayList<>();
+    Set<Long> numbers = new HashSet<>();
+    for (EthBlockEntity block : blocks) {
+      if (exist.contains(block.getNumber()) || !numbers.add(block.getNumber())) {
+        log.warn("Duplicate eth block " + block.getNumber());
+        continue;
+      }
+      // COPY needs only indexes
+      ethBlockDbService.persistDictionaries(block, false);
+      newBlocks.add(block);
+    }
+    if (newBlocks.isEmpty()) {
+      return newBlocks;
+    }
+    entityManager.unwrap(Session.class).doWork(connection -> copy(connection, newBlocks));
+    return newBlocks;
+  }
+
+  private void copy(Connection connection, List<EthBlockEntity> blocks) throws SQLException {
+    List<EthTxEntity> txs = new ArrayList<>();
+    List<EthLogEntity> logs = new ArrayList<>();
+    for (EthBlockEntity block : blocks) {
+      for (EthTxEntity tx : block.getTransactions()) {
+        txs.add(tx);
+        if (tx.getLogs() != null) {
+          logs.addAll(tx.getLogs());
+        }
+      }
+    }
+    List<Long> txIds = nextIds(connection, "a_eth_tx", txs.size());
+    for (int i = 0; i < txs.size(); i++) {
+      txs.get(i).setId(txIds.get(i));
+    }
+    List<Long> logIds = nextIds(connection, "a_eth_log", logs.size());
+    for (int i = 0; i < logs.size(); i++) {
+      logs.get(i).setId(logIds.get(i));
+    }
+
+    StringBuilder blockRows = new StringBuilder();
+    for (EthBlockEntity block : blocks) {
+      row(blockRows, block.getNumber(), block.getNonce(), block.getAuthor(),
+          block.getDifficulty(), block.getTotalDifficulty(), block.getExtraData(),
+          block.getSize(), block.getGasLimit(), block.getGasUsed(), block.getTimestamp(),
+          block.getNetwork(), idx(block.getHash()), idx(block.getParentHash()),
+          idx(block.getMiner()));
+    }
+    StringBuilder txRows = new StringBuilder();
+    for (EthTxEntity tx : txs) {
+      row(txRows, tx.getId(), tx.getNonce(), tx.getTransactionIndex(), tx.getValue(),
+          tx.getGasPrice(), tx.getGas(), tx.getInput(), tx.getCreates(), tx.getPublicKey(),
+          tx.getRaw(), tx.getCumulativeGasUsed(), tx.getGasUsed(), tx.getRoot(),
+          tx.getStatus(), tx.getRevertReason(), idx(tx.getHash()), idx(tx.getFromAddress()),
+          idx(tx.getToAddress()), idx(tx.getContractAddress()),
+          tx.getBlockNumber().getNumber());
+    }
+    StringBuilder logRows = new StringBuilder();
+    for (EthLogEntity ethLog : logs) {
+      row(logRows, ethLog.getId(), ethLog.getLogId(), ethLog.getRemoved(),
+          ethLog.getTransactionIndex(), ethLog.getData(), ethLog.getType(),
+          ethLog.getTopics(), idx(ethLog.getAddress()), idx(ethLog.getFirstTopic()),
+          ethLog.getTx().getId(), ethLog.getTx().getBlockNumber().getNumber());
+    }
+
+    CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+    try {
+      copyManager.copyIn(COPY_BLOCKS, new StringReader(blockRows.toString()));
+      copyManager.copyIn(COPY_TXS, new StringReader(txRows.toString()));
+      copyManager.copyIn(COPY_LOGS, new StringReader(logRows.toString()));
+    } catch (IOException e) {
+      throw new SQLException("Can't copy blocks", e);
+    }
+    log.info("Copied {} blocks, {} txs, {} logs", blocks.size(), txs.size(), logs.size());
+  }
+
+  private static List<Long> nextIds(Connection connection, String table, int count)
+      throws SQLException {
+    List<Long> ids = new ArrayList<>(count);
+    if (count == 0) {
+      return ids;
+    }
+    try (PreparedStatement statement = connection.prepareStatement(NEXT_IDS)) {
+      statement.setString(1, table);
+      statement.setInt(2, count);
+      try (ResultSet resultSet = statement.executeQuery()) {
+        while (resultSet.next()) {
+          ids.add(resultSet.getLong(1));
+        }
+      }
+    }
+    return ids;
+  }
+
+  private static Long idx(EthHashEntity hash) {
+    return hash == null ? null : hash.getIdx();
+  }
+
+  private static Long idx(EthAddressEntity address) {
+    return address == null ? null : address.getIdx();
+  }
+
+  /**
+   * CSV row where null is an unquoted empty value and other values are quoted.
+   */
+  private static void row(StringBuilder sb, Object... values) {
+    for (int i = 0; i < values.length; i++) {
+      if (i > 0) {
+        sb.append(',');
+      }
+      if (values[i] == null) {
+        continue;
+      }
+      sb.append('"').append(values[i].toString().replace("\"", "\"\"")).append('"');
+    }
+    sb.append('\n');
+  }
+}
@@ -1,21 +1,23 @@
 package pro.belbix.ethparser.web3.layers.blocks.db;
 
-import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
 import lombok.extern.log4j.Log4j2;
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import pro.belbix.ethparser.entity.a_layer.EthAddressEntity;
 import pro.belbix.ethparser.entity.a_layer.EthBlockEntity;
 import pro.belbix.ethparser.entity.a_layer.EthHashEntity;
+import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.repositories.a_layer.EthAddressRepository;
 import pro.belbix.ethparser.repositories.a_layer.EthBlockRepository;
 import pro.belbix.ethparser.repositories.a_layer.EthHashRepository;
@@ -25,103 +27,192 @@ import pro.belbix.ethparser.service.SequenceService;
 @Log4j2
 public class EthBlockDbService {
 
-  private final static long MAX_SEQ = 100000;
+  private final static int HASH_SIZE = 32;
+  private final static int ADDRESS_SIZE = 20;
 
   private final EthBlockRepository ethBlockRepository;
   private final EthHashRepository ethHashRepository;
   private final EthAddressRepository ethAddressRepository;
   private final SequenceService sequenceService;
+  private final EntityManager entityManager;
+  // only committed rows, hot hashes and addresses are not requested from DB for each block
+  private final DictionaryCache hashCache;
+  private final DictionaryCache addressCache;
 
   public EthBlockDbService(EthBlockRepository ethBlockRepository,
       EthHashRepository ethHashRepository,
       EthAddressRepository ethAddressRepository,
-      SequenceService sequenceService) {
+      SequenceService sequenceService,
+      EntityManager entityManager,
+      AppProperties appProperties) {
     this.ethBlockRepository = ethBlockRepository;
     this.ethHashRepository = ethHashRepository;
     this.ethAddressRepository = ethAddressRepository;
     this.sequenceService = sequenceService;
+    this.entityManager = entityManager;
+    this.hashCache = new DictionaryCache(HASH_SIZE, appProperties.getHashCacheSize());
+    this.addressCache = new DictionaryCache(ADDRESS_SIZE, appProperties.getAddressCacheSize());
   }
 
-  //multithreading doesn't work with current solution
+  /**
+   * Safe for concurrent calls. Dictionary rows are inserted with insert-on-conflict, so parallel
+   * transactions with the same hashes or addresses don't fail on duplicate keys, and the actual
+   * indexes are read back after the insert.
+   */
   @Transactional
-  public synchronized EthBlockEntity save(EthBlockEntity block) {
+  public EthBlockEntity save(EthBlockEntity block) {
     if (ethBlockRepository.existsById(block.getNumber())) {
       log.warn("Duplicate eth block " + block.getNumber());
       return null;
     }
-    AtomicLong seq = new AtomicLong(sequenceService.releaseRange(MAX_SEQ));
-    long startSeq = seq.get();
-    BlockEntityCollector collector = persistChildEntities(block, seq, startSeq);
-    new BlockEntityUpdater(block, collector).update();
+    persistDictionaries(block);
     return ethBlockRepository.saveAndFlush(block);
 
   }
 
-  private BlockEntityCollector persistChildEntities(EthBlockEntity block, AtomicLong seq,
-      long startSeq) {
+  /**
+   * Persist hashes and addresses of the block and replace them in the block by persisted rows.
+   * Should be called inside a transaction.
+   */
+  public void persistDictionaries(EthBlockEntity block) {
+    persistDictionaries(block, true);
+  }
+
+  /**
+   * @param attach attach cached rows to the session for saving the block with JPA. Writers that
+   *               need only indexes must not attach them, a session with many blocks would get
+   *               different instances of the same row.
+   */
+  public void persistDictionaries(EthBlockEntity block, boolean attach) {
     BlockEntityCollector collector = new BlockEntityCollector(block);
     collector.collectFromBlock();
-    persistHashes(collector.getHashes(), seq, startSeq);
-    persistAddresses(collector.getAddresses(), seq, startSeq);
-    return collector;
+    persistHashes(collector.getHashes(), attach);
+    persistAddresses(collector.getAddresses(), attach);
+    new BlockEntityUpdater(block, collector).update();
   }
 
-  private void persistHashes(Map<String, EthHashEntity> hashes, AtomicLong seq, long startSeq) {
-    List<EthHashEntity> persistent = ethHashRepository.findAllById(hashes.keySet());
+  private void persistHashes(Map<String, EthHashEntity> hashes, boolean attach) {
+    Set<String> notCached = new HashSet<>();
+    for (String hash : hashes.keySet()) {
+      Long idx = hashCache.get(hash);
+      if (idx == null) {
+        notCached.add(hash);
+        continue;
+      }
+      EthHashEntity cached = new EthHashEntity(hash);
+      cached.setIdx(idx);
+      hashes.put(hash, attach ? attach(cached) : cached);
+    }
+    if (notCached.isEmpty()) {
+      return;
+    }
+    List<EthHashEntity> persistent = ethHashRepository.findAllById(notCached);
     Map<String, EthHashEntity> persistentMap = persistent.stream()
         .collect(Collectors.toMap(EthHashEntity::getHash, item -> item));
-    List<EthHashEntity> notPersistent = new ArrayList<>();
-    for (Entry<String, EthHashEntity> entry : hashes.entrySet()) {
-      EthHashEntity persist = persistentMap.get(entry.getKey());
+    // sorted for the same order of row locks in concurrent transactions
+    Set<String> notPersistent = new TreeSet<>();
+    for (String hash : notCached) {
+      EthHashEntity persist = persistentMap.get(hash);
       if (persist != null) {
-        hashes.put(entry.getKey(), persist);
+        hashes.put(hash, persist);
+        hashCache.put(hash, persist.getIdx());
         continue;
       }
-      if (entry.getValue().getHash() == null) {
+      if (hashes.get(hash).getHash() == null) {
         log.warn("Empty hash");
         continue;
       }
-      entry.getValue().setIdx(seq.incrementAndGet());
-      checkSeq(seq, startSeq);
-      notPersistent.add(entry.getValue());
-      ethHashRepository.save(entry.getValue());
+      notPersistent.add(hash);
+    }
+    if (notPersistent.isEmpty()) {
+      return;
     }
-    if (!notPersistent.isEmpty()) {
-      ethHashRepository.saveAll(notPersistent);
-      ethHashRepository.flush();
+    long idx = sequenceService.releaseRange(notPersistent.size());
+    int conflicts = 0;
+    for (String hash : notPersistent) {
+      idx++;
+      conflicts += 1 - ethHashRepository.insertIfNotExist(hash, idx);
     }
+    if (conflicts > 0) {
+      log.info("{} hashes inserted by concurrent transactions", conflicts);
+    }
+    List<EthHashEntity> inserted = ethHashRepository.findAllById(notPersistent);
+    inserted.forEach(h -> hashes.put(h.getHash(), h));
+    afterCommit(() -> inserted.forEach(h -> hashCache.put(h.getHash(), h.getIdx())));
   }
 
-  private void persistAddresses(Map<String, EthAddressEntity> addresses, AtomicLong seq,
-      long startSeq) {
-    List<EthAddressEntity> persistent = ethAddressRepository.findAllById(addresses.keySet());
+  private void persistAddresses(Map<String, EthAddressEntity> addresses, boolean attach) {
+    Set<String> notCached = new HashSet<>();
+    for (String address : addresses.keySet()) {
+      Long idx = addressCache.get(address);
+      if (idx == null) {
+        notCached.add(address);
+        continue;
+      }
+      EthAddressEntity cached = new EthAddressEntity(address);
+      cached.setIdx(idx);
+      addresses.put(address, attach ? attach(cached) : cached);
+    }
+    if (notCached.isEmpty()) {
+      return;
+    }
+    List<EthAddressEntity> persistent = ethAddressRepository.findAllById(notCached);
     Map<String, EthAddressEntity> persistentMap = persistent.stream()
         .collect(Collectors.toMap(EthAddressEntity::getAddress, item -> item));
-    List<EthAddressEntity> notPersistent = new ArrayList<>();
-    for (Entry<String, EthAddressEntity> entry : addresses.entrySet()) {
-      EthAddressEntity persist = persistentMap.get(entry.getKey());
+    Set<String> notPersistent = new TreeSet<>();
+    for (String address : notCached) {
+      EthAddressEntity persist = persistentMap.get(address);
       if (persist != null) {
-        addresses.put(entry.getKey(), persist);
+        addresses.put(address, persist);
+        addressCache.put(address, persist.getIdx());
         continue;
       }
-      if (entry.getValue().getAddress() == null) {
+      if (addresses.get(address).getAddress() == null) {
         log.warn("Empty address");
         continue;
       }
-      entry.getValue().setIdx(seq.incrementAndGet());
-      checkSeq(seq, startSeq);
-      notPersistent.add(entry.getValue());
+      notPersistent.add(address);
     }
-    if (!notPersistent.isEmpty()) {
-      ethAddressRepository.saveAll(notPersistent);
-      ethAddressRepository.flush();
+    if (notPersistent.isEmpty()) {
+      return;
     }
+    long idx = sequenceService.releaseRange(notPersistent.size());
+    int conflicts = 0;
+    for (String address : notPersistent) {
+      idx++;
+      conflicts += 1 - ethAddressRepository.insertIfNotExist(address, idx);
+    }
+    if (conflicts > 0) {
+      log.info("{} addresses inserted by concurrent transactions", conflicts);
+    }
+    List<EthAddressEntity> inserted = ethAddressRepository.findAllById(notPersistent);
+    inserted.forEach(a -> addresses.put(a.getAddress(), a));
+    afterCommit(() -> inserted.forEach(a -> addressCache.put(a.getAddress(), a.getIdx())));
+  }
+
+  /**
+   * Reattach a cached row to the session without a select.
+   */
+  private <T> T attach(T entity) {
+    entityManager.unwrap(Session.class).buildLockRequest(LockOptions.NONE).lock(entity);
+    return entity;
   }
 
-  private void checkSeq(AtomicLong seq, long startSeq) {
-    if ((seq.get() - startSeq) > MAX_SEQ) {
-      throw new IllegalStateException("Sequence more than " + MAX_SEQ);
+  /**
+   * Rows inserted in a rolled back transaction must not get in the cache.
+   */
+  private static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
     }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+          @Override
+          public void afterCommit() {
+            action.run();
+          }
+        });
   }
 
 }
@@ -2,17 +2,21 @@ package pro.belbix.ethparser.web3.layers.blocks.parser;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import javax.annotation.PreDestroy;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
@@ -32,19 +36,31 @@ import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.properties.NetworkProperties;
 import pro.belbix.ethparser.web3.Web3Functions;
 import pro.belbix.ethparser.web3.Web3Subscriber;
+import pro.belbix.ethparser.web3.layers.blocks.db.EthBlockBulkWriter;
 import pro.belbix.ethparser.web3.layers.blocks.db.EthBlockDbService;
 
+/**
+ * Blocks go through a pipeline: the block flowable fetches blocks, a pool parses them with
+ * receipts fetched in parallel chunks, and one thread persists them in the order of arrival.
+ * Several blocks are in flight while the previous block is persisted.
+ */
 @Service
 @Log4j2
 public class EthBlockParser {
 
+  private static final int RECEIPT_RETRIES = 1000;
   private static final AtomicBoolean run = new AtomicBoolean(true);
-  private final BlockingQueue<Web3Model<EthBlock>> input = new ArrayBlockingQueue<>(1);
+  private final BlockingQueue<Web3Model<EthBlock>> input;
+  // futures in the order of blocks, bounded to limit blocks in flight
+  private final BlockingQueue<CompletableFuture<EthBlockEntity>> parsed;
   private final BlockingQueue<EthBlockEntity> output = new ArrayBlockingQueue<>(10);
+  private final ExecutorService blockExecutor;
+  private final ExecutorService receiptExecutor;
   private final Web3Functions web3Functions;
   private final Web3Subscriber web3Subscriber;
   private final AppProperties appProperties;
   private final EthBlockDbService ethBlockDbService;
+  private final EthBlockBulkWriter ethBlockBulkWriter;
   private final NetworkProperties networkProperties;
   private Instant lastTx = Instant.now();
   private long count = 0;
@@ -52,12 +68,19 @@ public class EthBlockParser {
   public EthBlockParser(Web3Functions web3Functions,
       Web3Subscriber web3Subscriber, AppProperties appProperties,
       EthBlockDbService ethBlockDbService,
+      EthBlockBulkWriter ethBlockBulkWriter,
       NetworkProperties networkProperties) {
     this.web3Functions = web3Functions;
     this.web3Subscriber = web3Subscriber;
     this.appProperties = appProperties;
     this.ethBlockDbService = ethBlockDbService;
+    this.ethBlockBulkWriter = ethBlockBulkWriter;
     this.networkProperties = networkProperties;
+    int blocksInFlight = Math.max(appProperties.getBlocksInFlight(), 1);
+    input = new ArrayBlockingQueue<>(blocksInFlight);
+    parsed = new ArrayBlockingQueue<>(blocksInFlight);
+    blockExecutor = Executors.newFixedThreadPool(blocksInFlight);
+    receiptExecutor = Executors.newFixedThreadPool(blocksInFlight * 2);
   }
 
   public void startParse() {
@@ -65,29 +88,50 @@ public class EthBlockParser {
     web3Subscriber.subscribeOnBlocks(input);
     new Thread(() -> {
       while (run.get()) {
-        Web3Model<EthBlock> ethBlock = null;
         try {
-          ethBlock = input.poll(1, TimeUnit.SECONDS);
+          Web3Model<EthBlock> ethBlock = input.poll(1, TimeUnit.SECONDS);
           if (ethBlock == null) {
             continue;
           }
-          count++;
-          if (count % 100 == 0) {
-            log.info(this.getClass().getSimpleName() + " handled " + count);
+          CompletableFuture<EthBlockEntity> future = CompletableFuture.supplyAsync(
+              () -> parse(ethBlock.getValue(), ethBlock.getNetwork()), blockExecutor);
+          while (run.get() && !parsed.offer(future, 1, TimeUnit.SECONDS)) {
+            log.trace("Blocks in flight limit reached");
           }
-          EthBlockEntity entity = parse(ethBlock.getValue(), ethBlock.getNetwork());
-          if (entity != null  && run.get()
-              && networkProperties.get(entity.network()).isParseBlocks()) {
-            lastTx = Instant.now();
-            var persistedBlock = ethBlockDbService.save(entity);
-            log.info("Persisted block {} by {}",
-                entity.getNumber(), Duration.between(lastTx, Instant.now()).toMillis());
-            if (persistedBlock != null) {
-              output.put(persistedBlock);
+        } catch (Exception e) {
+          log.error("Error block parser dispatch loop", e);
+        }
+      }
+    }).start();
+
+    int bulkBatchSize = appProperties.getBlockBulkBatchSize();
+    new Thread(() -> {
+      List<EthBlockEntity> pending = new ArrayList<>();
+      while (run.get()) {
+        try {
+          CompletableFuture<EthBlockEntity> future = parsed.poll(1, TimeUnit.SECONDS);
+          if (future != null) {
+            count++;
+            if (count % 100 == 0) {
+              log.info(this.getClass().getSimpleName() + " handled " + count);
             }
+            EthBlockEntity entity = future.join();
+            if (entity != null && run.get()
+                && networkProperties.get(entity.network()).isParseBlocks()) {
+              if (bulkBatchSize > 1) {
+                pending.add(entity);
+              } else {
+                persist(entity);
+              }
+            }
+          }
+          // a batch is written when it is full or when the parser caught up the flowable
+          if (!pending.isEmpty()
+              && (pending.size() >= bulkBatchSize || parsed.isEmpty())) {
+            persistBulk(pending);
           }
         } catch (Exception e) {
-          log.error("Error block parser loop " + ethBlock, e);
+          log.error("Error block parser loop", e);
           if (appProperties.isStopOnParseError()) {
             System.exit(-1);
           }
@@ -96,6 +140,55 @@ public class EthBlockParser {
     }).start();
   }
 
+  private void persist(EthBlockEntity entity) throws InterruptedException {
+    lastTx = Instant.now();
+    var persistedBlock = ethBlockDbService.save(entity);
+    log.info("Persisted block {} by {}",
+        entity.getNumber(), Duration.between(lastTx, Instant.now()).toMillis());
+    if (persistedBlock != null) {
+      output.put(persistedBlock);
+    }
+  }
+
+  /**
+   * If the batch fails, its blocks are saved one by one, a failed block is dropped as in the
+   * single block mode and the rest stay pending.
+   */
+  void persistBulk(List<EthBlockEntity> blocks) throws InterruptedException {
+    lastTx = Instant.now();
+    List<EthBlockEntity> persistedBlocks;
+    try {
+      persistedBlocks = ethBlockBulkWriter.write(blocks);
+    } catch (Exception e) {
+      log.error("Can't write {} blocks from {} in bulk, save one by one",
+          blocks.size(), blocks.get(0).getNumber(), e);
+      while (!blocks.isEmpty()) {
+        EthBlockEntity block = blocks.remove(0);
+        resetGeneratedIds(block);
+        persist(block);
+      }
+      return;
+    }
+    log.info("Persisted {} blocks from {} by {}", persistedBlocks.size(),
+        blocks.get(0).getNumber(), Duration.between(lastTx, Instant.now()).toMillis());
+    blocks.clear();
+    for (EthBlockEntity persistedBlock : persistedBlocks) {
+      output.put(persistedBlock);
+    }
+  }
+
+  /**
+   * Ids from sequences of a rolled back COPY, JPA must generate new ones.
+   */
+  private static void resetGeneratedIds(EthBlockEntity block) {
+    for (EthTxEntity tx : block.getTransactions()) {
+      tx.setId(null);
+      if (tx.getLogs() != null) {
+        tx.getLogs().forEach(l -> l.setId(null));
+      }
+    }
+  }
+
   public EthBlockEntity parse(EthBlock ethBlock, String network) {
     if (ethBlock == null) {
       return null;
@@ -116,7 +209,7 @@ public class EthBlockParser {
     }
     ethBlockEntity.setTransactions(ethTxEntities);
 
-    transactionReceipts(txMap, 0, network);
+    transactionReceipts(txMap, network);
 
     log.info("Block {} parsed by {}ms", ethBlockEntity.getNumber(),
         Duration.between(timer, Instant.now()).toMillis());
@@ -163,32 +256,40 @@ public class EthBlockParser {
     return ethBlockEntity;
   }
 
-  private void transactionReceipts(Map<String, EthTxEntity> txMap, int retryCount, String network) {
-    if (retryCount > 1000) {
-      throw new IllegalStateException("Can't fetch all receipts");
-    }
-    Stream<Optional<TransactionReceipt>> receipts =
-        web3Functions.fetchTransactionReceiptBatch(txMap.keySet(), network);
-    receipts
-        .filter(Optional::isPresent)
-        .map(Optional::get)
-        .forEach(receipt -> {
-          EthTxEntity ethTxEntity = txMap.get(receipt.getTransactionHash());
+  private void transactionReceipts(Map<String, EthTxEntity> txMap, String network) {
+    Map<String, EthTxEntity> missing = new LinkedHashMap<>(txMap);
+    int batchSize = Math.max(appProperties.getReceiptBatchSize(), 1);
+    for (int retry = 0; !missing.isEmpty(); retry++) {
+      if (retry > RECEIPT_RETRIES) {
+        throw new IllegalStateException("Can't fetch all receipts");
+      }
+      if (retry > 0) {
+        log.error("Got {} empty receipts, retry with timeout", missing.size());
+        try {
+          Thread.sleep(1000);
+        } catch (InterruptedException ignored) {
+        }
+      }
+      List<String> hashes = new ArrayList<>(missing.keySet());
+      List<CompletableFuture<List<TransactionReceipt>>> chunks = new ArrayList<>();
+      for (int i = 0; i < hashes.size(); i += batchSize) {
+        List<String> chunk = hashes.subList(i, Math.min(i + batchSize, hashes.size()));
+        chunks.add(CompletableFuture.supplyAsync(() ->
+            web3Functions.fetchTransactionReceiptBatch(chunk, network)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toList()), receiptExecutor));
+      }
+      for (CompletableFuture<List<TransactionReceipt>> chunk : chunks) {
+        for (TransactionReceipt receipt : chunk.join()) {
+          EthTxEntity ethTxEntity = missing.remove(receipt.getTransactionHash());
           if (ethTxEntity == null) {
             log.error("Can't map receipt to tx! ");
-            return;
+            continue;
           }
-
           fillTxFromReceipt(ethTxEntity, receipt);
-          txMap.remove(receipt.getTransactionHash());
-        });
-    if (!txMap.isEmpty()) {
-      log.error("Got {} empty receipts, retry with timeout", txMap.size());
-      try {
-        Thread.sleep(1000);
-      } catch (InterruptedException ignored) {
+        }
       }
-      transactionReceipts(txMap, retryCount + 1, network);
     }
   }
 
@@ -239,5 +340,7 @@ public class EthBlockParser {
   @PreDestroy
   public void stop() {
     run.set(false);
+    blockExecutor.shutdownNow();
+    receiptExecutor.shutdownNow();
   }
 }
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -16,10 +17,10 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.web3j.abi.FunctionReturnDecoder;
 import org.web3j.abi.TypeReference;
-import org.web3j.abi.datatypes.Event;
 import org.web3j.abi.datatypes.Function;
 import org.web3j.abi.datatypes.Type;
 import org.web3j.tuples.generated.Tuple2;
+import pro.belbix.ethparser.codegen.EventWrapper;
 import pro.belbix.ethparser.codegen.FunctionWrapper;
 import pro.belbix.ethparser.codegen.GeneratedContract;
 import pro.belbix.ethparser.codegen.SimpleContractGenerator;
@@ -78,6 +79,7 @@ public class ContractDetector {
         log.info("Start ContractDetector");
         subscriptionRouter.subscribeOnBlocks(input);
         new Thread(() -> {
+            simpleContractGenerator.warmUp();
             while (run.get()) {
                 EthBlockEntity block = null;
                 try {
@@ -235,9 +237,10 @@ public class ContractDetector {
 //                continue;
 //            }
             String logAddress = ethLog.getAddress().getAddress();
-            Event event = findEvent(
+            EventWrapper event = findEvent(
                 logAddress,
                 ethLog.getFirstTopic().getHash(),
+                indexedCount(ethLog),
                 block, network);
             if (event == null) {
                 log.warn("Not found event for hash: {} from tx: {} contract: {}",
@@ -254,9 +257,8 @@ public class ContractDetector {
             logEntity.setContractTx(contractTxEntity);
 
             LogHashEntity logHashEntity = new LogHashEntity();
-            String methodId = MethodDecoder.createMethodId(event.getName(), event.getParameters());
-            logHashEntity.setMethodId(methodId);
-            logHashEntity.setMethodName(event.getName());
+            logHashEntity.setMethodId(event.getMethodId());
+            logHashEntity.setMethodName(event.getEvent().getName());
             logHashEntity.setTopicHash(ethLog.getFirstTopic());
             logEntity.setTopic(logHashEntity);
 
@@ -265,15 +267,30 @@ public class ContractDetector {
         contractTxEntity.setLogs(logEntities);
     }
 
-    private Event findEvent(String address, String hash, int block, String network) {
+    /**
+     * The event from the contract ABI or, for logs of unknown contracts and events missed in
+     * the ABI, from any parsed ABI with the same topic and the same count of indexed values.
+     */
+    private EventWrapper findEvent(String address, String hash, int indexedCount, int block,
+        String network) {
         GeneratedContract contract = simpleContractGenerator.getContract(address, (long) block, null,network);
-        if (contract == null) {
-            return null;
+        if (contract != null) {
+            EventWrapper event = contract.getEventWrapper(hash);
+            if (event != null) {
+                return event;
+            }
+        }
+        return simpleContractGenerator.findEventByTopic(hash, indexedCount);
+    }
+
+    private static int indexedCount(EthLogEntity ethLog) {
+        if (ethLog.getTopics() == null || ethLog.getTopics().isBlank()) {
+            return 0;
         }
-        return contract.getEvent(hash);
+        return ethLog.getTopics().split(",").length;
     }
 
-    private String extractLogValues(EthLogEntity ethLog, Event event) {
+    private String extractLogValues(EthLogEntity ethLog, EventWrapper event) {
         if (ethLog.getTopics() == null || ethLog.getTopics().isBlank()) {
             return null;
         }
@@ -283,7 +300,8 @@ public class ContractDetector {
         List<Type> types = MethodDecoder.extractLogIndexedValues(
             topics,
             ethLog.getData(),
-            event.getParameters()
+            event.getIndexedParameters(),
+            event.getNonIndexedParameters()
         );
         try {
             return MethodDecoder.typesToString(types);
@@ -304,28 +322,33 @@ public class ContractDetector {
             return;
         }
 
-        Set<ContractStateEntity> states = new LinkedHashSet<>();
+        List<Function> functions = new ArrayList<>();
         for (FunctionWrapper functionW : contract.getFunctions()) {
             if (!functionW.isView() || !functionW.getInput().isEmpty()) {
                 continue;
             }
-            Function function = functionW.getFunction();
-            try {
-                String value = functionsUtils
-                    .callViewFunction(function, contractAddress, block, network)
-                    .orElse(null);
-                if (value == null) {
-                    log.info("Null value for {} {}", function.getName(), contractAddress);
-                    continue;
-                }
-                ContractStateEntity state = new ContractStateEntity();
-                state.setContractEvent(eventEntity);
-                state.setName(function.getName());
-                state.setValue(value);
-                states.add(state);
-            } catch (Exception e) {
-                log.error("Error call func {}", function.getName(), e);
+            functions.add(functionW.getFunction());
+        }
+
+        Map<String, String> values = Map.of();
+        try {
+            values = functionsUtils
+                .callViewFunctions(functions, contractAddress, block, network);
+        } catch (Exception e) {
+            log.error("Error call view functions for {}", contractAddress, e);
+        }
+        Set<ContractStateEntity> states = new LinkedHashSet<>();
+        for (Function function : functions) {
+            String value = values.get(function.getName());
+            if (value == null) {
+                log.info("Null value for {} {}", function.getName(), contractAddress);
+                continue;
             }
+            ContractStateEntity state = new ContractStateEntity();
+            state.setContractEvent(eventEntity);
+            state.setName(function.getName());
+            state.setValue(value);
+            states.add(state);
         }
         eventEntity.setStates(states);
     }
@@ -0,0 +1,91 @@
+package pro.belbix.ethparser.web3.prices;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prices of tokens by blocks, stored in sorted primitive arrays per token. The number of blocks per
+ * token is bounded, the oldest blocks are evicted first.
+ */
+class BlockPriceCache {
+
+  private final Map<String, TokenPrices> prices = new ConcurrentHashMap<>();
+  private final int maxBlocks;
+
+  BlockPriceCache(int maxBlocks) {
+    this.maxBlocks = Math.max(maxBlocks, 1);
+  }
+
+  /**
+   * @param freshBlocks how far the price block can be before the requested block
+   * @return the price of the nearest block not after the requested or NaN
+   */
+  double get(String address, long block, long freshBlocks) {
+    TokenPrices tokenPrices = prices.get(address.toLowerCase());
+    if (tokenPrices == null) {
+      return Double.NaN;
+    }
+    return tokenPrices.get(block, freshBlocks);
+  }
+
+  void put(String address, long block, double price) {
+    prices.computeIfAbsent(address.toLowerCase(), k -> new TokenPrices(maxBlocks))
+        .put(block, price);
+  }
+
+  private static class TokenPrices {
+
+    private final int maxBlocks;
+    private long[] blocks = new long[8];
+    private double[] values = new double[8];
+    private int size = 0;
+
+    private TokenPrices(int maxBlocks) {
+      this.maxBlocks = maxBlocks;
+    }
+
+    synchronized double get(long block, long freshBlocks) {
+      int i = Arrays.binarySearch(blocks, 0, size, block);
+      if (i < 0) {
+        // the floor element
+        i = -i - 2;
+      }
+      if (i < 0 || block - blocks[i] > freshBlocks) {
+        return Double.NaN;
+      }
+      return values[i];
+    }
+
+    synchronized void put(long block, double price) {
+      int i = Arrays.binarySearch(blocks, 0, size, block);
+      if (i >= 0) {
+        values[i] = price;
+        return;
+      }
+      i = -i - 1;
+      if (size == maxBlocks) {
+        if (i == 0) {
+          // older than everything we keep
+          return;
+        }
+        // evict the oldest block
+        System.arraycopy(blocks, 1, blocks, 0, i - 1);
+        System.arraycopy(values, 1, values, 0, i - 1);
+        blocks[i - 1] = block;
+        values[i - 1] = price;
+        return;
+      }
+      if (size == blocks.length) {
+        int capacity = Math.min(blocks.length * 2, maxBlocks);
+        blocks = Arrays.copyOf(blocks, capacity);
+        values = Arrays.copyOf(values, capacity);
+      }
+      System.arraycopy(blocks, i, blocks, i + 1, size - i);
+      System.arraycopy(values, i, values, i + 1, size - i);
+      blocks[i] = block;
+      values[i] = price;
+      size++;
+    }
+  }
+}
@@ -1,16 +1,13 @@
 package pro.belbix.ethparser.web3.prices;
 
-import static java.util.Objects.requireNonNullElse;
 import static pro.belbix.ethparser.web3.abi.FunctionsNames.TOTAL_SUPPLY;
 import static pro.belbix.ethparser.web3.contracts.ContractConstants.ZERO_ADDRESS;
 import static pro.belbix.ethparser.web3.contracts.ContractUtils.getBaseNetworkWrappedTokenAddress;
 
-import java.util.HashMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.HashSet;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.web3j.tuples.generated.Tuple2;
@@ -27,20 +24,26 @@ import pro.belbix.ethparser.web3.contracts.db.ContractDbService;
 public class PriceProvider {
 
   private static final boolean CHECK_BLOCK_CREATED = false;
-  private final Map<String, TreeMap<Long, Double>> lastPrices = new HashMap<>();
+  private final BlockPriceCache lastPrices;
 
   private final FunctionsUtils functionsUtils;
   private final AppProperties appProperties;
   private final PriceOracle priceOracle;
   private final ContractDbService contractDbService;
+  private final Counter cacheHits;
+  private final Counter cacheMisses;
 
   public PriceProvider(FunctionsUtils functionsUtils, PriceRepository priceRepository,
       AppProperties appProperties, PriceOracle priceOracle,
-      ContractDbService contractDbService) {
+      ContractDbService contractDbService,
+      MeterRegistry meterRegistry) {
     this.functionsUtils = functionsUtils;
     this.appProperties = appProperties;
     this.priceOracle = priceOracle;
     this.contractDbService = contractDbService;
+    this.lastPrices = new BlockPriceCache(appProperties.getPriceCacheBlocks());
+    this.cacheHits = meterRegistry.counter("ethparser.prices.cache", "result", "hit");
+    this.cacheMisses = meterRegistry.counter("ethparser.prices.cache", "result", "miss");
   }
 
   public double getLpTokenUsdPrice(String lpAddress, double amount, long block, String network) {
@@ -107,8 +110,7 @@ public class PriceProvider {
               () -> new IllegalStateException("Not found address for " + coinNameOrAddress));
     }
 //    String coinNameSimple = cu(network).getSimilarAssetForPrice(coinAddress);
-    updateUSDPrice(coinAddress, block, network);
-    return getLastPrice(coinAddress, block);
+    return updateUSDPrice(coinAddress, block, network);
   }
 
   public Tuple2<Double, Double> getPairPriceForLpHash(
@@ -130,27 +132,30 @@ public class PriceProvider {
     );
   }
 
-  private void updateUSDPrice(String address, long block, String network) {
+  private double updateUSDPrice(String address, long block, String network) {
     if (CHECK_BLOCK_CREATED
         && contractDbService.getContractByAddress(address, network)
         .filter(c -> c.getCreated() < block)
         .isEmpty()) {
-      savePrice(0.0, address, block);
-      return;
+      return 0.0;
     }
     if (ContractUtils.isStableCoin(address)) {
-      savePrice(1.0, address, block);
-      return;
+      return 1.0;
     }
 
-    if (hasFreshPrice(address, block)) {
-      return;
+    double cached = lastPrices.get(address, block, appProperties.getPriceFreshBlocks());
+    // zero is a failed calculation, try again
+    if (!Double.isNaN(cached) && cached != 0) {
+      cacheHits.increment();
+      return cached;
     }
+    cacheMisses.increment();
     double price = getPriceForCoinFromEth(address, block, network);
     if (Double.isInfinite(price) || Double.isNaN(price)) {
       price = 0.0;
     }
-    savePrice(price, address, block);
+    lastPrices.put(address, block, price);
+    return price;
   }
 
   private double getPriceForCoinFromEth(String address, Long block, String network) {
@@ -244,36 +249,6 @@ public class PriceProvider {
         .orElse(null);
   }
 
-  private boolean hasFreshPrice(String address, long block) {
-    TreeMap<Long, Double> lastPriceByBlock = lastPrices.get(address);
-    if (lastPriceByBlock == null) {
-      return false;
-    }
-
-    Entry<Long, Double> entry = lastPriceByBlock.floorEntry(block);
-    if (entry == null || Math.abs(entry.getKey() - block) >= 0) {
-      return false;
-    }
-    return entry.getValue() != null && entry.getValue() != 0;
-  }
-
-  private void savePrice(double price, String name, long block) {
-    TreeMap<Long, Double> lastPriceByBlock = lastPrices.computeIfAbsent(name, k -> new TreeMap<>());
-    lastPriceByBlock.put(block, price);
-  }
-
-  private double getLastPrice(String address, long block) {
-    TreeMap<Long, Double> lastPriceByBlocks = lastPrices.get(address);
-    if (lastPriceByBlocks == null) {
-      return 0.0;
-    }
-    Entry<Long, Double> entry = lastPriceByBlocks.floorEntry(requireNonNullElse(block, 0L));
-    if (entry != null && entry.getValue() != null) {
-      return entry.getValue();
-    }
-    return 0.0;
-  }
-
   public boolean isDivisionSequenceSecondDividesFirst(
       String uniPairAddress,
       String tokenAddress,
@@ -1,5 +1,8 @@
 package pro.belbix.ethparser.web3.uniswap.db;
 
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+import static pro.belbix.ethparser.web3.harvest.db.OwnerCountIndex.UNI_KEY;
+
 import java.math.BigInteger;
 import java.util.List;
 import lombok.extern.log4j.Log4j2;
@@ -9,6 +12,7 @@ import org.springframework.stereotype.Service;
 import pro.belbix.ethparser.dto.v0.UniswapDTO;
 import pro.belbix.ethparser.properties.AppProperties;
 import pro.belbix.ethparser.repositories.v0.UniswapRepository;
+import pro.belbix.ethparser.web3.harvest.db.OwnerCountIndex;
 
 @Service
 @Log4j2
@@ -16,10 +20,13 @@ public class UniswapDbService {
 
   private final UniswapRepository uniswapRepository;
   private final AppProperties appProperties;
+  private final OwnerCountIndex ownerCountIndex;
 
-  public UniswapDbService(UniswapRepository uniswapRepository, AppProperties appProperties) {
+  public UniswapDbService(UniswapRepository uniswapRepository, AppProperties appProperties,
+      OwnerCountIndex ownerCountIndex) {
     this.uniswapRepository = uniswapRepository;
     this.appProperties = appProperties;
+    this.ownerCountIndex = ownerCountIndex;
   }
 
   public boolean saveUniswapDto(UniswapDTO dto) {
@@ -27,18 +34,25 @@ public class UniswapDbService {
       log.warn("Duplicate tx " + dto.getId());
       return false;
     }
-    uniswapRepository.saveAndFlush(dto);
     fillOwnersCount(dto);
     uniswapRepository.saveAndFlush(dto);
+    applyOwnerBalance(dto);
+    ownerCountIndex.flush(ETH_NETWORK);
     return true;
   }
 
+  /**
+   * Uniswap transactions are parsed only for eth, their owners are counted with vault owners. The
+   * index is changed by {@link #applyOwnerBalance} after the transaction is saved.
+   */
   public void fillOwnersCount(UniswapDTO dto) {
-    Integer ownerCount = uniswapRepository.fetchOwnerCount(dto.getBlockDate());
-    if (ownerCount == null) {
-      ownerCount = 0;
-    }
-    dto.setOwnerCount(ownerCount);
+    dto.setOwnerCount(ownerCountIndex.ownerCountAfter(ETH_NETWORK, UNI_KEY, dto.getOwner(),
+        dto.getOwnerBalanceUsd(), dto.getBlockDate()));
+  }
+
+  public void applyOwnerBalance(UniswapDTO dto) {
+    ownerCountIndex.update(ETH_NETWORK, UNI_KEY, dto.getOwner(), dto.getOwnerBalanceUsd(),
+        dto.getBlockDate());
   }
 
   public BigInteger lastBlock() {
@@ -3,6 +3,8 @@ package pro.belbix.ethparser.web3.uniswap.parser;
 import static pro.belbix.ethparser.model.tx.UniswapTx.SWAP;
 import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
 
+import java.util.List;
+import java.util.Set;
 import lombok.extern.log4j.Log4j2;
 import org.springframework.stereotype.Service;
 import org.web3j.abi.datatypes.Address;
@@ -72,7 +74,22 @@ public class UniswapLpLogParser extends Web3Parser<UniswapDTO, Log> {
 
   @Override
   protected void subscribeToInput() {
-    web3Subscriber.subscribeOnLogs(input, this.getClass().getSimpleName());
+    inputCursor = web3Subscriber.subscribeOnLogs(this.getClass().getSimpleName(),
+        uniswapLpLogDecoder.topicsByNames(List.of("Mint", "Burn", "Swap")),
+        Set.of(ContractType.UNI_PAIR));
+  }
+
+  @Override
+  protected int workers() {
+    return appProperties.getParserWorkers();
+  }
+
+  /**
+   * Owner balances depend on previous actions in the same LP.
+   */
+  @Override
+  protected String partitionKey(Log ethLog) {
+    return ethLog.getAddress();
   }
 
   @Override
@@ -0,0 +1,29 @@
+package pro.belbix.ethparser.codegen;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.TypeReference;
+import org.web3j.abi.datatypes.Address;
+import org.web3j.abi.datatypes.Event;
+import org.web3j.abi.datatypes.generated.Uint256;
+
+public class EventWrapperTest {
+
+  @Test
+  public void shouldPrecomputeTransferHashes() {
+    EventWrapper event = new EventWrapper(new Event("Transfer", List.of(
+        new TypeReference<Address>(true) {
+        },
+        new TypeReference<Address>(true) {
+        },
+        new TypeReference<Uint256>() {
+        })));
+    assertEquals("0xddf252ad1be2c89b69c2b068fc378daa952ba7f163c4a11628f55a4df523b3ef",
+        event.getTopic());
+    assertEquals("0xddf252ad", event.getMethodId());
+    assertEquals(2, event.getIndexedParameters().size());
+    assertEquals(1, event.getNonIndexedParameters().size());
+  }
+}
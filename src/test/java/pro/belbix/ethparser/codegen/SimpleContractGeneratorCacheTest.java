@@ -0,0 +1,132 @@
+package pro.belbix.ethparser.codegen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import pro.belbix.ethparser.dto.v0.ContractSourceCodeDTO;
+import pro.belbix.ethparser.properties.AppProperties;
+import pro.belbix.ethparser.properties.NetworkProperties;
+import pro.belbix.ethparser.repositories.eth.ContractSourceCodeRepository;
+import pro.belbix.ethparser.web3.Web3Functions;
+import pro.belbix.ethparser.web3.abi.FunctionsUtils;
+import pro.belbix.ethparser.web3.contracts.db.ContractDbService;
+
+public class SimpleContractGeneratorCacheTest {
+
+  private static final String ABI = "[{\"anonymous\":false,\"inputs\":["
+      + "{\"indexed\":true,\"name\":\"from\",\"type\":\"address\"},"
+      + "{\"indexed\":true,\"name\":\"to\",\"type\":\"address\"},"
+      + "{\"indexed\":false,\"name\":\"value\",\"type\":\"uint256\"}],"
+      + "\"name\":\"Transfer\",\"type\":\"event\"},"
+      + "{\"constant\":true,\"inputs\":[{\"name\":\"owner\",\"type\":\"address\"}],"
+      + "\"name\":\"balanceOf\",\"outputs\":[{\"name\":\"\",\"type\":\"uint256\"}],"
+      + "\"stateMutability\":\"view\",\"type\":\"function\"}]";
+
+  private final ContractSourceCodeRepository repository = mock(ContractSourceCodeRepository.class);
+  private final AppProperties appProperties = mock(AppProperties.class);
+
+  @Test
+  public void generateOnceForConcurrentMisses() throws Exception {
+    String address = "0x1";
+    CountDownLatch release = new CountDownLatch(1);
+    when(repository.findByAddressNetwork(anyString(), anyString())).thenAnswer(i -> {
+      release.await(5, TimeUnit.SECONDS);
+      return source(i.getArgument(0));
+    });
+    SimpleContractGenerator generator = generator(10);
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<GeneratedContract>> results = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      results.add(executor.submit(
+          () -> generator.getContract(address, 100L, null, ETH_NETWORK)));
+    }
+    // let all threads miss the cache before the first generation is finished
+    Thread.sleep(200);
+    release.countDown();
+    GeneratedContract first = results.get(0).get(5, TimeUnit.SECONDS);
+    for (Future<GeneratedContract> result : results) {
+      assertSame(first, result.get(5, TimeUnit.SECONDS));
+    }
+    executor.shutdown();
+
+    assertNotNull(first);
+    assertEquals(1, first.getEvents().size());
+    verify(repository, times(1)).findByAddressNetwork(eq(address), anyString());
+  }
+
+  @Test
+  public void evictLeastRecentlyUsed() {
+    when(repository.findByAddressNetwork(anyString(), anyString()))
+        .thenAnswer(i -> source(i.getArgument(0)));
+    SimpleContractGenerator generator = generator(2);
+
+    generator.getContract("0x1", 100L, null, ETH_NETWORK);
+    generator.getContract("0x2", 100L, null, ETH_NETWORK);
+    // 0x1 is used again and 0x2 becomes the eldest
+    generator.getContract("0x1", 100L, null, ETH_NETWORK);
+    generator.getContract("0x3", 100L, null, ETH_NETWORK);
+    generator.getContract("0x1", 100L, null, ETH_NETWORK);
+    generator.getContract("0x2", 100L, null, ETH_NETWORK);
+
+    verify(repository, times(1)).findByAddressNetwork(eq("0x1"), anyString());
+    verify(repository, times(2)).findByAddressNetwork(eq("0x2"), anyString());
+    verify(repository, times(1)).findByAddressNetwork(eq("0x3"), anyString());
+  }
+
+  @Test
+  public void findEventByTopicWithIndexedCount() {
+    when(repository.findByAddressNetwork(anyString(), anyString()))
+        .thenAnswer(i -> source(i.getArgument(0)));
+    SimpleContractGenerator generator = generator(10);
+    String topic = new EventWrapper(
+        generator.getContract("0x1", 100L, null, ETH_NETWORK).getEvents().iterator().next())
+        .getTopic();
+
+    assertNotNull(generator.findEventByTopic(topic, 2));
+    // ERC721 Transfer has the same topic with the indexed token id
+    assertNull(generator.findEventByTopic(topic, 3));
+  }
+
+  private SimpleContractGenerator generator(int cacheSize) {
+    when(appProperties.getGeneratedContractsCacheSize()).thenReturn(cacheSize);
+    when(appProperties.getContractRefreshSeconds()).thenReturn(Integer.MAX_VALUE);
+    return new SimpleContractGenerator(
+        mock(FunctionsUtils.class),
+        mock(Web3Functions.class),
+        mock(NetworkProperties.class),
+        mock(ContractDbService.class),
+        repository,
+        appProperties
+    );
+  }
+
+  private static ContractSourceCodeDTO source(String address) {
+    ContractSourceCodeDTO dto = new ContractSourceCodeDTO();
+    dto.setAddress(address);
+    dto.setNetwork(ETH_NETWORK);
+    dto.setContractName("Token");
+    dto.setAbi(ABI);
+    dto.setProxy(false);
+    dto.setUpdatedAt(new Date());
+    return dto;
+  }
+}
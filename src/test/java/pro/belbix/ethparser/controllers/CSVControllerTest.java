@@ -1,11 +1,16 @@
 package pro.belbix.ethparser.controllers;
 
 import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static pro.belbix.ethparser.TestAddresses.V_USDC;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -52,4 +57,17 @@ public class CSVControllerTest {
         .andExpect(status().isOk())
         .andExpect(content().string(containsString(CSVController.collectFields(TvlHistory.class)[0])));
   }
+
+  @Test
+  public void harvestHistoryDataForVaultGzip() throws Exception {
+    byte[] body = this.mockMvc.perform(get("/csv/transactions/history/harvest/" + V_USDC)
+        .param("gzip", "true"))
+        .andExpect(status().isOk())
+        .andExpect(header().string("Content-Encoding", "gzip"))
+        .andReturn().getResponse().getContentAsByteArray();
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+      String csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+      assertTrue(csv.contains(CSVController.collectFields(HarvestDTO.class)[0]));
+    }
+  }
 }
@@ -0,0 +1,54 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+public class BlockStepControllerTest {
+
+  private BlockStepController create() {
+    return new BlockStepController(
+        "log", 100, 10, 1000, 5000, 10_000, ETH_NETWORK, new SimpleMeterRegistry());
+  }
+
+  @Test
+  public void growOnFastFullWindows() {
+    BlockStepController controller = create();
+    controller.onSuccess(100, 10, 100);
+    assertEquals(150, controller.getStep());
+    for (int i = 0; i < 20; i++) {
+      controller.onSuccess(controller.getStep(), 10, 100);
+    }
+    assertEquals(1000, controller.getStep());
+  }
+
+  @Test
+  public void notGrowOnHeadWindows() {
+    BlockStepController controller = create();
+    controller.onSuccess(1, 0, 100);
+    assertEquals(100, controller.getStep());
+  }
+
+  @Test
+  public void shrinkOnSlowOrBigWindows() {
+    BlockStepController controller = create();
+    controller.onSuccess(100, 10, 20_000);
+    assertEquals(50, controller.getStep());
+    controller.onSuccess(50, 9000, 100);
+    assertEquals(25, controller.getStep());
+    controller.onFailure();
+    controller.onFailure();
+    assertEquals(10, controller.getStep());
+  }
+
+  @Test
+  public void fixedStep() {
+    BlockStepController controller =
+        BlockStepController.fixed("log", 100, ETH_NETWORK, new SimpleMeterRegistry());
+    controller.onSuccess(100, 0, 1);
+    controller.onFailure();
+    assertEquals(100, controller.getStep());
+  }
+}
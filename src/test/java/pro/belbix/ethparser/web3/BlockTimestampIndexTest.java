@@ -0,0 +1,29 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class BlockTimestampIndexTest {
+
+  @Test
+  public void shouldReturnZeroForUnknownBlocks() {
+    BlockTimestampIndex index = new BlockTimestampIndex();
+    index.put("eth", 11_000_000, 1_600_000_000);
+    assertEquals(0, index.get("eth", 11_000_001));
+    assertEquals(0, index.get("bsc", 11_000_000));
+    assertEquals(1_600_000_000, index.get("eth", 11_000_000));
+  }
+
+  @Test
+  public void shouldKeepBlocksAcrossChunks() {
+    BlockTimestampIndex index = new BlockTimestampIndex();
+    for (long block = 1000; block < 5000; block += 7) {
+      index.put("eth", block, block * 13);
+    }
+    for (long block = 1000; block < 5000; block += 7) {
+      assertEquals(block * 13, index.get("eth", block));
+    }
+    assertEquals(0, index.get("eth", 1001));
+  }
+}
@@ -0,0 +1,69 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.web3j.protocol.core.DefaultBlockParameterName.LATEST;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Function;
+import org.web3j.abi.datatypes.Type;
+
+@SuppressWarnings("rawtypes")
+public class EthCallBatcherTest {
+
+  @Test
+  public void coalesceQueuedCalls() throws Exception {
+    CountDownLatch firstBatchStarted = new CountDownLatch(1);
+    CountDownLatch releaseFirstBatch = new CountDownLatch(1);
+    List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    EthCallBatcher batcher = new EthCallBatcher(1, 50, 100, requests -> {
+      batchSizes.add(requests.size());
+      firstBatchStarted.countDown();
+      try {
+        releaseFirstBatch.await();
+      } catch (InterruptedException ignored) {
+      }
+      requests.forEach(r -> r.getFuture().complete(List.of()));
+    });
+
+    CompletableFuture<List<Type>> first = batcher.submit(function(), "0x1", LATEST, ETH_NETWORK);
+    firstBatchStarted.await();
+    List<CompletableFuture<List<Type>>> others = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      others.add(batcher.submit(function(), "0x1", LATEST, ETH_NETWORK));
+    }
+    releaseFirstBatch.countDown();
+
+    first.get();
+    for (CompletableFuture<List<Type>> future : others) {
+      future.get();
+    }
+    batcher.stop();
+    assertEquals(List.of(1, 10), batchSizes);
+  }
+
+  @Test
+  public void failNotSentCalls() throws Exception {
+    EthCallBatcher batcher = new EthCallBatcher(1, 50, 100, requests -> {
+    });
+    try {
+      batcher.submit(function(), "0x1", LATEST, ETH_NETWORK).get();
+      fail("Not sent call should fail");
+    } catch (ExecutionException e) {
+      assertTrue(EthCallBatcher.isNotSent(e));
+    }
+    batcher.stop();
+  }
+
+  private static Function function() {
+    return new Function("decimals", List.of(), List.of());
+  }
+}
@@ -0,0 +1,75 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class EthCallCacheTest {
+
+  private static final String DECIMALS = "0x313ce567";
+
+  @Test
+  public void evictEldestOverSizeLimit() {
+    EthCallCache cache = new EthCallCache(1000, "", 0, new SimpleMeterRegistry());
+    for (int i = 0; i < 100; i++) {
+      cache.put(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, i), "0x12");
+    }
+    assertTrue(cache.getBytes() <= 1000);
+    assertNull(cache.get(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, 0)));
+    assertEquals("0x12", cache.get(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, 99)));
+  }
+
+  @Test
+  public void reuseResultsFromDisk(@TempDir Path dir) {
+    EthCallCache cache = new EthCallCache(1000, dir.toString(), 1 << 20, new SimpleMeterRegistry());
+    for (int i = 0; i < 100; i++) {
+      cache.put(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, i), "0x" + i);
+    }
+    cache.close();
+
+    EthCallCache reopened = new EthCallCache(1000, dir.toString(), 1 << 20, new SimpleMeterRegistry());
+    for (int i = 0; i < 100; i++) {
+      assertEquals("0x" + i, reopened.get(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, i)));
+    }
+    assertNull(reopened.get(EthCallCache.key(ETH_NETWORK, "0x2", DECIMALS, 1)));
+    reopened.close();
+  }
+
+  @Test
+  public void evictOldestSegment(@TempDir Path dir) {
+    // about 15 records in a segment, 2 segments on disk
+    EthCallCache cache = new EthCallCache(100, dir.toString(), 1000, 500,
+        new SimpleMeterRegistry());
+    for (int i = 0; i < 100; i++) {
+      cache.put(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, i), "0x" + i);
+    }
+    cache.close();
+
+    EthCallCache reopened = new EthCallCache(100, dir.toString(), 1000, 500,
+        new SimpleMeterRegistry());
+    assertNull(reopened.get(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, 0)));
+    assertNull(reopened.get(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, 50)));
+    assertEquals("0x99", reopened.get(EthCallCache.key(ETH_NETWORK, "0x1", DECIMALS, 99)));
+    reopened.close();
+  }
+
+  @Test
+  public void indexGrowsAndDropsSegments() {
+    EthCallCache.DiskIndex index = new EthCallCache.DiskIndex(16);
+    for (long i = 1; i <= 1000; i++) {
+      index.put(i * 31, (i % 2 << 40) | i);
+    }
+    assertEquals(1000, index.size());
+    assertEquals((1L << 40) | 7, index.get(7 * 31));
+    index.removeSegment(1);
+    assertEquals(500, index.size());
+    assertEquals(-1, index.get(7 * 31));
+    assertEquals(8, index.get(8 * 31));
+  }
+}
@@ -0,0 +1,40 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.core.methods.response.Log;
+
+public class LogRouterTest {
+
+  private static final String TOPIC_1 = "0x01";
+  private static final String TOPIC_2 = "0x02";
+
+  @Test
+  public void routeByTopic() {
+    LogRouter router = new LogRouter();
+    router.addConsumer(0, List.of(TOPIC_1), null);
+    router.addConsumer(1, null, null);
+
+    assertEquals(3L, router.route(log(TOPIC_1), ETH_NETWORK));
+    assertEquals(2L, router.route(log(TOPIC_2), ETH_NETWORK));
+  }
+
+  @Test
+  public void routeAllLogsWithOverflowConsumers() {
+    LogRouter router = new LogRouter();
+    router.addConsumer(0, List.of(TOPIC_1), null);
+    router.addConsumer(Long.SIZE, List.of(TOPIC_1), null);
+
+    assertEquals(RingBuffer.ALL_CONSUMERS, router.route(log(TOPIC_2), ETH_NETWORK));
+  }
+
+  private static Log log(String topic) {
+    Log ethLog = new Log();
+    ethLog.setTopics(List.of(topic));
+    ethLog.setAddress("0x1");
+    return ethLog;
+  }
+}
@@ -0,0 +1,132 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class RingBufferTest {
+
+  @Test
+  public void everyConsumerReadsAll() throws Exception {
+    RingBuffer<Integer> bus =
+        new RingBuffer<>("test", 4, RingWaitStrategy.BLOCKING, new SimpleMeterRegistry());
+    RingBuffer.Cursor<Integer> fast = bus.addConsumer("fast");
+    RingBuffer.Cursor<Integer> slow = bus.addConsumer("slow");
+    for (int i = 0; i < 3; i++) {
+      bus.publish(i);
+    }
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Integer.valueOf(i), fast.poll(1, TimeUnit.SECONDS));
+    }
+    assertNull(fast.poll(10, TimeUnit.MILLISECONDS));
+    assertEquals(2, fast.getProcessed());
+    assertEquals(3, slow.getLag());
+
+    assertEquals(Integer.valueOf(0), slow.poll(1, TimeUnit.SECONDS));
+    // the taken entry is processed only after the next poll
+    assertEquals(-1, slow.getProcessed());
+    assertEquals(Integer.valueOf(1), slow.poll(1, TimeUnit.SECONDS));
+    assertEquals(0, slow.getProcessed());
+  }
+
+  @Test
+  public void producerWaitsForSlowestConsumer() throws Exception {
+    RingBuffer<Integer> bus =
+        new RingBuffer<>("test", 2, RingWaitStrategy.SLEEPING, new SimpleMeterRegistry());
+    RingBuffer.Cursor<Integer> cursor = bus.addConsumer("slow");
+    bus.publish(0);
+    bus.publish(1);
+    Thread producer = new Thread(() -> {
+      try {
+        bus.publish(2);
+      } catch (InterruptedException ignored) {
+      }
+    });
+    producer.start();
+    producer.join(100);
+    assertEquals(1, bus.getPublished());
+    assertEquals(Integer.valueOf(0), cursor.poll(1, TimeUnit.SECONDS));
+    producer.join(1000);
+    assertEquals(2, bus.getPublished());
+    assertEquals(Integer.valueOf(1), cursor.poll(1, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(2), cursor.poll(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void consumersSkipNotAddressedEntries() throws Exception {
+    RingBuffer<Integer> bus =
+        new RingBuffer<>("test", 4, RingWaitStrategy.BLOCKING, new SimpleMeterRegistry());
+    RingBuffer.Cursor<Integer> first = bus.addConsumer("first");
+    RingBuffer.Cursor<Integer> second = bus.addConsumer("second");
+    bus.publish(0, 1L << first.getIndex());
+    bus.publish(1, 1L << second.getIndex());
+    bus.publish(2);
+    assertEquals(Integer.valueOf(0), first.poll(1, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(2), first.poll(1, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(1), second.poll(1, TimeUnit.SECONDS));
+    assertEquals(Integer.valueOf(2), second.poll(1, TimeUnit.SECONDS));
+    assertNull(second.poll(10, TimeUnit.MILLISECONDS));
+    assertEquals(2, second.getProcessed());
+  }
+
+  @Test
+  public void detachedEntriesAreNotProcessedUntilRelease() throws Exception {
+    RingBuffer<Integer> bus =
+        new RingBuffer<>("test", 4, RingWaitStrategy.BLOCKING, new SimpleMeterRegistry());
+    RingBuffer.Cursor<Integer> cursor = bus.addConsumer("workers");
+    for (int i = 0; i < 3; i++) {
+      bus.publish(i);
+    }
+    List<Long> sequences = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      assertEquals(Integer.valueOf(i), cursor.poll(1, TimeUnit.SECONDS));
+      sequences.add(cursor.detach());
+    }
+    assertEquals(List.of(0L, 1L, 2L), sequences);
+    assertEquals(-1, cursor.getProcessed());
+    // out of order release
+    cursor.release(1);
+    assertEquals(-1, cursor.getProcessed());
+    cursor.release(0);
+    assertEquals(1, cursor.getProcessed());
+    cursor.release(2);
+    assertEquals(2, cursor.getProcessed());
+    assertEquals(0, cursor.getLag());
+  }
+
+  @Test
+  public void groupReadsAllBuses() throws Exception {
+    RingBuffer<Integer> eth =
+        new RingBuffer<>("eth", 4, RingWaitStrategy.BLOCKING, new SimpleMeterRegistry());
+    RingBuffer<Integer> bsc =
+        new RingBuffer<>("bsc", 4, RingWaitStrategy.SLEEPING, new SimpleMeterRegistry());
+    RingBuffer.CursorGroup<Integer> group = new RingBuffer.CursorGroup<>(
+        List.of(eth.addConsumer("consumer"), bsc.addConsumer("consumer")));
+    eth.publish(1);
+    bsc.publish(2);
+    eth.publish(3);
+    Set<Integer> values = new HashSet<>();
+    for (int i = 0; i < 3; i++) {
+      values.add(group.poll(1, TimeUnit.SECONDS));
+    }
+    assertEquals(Set.of(1, 2, 3), values);
+    assertNull(group.poll(50, TimeUnit.MILLISECONDS));
+    assertEquals(1, eth.getCursors().get(0).getProcessed());
+    assertEquals(0, bsc.getCursors().get(0).getProcessed());
+
+    bsc.publish(4);
+    assertEquals(Integer.valueOf(4), group.poll(1, TimeUnit.SECONDS));
+    Runnable release = group.detach();
+    assertNull(group.poll(50, TimeUnit.MILLISECONDS));
+    assertEquals(0, bsc.getCursors().get(0).getProcessed());
+    release.run();
+    assertEquals(1, bsc.getCursors().get(0).getProcessed());
+  }
+}
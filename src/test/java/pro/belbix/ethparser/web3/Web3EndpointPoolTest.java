@@ -0,0 +1,103 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+public class Web3EndpointPoolTest {
+
+  private final Web3Endpoint first = new Web3Endpoint("https://first.node/key", null);
+  private final Web3Endpoint second = new Web3Endpoint("https://second.node/key", null);
+  private final Web3EndpointPool pool =
+      new Web3EndpointPool(List.of(first, second), ETH_NETWORK, new SimpleMeterRegistry());
+
+  @Test
+  public void routeToLeastLoaded() {
+    Web3Endpoint busy = pool.acquire();
+    Web3Endpoint free = pool.acquire();
+    assertTrue(busy != free);
+    busy.onSuccess(10);
+    free.onSuccess(1000);
+    assertEquals(busy, pool.acquire());
+  }
+
+  @Test
+  public void ejectFailedEndpoint() {
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < Web3Endpoint.FAILURES_TO_OPEN; i++) {
+      assertTrue(first.tryAcquire(now));
+      first.onFailure(10, now);
+    }
+    assertFalse(first.isHealthy());
+    for (int i = 0; i < 10; i++) {
+      Web3Endpoint endpoint = pool.acquire();
+      assertEquals(second, endpoint);
+      endpoint.onSuccess(10);
+    }
+  }
+
+  @Test
+  public void reinstateAfterTrial() {
+    long now = System.currentTimeMillis();
+    // ejected long time ago, the cooldown is expired
+    long past = now - Web3Endpoint.MAX_COOLDOWN_MS;
+    for (int i = 0; i < Web3Endpoint.FAILURES_TO_OPEN; i++) {
+      assertTrue(first.tryAcquire(past));
+      first.onFailure(10, past);
+    }
+    assertFalse(first.isHealthy());
+    assertTrue(first.isAvailable(now));
+    assertTrue(first.tryAcquire(now));
+    assertFalse("only one trial call", first.isAvailable(now));
+    assertFalse("only one trial call", first.tryAcquire(now));
+    first.onSuccess(10);
+    assertTrue(first.isHealthy());
+  }
+
+  @Test
+  public void admitOneTrialForConcurrentCalls() throws Exception {
+    long past = System.currentTimeMillis() - Web3Endpoint.MAX_COOLDOWN_MS;
+    for (int i = 0; i < Web3Endpoint.FAILURES_TO_OPEN; i++) {
+      assertTrue(first.tryAcquire(past));
+      first.onFailure(10, past);
+    }
+    // make the second endpoint the worst choice, the pool prefers the half-open one
+    second.acquire();
+    second.onSuccess(100_000);
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<Web3Endpoint>> results = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      results.add(executor.submit(() -> {
+        start.await();
+        return pool.acquire();
+      }));
+    }
+    start.countDown();
+    int trials = 0;
+    for (Future<Web3Endpoint> result : results) {
+      if (result.get() == first) {
+        trials++;
+      }
+    }
+    executor.shutdown();
+    assertEquals(1, trials);
+    assertEquals(1, first.getOutstanding());
+  }
+
+  @Test
+  public void hideUrlKeys() {
+    assertEquals("https://first.node", first.safeUrl());
+  }
+}
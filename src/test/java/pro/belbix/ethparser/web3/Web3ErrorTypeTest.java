@@ -0,0 +1,53 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.web3j.protocol.exceptions.ClientConnectionException;
+
+public class Web3ErrorTypeTest {
+
+  @Test
+  public void classify() {
+    assertEquals(Web3ErrorType.EMPTY_RESPONSE, Web3ErrorType.classify(null));
+    assertEquals(Web3ErrorType.RATE_LIMIT, Web3ErrorType.classify(
+        new ClientConnectionException("Invalid response received: 429; Too Many Requests")));
+    assertEquals(Web3ErrorType.INVALID_PARAMS, Web3ErrorType.classify(
+        new ClientConnectionException("Invalid method parameter(s).")));
+    assertEquals(Web3ErrorType.REVERTED, Web3ErrorType.classify(
+        new IllegalStateException("Not retryable response: execution reverted")));
+    assertEquals(Web3ErrorType.NODE_OUT_OF_SYNC, Web3ErrorType.classify(
+        new IllegalStateException("header not found")));
+    assertEquals(Web3ErrorType.TIMEOUT, Web3ErrorType.classify(
+        new SocketTimeoutException("Read timed out")));
+    assertEquals(Web3ErrorType.CONNECTION, Web3ErrorType.classify(
+        new ConnectException("Connection refused")));
+    assertEquals(Web3ErrorType.UNKNOWN, Web3ErrorType.classify(
+        new NullPointerException()));
+  }
+
+  @Test
+  public void retryPolicy() {
+    assertFalse(Web3ErrorType.REVERTED.isRetryable());
+    assertFalse(Web3ErrorType.INVALID_PARAMS.isRetryable());
+    assertTrue(Web3ErrorType.RATE_LIMIT.isRetryable());
+    assertTrue(Web3ErrorType.RATE_LIMIT.isEndpointFailure());
+    assertFalse(Web3ErrorType.EMPTY_RESPONSE.isEndpointFailure());
+  }
+
+  @Test
+  public void cappedBackoffWithJitter() {
+    for (int i = 0; i < 100; i++) {
+      long first = Web3ErrorType.RATE_LIMIT.delay(1);
+      assertTrue(first >= 1000 && first <= 2000);
+      long third = Web3ErrorType.RATE_LIMIT.delay(3);
+      assertTrue(third >= 4000 && third <= 8000);
+      long capped = Web3ErrorType.RATE_LIMIT.delay(1000);
+      assertTrue(capped >= 30_000 && capped <= 60_000);
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import pro.belbix.ethparser.dto.v0.HarvestDTO;
+import pro.belbix.ethparser.model.Web3Model;
+import pro.belbix.ethparser.properties.AppProperties;
+
+public class Web3ParserTest {
+
+  @Test
+  public void partitionedWorkersKeepOrderOfKey() throws Exception {
+    TestParser parser = new TestParser();
+    parser.startParse();
+    int count = 200;
+    for (int i = 0; i < count; i++) {
+      parser.input.put(new Web3Model<>("key" + (i % 7) + ":" + i, ETH_NETWORK));
+    }
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (parser.saved.get() < count && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(count, parser.saved.get());
+    assertEquals(7, parser.handled.size());
+    for (Map.Entry<String, List<Integer>> entry : parser.handled.entrySet()) {
+      List<Integer> sorted = new ArrayList<>(entry.getValue());
+      sorted.sort(Integer::compareTo);
+      assertEquals(entry.getKey(), sorted, entry.getValue());
+      assertEquals(entry.getKey(), 1, parser.threads.get(entry.getKey()).size());
+    }
+    Set<String> allThreads = ConcurrentHashMap.newKeySet();
+    parser.threads.values().forEach(allThreads::addAll);
+    assertTrue(allThreads.size() > 1);
+  }
+
+  private static class TestParser extends Web3Parser<HarvestDTO, String> {
+
+    private final Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> threads = new ConcurrentHashMap<>();
+    private final AtomicInteger saved = new AtomicInteger();
+
+    private TestParser() {
+      super(new ParserInfo(), new AppProperties(), null);
+    }
+
+    @Override
+    protected void subscribeToInput() {
+    }
+
+    @Override
+    protected int workers() {
+      return 4;
+    }
+
+    @Override
+    protected String partitionKey(String value) {
+      return value.split(":")[0];
+    }
+
+    @Override
+    public HarvestDTO parse(String value, String network) {
+      HarvestDTO dto = new HarvestDTO();
+      dto.setId(value);
+      return dto;
+    }
+
+    @Override
+    protected boolean save(HarvestDTO dto) {
+      String[] parts = dto.getId().split(":");
+      handled.computeIfAbsent(parts[0], k -> new CopyOnWriteArrayList<>())
+          .add(Integer.parseInt(parts[1]));
+      threads.computeIfAbsent(parts[0], k -> ConcurrentHashMap.newKeySet())
+          .add(Thread.currentThread().getName());
+      saved.incrementAndGet();
+      // nothing goes to the output
+      return false;
+    }
+
+    @Override
+    protected boolean isActiveForNetwork(String network) {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package pro.belbix.ethparser.web3;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.math.BigInteger;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import pro.belbix.ethparser.repositories.TransactionLastRepository;
+
+public class Web3TransactionFlowableTest {
+
+  @Test
+  public void shrinkStepOnFailure() {
+    Web3Functions web3Functions = mock(Web3Functions.class);
+    BlockStepController blockStep = new BlockStepController(
+        "transaction", 100, 10, 1000, 5000, 10_000, ETH_NETWORK, new SimpleMeterRegistry());
+    Web3TransactionFlowable flowable = new Web3TransactionFlowable(
+        1, web3Functions, List.of(), ETH_NETWORK, blockStep,
+        mock(TransactionLastRepository.class));
+    AtomicInteger calls = new AtomicInteger();
+    when(web3Functions.fetchCurrentBlock(anyString())).thenAnswer(i -> {
+      if (calls.incrementAndGet() == 2) {
+        flowable.stop();
+      }
+      return BigInteger.valueOf(10_000);
+    });
+    when(web3Functions.findBlocksByBlockBatch(anyInt(), anyInt(), anyString()))
+        .thenThrow(new IllegalStateException("Timeout"));
+
+    flowable.run();
+
+    assertEquals(25, blockStep.getStep());
+  }
+}
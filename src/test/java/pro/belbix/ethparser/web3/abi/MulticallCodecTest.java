@@ -0,0 +1,47 @@
+package pro.belbix.ethparser.web3.abi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.web3j.abi.datatypes.Function;
+
+public class MulticallCodecTest {
+
+  @Test
+  public void encodeTryAggregate() {
+    String encoded = MulticallCodec.encodeTryAggregate(
+        List.of(new Function("decimals", List.of(), List.of())),
+        "0xa0b86991c6218b36c1d19d4a2e9eb0ce3606eb48");
+    assertEquals("0xbce38bd7"
+            + word("0") // requireSuccess
+            + word("40") // calls offset
+            + word("1") // calls size
+            + word("20") // first call offset
+            + word("a0b86991c6218b36c1d19d4a2e9eb0ce3606eb48")
+            + word("40") // call data offset
+            + word("4") // call data length
+            + "313ce567" + "0".repeat(56),
+        encoded);
+  }
+
+  @Test
+  public void decodeTryAggregate() {
+    String response = "0x"
+        + word("20") // array offset
+        + word("2") // array size
+        + word("40") // first result offset
+        + word("c0") // second result offset
+        + word("1") + word("40") + word("20") + word("12") // success, 18
+        + word("0") + word("40") + word("0"); // fail, empty data
+    List<String> results = MulticallCodec.decodeTryAggregate(response);
+    assertEquals(2, results.size());
+    assertEquals("0x" + word("12"), results.get(0));
+    assertNull(results.get(1));
+  }
+
+  private static String word(String hex) {
+    return "0".repeat(64 - hex.length()) + hex;
+  }
+}
@@ -0,0 +1,98 @@
+package pro.belbix.ethparser.web3.contracts.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ContractRegistryTest {
+
+  @Test
+  public void readThroughAndInvalidate() {
+    AtomicInteger reads = new AtomicInteger();
+    ContractRegistry registry = new ContractRegistry(Long.MAX_VALUE,
+        r -> r.put("address", "eth_0x1", "loaded"), v -> List.of(), new SimpleMeterRegistry());
+
+    assertEquals("loaded", registry.get("address", "eth_0x1", () -> {
+      reads.incrementAndGet();
+      return "read";
+    }).orElseThrow());
+    assertEquals(0, reads.get());
+
+    // absent values are cached too
+    assertFalse(registry.get("address", "eth_0x2", () -> {
+      reads.incrementAndGet();
+      return null;
+    }).isPresent());
+    assertFalse(registry.get("address", "eth_0x2", () -> {
+      reads.incrementAndGet();
+      return null;
+    }).isPresent());
+    assertEquals(1, reads.get());
+
+    registry.invalidate("eth_0x2");
+    assertEquals("created", registry.get("address", "eth_0x2", () -> {
+      reads.incrementAndGet();
+      return "created";
+    }).orElseThrow());
+    assertEquals(2, reads.get());
+  }
+
+  @Test
+  public void invalidateReferencingValues() {
+    ContractRegistry registry = new ContractRegistry(Long.MAX_VALUE, r -> {
+      r.put("address", "eth_0x1", "underlying");
+      r.put("vault", "eth_0x2", "vault of eth_0x1");
+    }, v -> v.toString().startsWith("vault of ")
+        ? List.of(v.toString().substring(9)) : List.of(), new SimpleMeterRegistry());
+    AtomicInteger reads = new AtomicInteger();
+    assertEquals("vault of eth_0x1", registry.get("vault", "eth_0x2", () -> {
+      reads.incrementAndGet();
+      return "read";
+    }).orElseThrow());
+
+    registry.invalidate("eth_0x1");
+    assertEquals("read", registry.get("vault", "eth_0x2", () -> {
+      reads.incrementAndGet();
+      return "read";
+    }).orElseThrow());
+    assertEquals(1, reads.get());
+  }
+
+  @Test
+  public void serveOldIndexesDuringRefresh() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger loads = new AtomicInteger();
+    ContractRegistry registry = new ContractRegistry(200, r -> {
+      if (loads.incrementAndGet() > 1) {
+        loading.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException ignored) {
+        }
+      }
+      r.put("address", "eth_0x1", "load " + loads.get());
+      r.put("address", "eth_0x2", "load " + loads.get());
+    }, v -> List.of(), new SimpleMeterRegistry());
+    assertEquals("load 1", registry.get("address", "eth_0x1", () -> "read").orElseThrow());
+    Thread.sleep(250);
+
+    Thread refresher = new Thread(() -> registry.get("address", "eth_0x1", () -> "read"));
+    refresher.start();
+    loading.await();
+    // lookups don't wait for the refresh and don't go to the database
+    assertEquals("load 1", registry.get("address", "eth_0x1", () -> "read").orElseThrow());
+    // a write during the load must not be lost after the swap
+    registry.invalidate("eth_0x2");
+    release.countDown();
+    refresher.join();
+
+    assertEquals("load 2", registry.get("address", "eth_0x1", () -> "read").orElseThrow());
+    assertEquals("read", registry.get("address", "eth_0x2", () -> "read").orElseThrow());
+  }
+}
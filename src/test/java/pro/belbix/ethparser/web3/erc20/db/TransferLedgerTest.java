@@ -0,0 +1,89 @@
+package pro.belbix.ethparser.web3.erc20.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static pro.belbix.ethparser.web3.erc20.TransferType.COMMON;
+import static pro.belbix.ethparser.web3.erc20.TransferType.LP_SELL;
+import static pro.belbix.ethparser.web3.erc20.TransferType.PS_EXIT;
+import static pro.belbix.ethparser.web3.erc20.TransferType.PS_STAKE;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import pro.belbix.ethparser.dto.v0.TransferDTO;
+import pro.belbix.ethparser.repositories.v0.TransferHolderRepository;
+import pro.belbix.ethparser.repositories.v0.TransferRepository;
+
+public class TransferLedgerTest {
+
+    private static final String NETWORK = "eth";
+    private static final String MINTER = "0x0000000000000000000000000000000000000001";
+    private static final String USER = "0x0000000000000000000000000000000000000002";
+    private static final String PS = "0x0000000000000000000000000000000000000003";
+    private static final String POOL = "0x0000000000000000000000000000000000000004";
+
+    private final TransferLedger ledger = new TransferLedger(
+        Mockito.mock(TransferHolderRepository.class),
+        Mockito.mock(TransferRepository.class));
+
+    @Test
+    public void shouldKeepBalancesAndProfits() {
+        assertTrue(ledger.apply(createDto(1, COMMON.name(), 100, 10, MINTER, USER)));
+        assertTrue(ledger.apply(createDto(2, PS_STAKE.name(), 50, 10, USER, PS)));
+
+        TransferDTO psExit = createDto(3, PS_EXIT.name(), 60, 10, PS, USER);
+        assertTrue(ledger.apply(psExit));
+        assertEquals(10.0, psExit.getProfit(), 0.000001);
+        assertEquals(100.0, psExit.getProfitUsd(), 0.000001);
+
+        TransferDTO sell = createDto(4, LP_SELL.name(), 50, 20, USER, POOL);
+        assertTrue(ledger.apply(sell));
+        assertEquals(25.0, sell.getProfit(), 0.000001);
+        assertEquals(500.0, sell.getProfitUsd(), 0.000001);
+
+        assertEquals(60.0, ledger.balance(NETWORK, USER), 0.000001);
+        assertEquals(-10.0, ledger.balance(NETWORK, PS), 0.000001);
+        assertEquals(50.0, ledger.balance(NETWORK, POOL), 0.000001);
+        assertEquals(-100.0, ledger.balance(NETWORK, MINTER), 0.000001);
+    }
+
+    @Test
+    public void shouldCountOlderTransferAsNotActual() {
+        assertTrue(ledger.apply(createDto(10, COMMON.name(), 100, 10, MINTER, USER)));
+        assertFalse(ledger.apply(createDto(5, COMMON.name(), 30, 10, USER, POOL)));
+        assertEquals(70.0, ledger.balance(NETWORK, USER), 0.000001);
+    }
+
+    @Test
+    public void shouldApplyPreparedChangeOnlyOnCommit() {
+        assertTrue(ledger.apply(createDto(1, COMMON.name(), 100, 10, MINTER, USER)));
+
+        TransferLedger.Change change =
+            ledger.prepare(createDto(2, COMMON.name(), 30, 10, USER, POOL));
+        assertTrue(change.isActual());
+        assertEquals(70.0, change.balance(USER), 0.000001);
+        assertEquals(30.0, change.balance(POOL), 0.000001);
+        // a rolled back transfer is never committed
+        assertEquals(100.0, ledger.balance(NETWORK, USER), 0.000001);
+        assertEquals(0.0, ledger.balance(NETWORK, POOL), 0.000001);
+
+        ledger.commit(change);
+        assertEquals(70.0, ledger.balance(NETWORK, USER), 0.000001);
+        assertEquals(30.0, ledger.balance(NETWORK, POOL), 0.000001);
+    }
+
+    private TransferDTO createDto(long blockDate, String type, double value, double price,
+        String owner, String recipient) {
+        TransferDTO dto = new TransferDTO();
+        dto.setId(blockDate + "_0");
+        dto.setName("FARM");
+        dto.setNetwork(NETWORK);
+        dto.setBlockDate(blockDate);
+        dto.setType(type);
+        dto.setValue(value);
+        dto.setPrice(price);
+        dto.setOwner(owner);
+        dto.setRecipient(recipient);
+        return dto;
+    }
+}
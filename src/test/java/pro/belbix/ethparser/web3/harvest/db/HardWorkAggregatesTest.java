@@ -0,0 +1,78 @@
+package pro.belbix.ethparser.web3.harvest.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import pro.belbix.ethparser.dto.v0.HardWorkDTO;
+import pro.belbix.ethparser.repositories.v0.HardWorkRepository;
+
+public class HardWorkAggregatesTest {
+
+  private static final String NETWORK = "eth";
+  private static final String VAULT_1 = "0x0000000000000000000000000000000000000001";
+  private static final String VAULT_2 = "0x0000000000000000000000000000000000000002";
+
+  private final HardWorkAggregates aggregates =
+      new HardWorkAggregates(Mockito.mock(HardWorkRepository.class));
+
+  @Test
+  public void shouldSumRewardsByPeriods() {
+    aggregates.add(hardWork("1", VAULT_1, 10, 1.0, 0.1));
+    aggregates.add(hardWork("2", VAULT_2, 20, 2.0, 0.2));
+    aggregates.add(hardWork("3", VAULT_1, 30, 4.0, 0.4));
+    // out of order
+    aggregates.add(hardWork("4", VAULT_1, 15, 8.0, 0.8));
+
+    assertEquals(0.0, aggregates.vaultRewardAt(NETWORK, VAULT_1, 9), 0.0);
+    assertEquals(9.0, aggregates.vaultRewardAt(NETWORK, VAULT_1, 15), 0.0);
+    assertEquals(13.0, aggregates.vaultRewardAt(NETWORK, VAULT_1, 100), 0.0);
+    assertEquals(12.0, aggregates.vaultRewardForPeriod(NETWORK, VAULT_1, 11, 30), 0.0);
+    assertEquals(2.0, aggregates.allRewardForPeriod(NETWORK, 16, 29), 0.0);
+    assertEquals(15.0, aggregates.allRewardAt(NETWORK, 30), 0.0);
+    assertEquals(0.9, aggregates.allBuybackBefore(NETWORK, 20), 0.000001);
+    assertFalse(aggregates.hasVaultHardWorkAt(NETWORK, VAULT_2, 19));
+    assertTrue(aggregates.hasVaultHardWorkAt(NETWORK, VAULT_2, 20));
+  }
+
+  @Test
+  public void shouldReplaceRowWithTheSameId() {
+    aggregates.add(hardWork("1", VAULT_1, 10, 1.0, 0.0));
+    aggregates.add(hardWork("2", VAULT_1, 20, 2.0, 0.0));
+    aggregates.add(hardWork("1", VAULT_1, 10, 5.0, 0.0));
+    assertEquals(5.0, aggregates.vaultRewardAt(NETWORK, VAULT_1, 10), 0.0);
+    assertEquals(7.0, aggregates.allRewardAt(NETWORK, 20), 0.0);
+  }
+
+  @Test
+  public void shouldReturnNullForEmptyPeriods() {
+    assertNull(aggregates.allRewardAt(NETWORK, 100));
+    aggregates.add(hardWork("1", VAULT_1, 10, 0.0, 0.0));
+    assertEquals(0.0, aggregates.allRewardAt(NETWORK, 10), 0.0);
+    assertNull(aggregates.allRewardAt(NETWORK, 9));
+    assertNull(aggregates.allRewardForPeriod(NETWORK, 11, 20));
+    assertNull(aggregates.vaultRewardForPeriod(NETWORK, VAULT_1, 11, 20));
+    assertNull(aggregates.vaultRewardForPeriod(NETWORK, VAULT_2, 0, 20));
+
+    // a moved row leaves no hard work at the old date
+    aggregates.add(hardWork("1", VAULT_1, 30, 1.0, 0.0));
+    assertNull(aggregates.vaultRewardForPeriod(NETWORK, VAULT_1, 0, 20));
+    assertFalse(aggregates.hasVaultHardWorkAt(NETWORK, VAULT_1, 20));
+    assertEquals(1.0, aggregates.vaultRewardForPeriod(NETWORK, VAULT_1, 0, 30), 0.0);
+  }
+
+  private static HardWorkDTO hardWork(String id, String vault, long blockDate,
+      double reward, double buyback) {
+    HardWorkDTO dto = new HardWorkDTO();
+    dto.setId(id);
+    dto.setNetwork(NETWORK);
+    dto.setVaultAddress(vault);
+    dto.setBlockDate(blockDate);
+    dto.setFullRewardUsd(reward);
+    dto.setFarmBuyback(buyback);
+    return dto;
+  }
+}
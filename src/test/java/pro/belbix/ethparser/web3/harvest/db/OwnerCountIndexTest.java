@@ -0,0 +1,96 @@
+package pro.belbix.ethparser.web3.harvest.db;
+
+import static org.junit.Assert.assertEquals;
+import static pro.belbix.ethparser.web3.contracts.ContractConstants.PS_ADDRESS;
+import static pro.belbix.ethparser.web3.harvest.db.OwnerCountIndex.UNI_KEY;
+
+import java.math.BigInteger;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import pro.belbix.ethparser.repositories.v0.HarvestRepository;
+import pro.belbix.ethparser.repositories.v0.OwnerBalanceIndexRepository;
+import pro.belbix.ethparser.repositories.v0.UniswapRepository;
+
+public class OwnerCountIndexTest {
+
+  private static final String NETWORK = "eth";
+  private static final String VAULT_1 = "0x0000000000000000000000000000000000000001";
+  private static final String VAULT_2 = "0x0000000000000000000000000000000000000002";
+
+  private final OwnerBalanceIndexRepository ownerBalanceIndexRepository =
+      Mockito.mock(OwnerBalanceIndexRepository.class);
+  private final HarvestRepository harvestRepository = Mockito.mock(HarvestRepository.class);
+  private final UniswapRepository uniswapRepository = Mockito.mock(UniswapRepository.class);
+  private final OwnerCountIndex index = new OwnerCountIndex(
+      ownerBalanceIndexRepository, harvestRepository, uniswapRepository);
+
+  @Test
+  public void shouldCountOwnersWithBalance() {
+    index.update(NETWORK, VAULT_1, "owner1", 100.0, 1);
+    index.update(NETWORK, VAULT_1, "owner2", 5.0, 2);
+    index.update(NETWORK, VAULT_2, "owner1", 50.0, 3);
+    assertEquals(1, index.ownerCount(NETWORK, VAULT_1));
+    assertEquals(1, index.ownerCount(NETWORK, VAULT_2));
+    assertEquals(2, index.allOwnersCount(NETWORK));
+    assertEquals(1, index.allPoolsOwnersCount(NETWORK));
+
+    index.update(NETWORK, VAULT_1, "owner1", 0.0, 4);
+    assertEquals(0, index.ownerCount(NETWORK, VAULT_1));
+    assertEquals(1, index.allPoolsOwnersCount(NETWORK));
+
+    index.update(NETWORK, VAULT_2, "owner1", null, 5);
+    assertEquals(0, index.allPoolsOwnersCount(NETWORK));
+    assertEquals(2, index.allOwnersCount(NETWORK));
+  }
+
+  @Test
+  public void shouldIgnoreOlderActions() {
+    index.update(NETWORK, VAULT_1, "owner1", 100.0, 10);
+    index.update(NETWORK, VAULT_1, "owner1", 0.0, 5);
+    assertEquals(1, index.ownerCount(NETWORK, VAULT_1));
+  }
+
+  @Test
+  public void shouldNotCountPsAndUniAsPools() {
+    index.update(NETWORK, PS_ADDRESS, "owner1", 100.0, 1);
+    index.update(NETWORK, UNI_KEY, "owner2", 100.0, 2);
+    assertEquals(1, index.ownerCount(NETWORK, PS_ADDRESS));
+    assertEquals(1, index.ownerCount(NETWORK, UNI_KEY));
+    assertEquals(2, index.allOwnersCount(NETWORK));
+    assertEquals(0, index.allPoolsOwnersCount(NETWORK));
+  }
+
+  @Test
+  public void shouldCountAfterWithoutChanges() {
+    index.update(NETWORK, VAULT_1, "owner1", 100.0, 1);
+    assertEquals(2, index.ownerCountAfter(NETWORK, VAULT_1, "owner2", 50.0, 2));
+    assertEquals(0, index.ownerCountAfter(NETWORK, VAULT_1, "owner1", 0.0, 2));
+    assertEquals(1, index.ownerCountAfter(NETWORK, VAULT_2, "owner2", 50.0, 2));
+    assertEquals(2, index.allOwnersCountAfter(NETWORK, VAULT_1, "owner2"));
+    assertEquals(1, index.allOwnersCountAfter(NETWORK, VAULT_1, "owner1"));
+
+    assertEquals(1, index.ownerCount(NETWORK, VAULT_1));
+    assertEquals(0, index.ownerCount(NETWORK, VAULT_2));
+    assertEquals(1, index.allOwnersCount(NETWORK));
+  }
+
+  @Test
+  public void shouldRebuildFromHistoryWhenEmpty() {
+    Mockito.when(harvestRepository.fetchLastOwnerBalances(NETWORK)).thenReturn(List.of(
+        new Object[]{VAULT_1, "owner1", 100.0, BigInteger.ONE},
+        new Object[]{VAULT_1, "owner2", 5.0, BigInteger.TWO},
+        new Object[]{VAULT_2, "owner2", 50.0, BigInteger.TWO}
+    ));
+    Mockito.when(uniswapRepository.fetchLastOwnerBalances()).thenReturn(List.<Object[]>of(
+        new Object[]{"owner3", 20.0, BigInteger.TEN}
+    ));
+
+    assertEquals(1, index.ownerCount(NETWORK, VAULT_1));
+    assertEquals(1, index.ownerCount(NETWORK, VAULT_2));
+    assertEquals(1, index.ownerCount(NETWORK, UNI_KEY));
+    assertEquals(3, index.allOwnersCount(NETWORK));
+    assertEquals(2, index.allPoolsOwnersCount(NETWORK));
+    Mockito.verify(ownerBalanceIndexRepository).saveAll(Mockito.anyList());
+  }
+}
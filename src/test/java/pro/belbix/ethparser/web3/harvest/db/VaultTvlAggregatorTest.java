@@ -0,0 +1,76 @@
+package pro.belbix.ethparser.web3.harvest.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import pro.belbix.ethparser.dto.v0.HarvestDTO;
+
+public class VaultTvlAggregatorTest {
+
+    private static final String NETWORK = "eth";
+
+    @Test
+    public void shouldSumLatestVaultStates() {
+        VaultTvlAggregator aggregator = new VaultTvlAggregator();
+        aggregator.load(NETWORK, List.of(createDto("v1", 1, 10.0)));
+        assertTrue(aggregator.apply(createDto("V2", 2, 20.0)));
+        assertTrue(aggregator.apply(createDto("v1", 3, 30.0)));
+
+        double tvl = aggregator.sum(NETWORK, List.of("v1", "v2", "v3"),
+            (dto, lpStat) -> dto.getLastUsdTvl());
+        assertEquals(50.0, tvl, 0.0);
+        assertEquals(30.0, aggregator.sum(NETWORK, List.of("v1"),
+            (dto, lpStat) -> dto.getLastUsdTvl()), 0.0);
+    }
+
+    @Test
+    public void shouldLoadVaultsInAnyOrder() {
+        VaultTvlAggregator aggregator = new VaultTvlAggregator();
+        // the latest rows are ordered by vault address, not by block date
+        aggregator.load(NETWORK, List.of(
+            createDto("v1", 5, 10.0),
+            createDto("v2", 3, 20.0),
+            createDto("v3", 4, 40.0)));
+        assertEquals(70.0, aggregator.sum(NETWORK, List.of("v1", "v2", "v3"),
+            (dto, lpStat) -> dto.getLastUsdTvl()), 0.0);
+        assertFalse(aggregator.apply(createDto("v2", 4, 100.0)));
+        assertTrue(aggregator.apply(createDto("v2", 6, 100.0)));
+        assertEquals(150.0, aggregator.sum(NETWORK, List.of("v1", "v2", "v3"),
+            (dto, lpStat) -> dto.getLastUsdTvl()), 0.0);
+    }
+
+    @Test
+    public void shouldRejectOlderActions() {
+        VaultTvlAggregator aggregator = new VaultTvlAggregator();
+        assertTrue(aggregator.apply(createDto("v1", 5, 10.0)));
+        assertTrue(aggregator.apply(createDto("v2", 5, 10.0)));
+        assertFalse(aggregator.apply(createDto("v1", 4, 100.0)));
+        assertEquals(20.0, aggregator.sum(NETWORK, List.of("v1", "v2"),
+            (dto, lpStat) -> dto.getLastUsdTvl()), 0.0);
+    }
+
+    @Test
+    public void shouldParseLpStat() {
+        HarvestDTO dto = createDto("v1", 1, 0.0);
+        dto.setLpStat("{\"coin1\":\"FARM\",\"amount1\":2.0,\"price2\":3.0}");
+        VaultTvlAggregator aggregator = new VaultTvlAggregator();
+        aggregator.apply(dto);
+        assertEquals(5.0, aggregator.sum(NETWORK, List.of("v1"),
+            (d, lpStat) -> lpStat.getAmount1() + lpStat.getPrice2()), 0.0);
+        assertNull(VaultActionsDBService.parseLpStat("not json"));
+        assertNull(VaultActionsDBService.parseLpStat(""));
+    }
+
+    private static HarvestDTO createDto(String vault, long blockDate, double usdTvl) {
+        HarvestDTO dto = new HarvestDTO();
+        dto.setNetwork(NETWORK);
+        dto.setVaultAddress(vault);
+        dto.setBlockDate(blockDate);
+        dto.setLastUsdTvl(usdTvl);
+        return dto;
+    }
+}
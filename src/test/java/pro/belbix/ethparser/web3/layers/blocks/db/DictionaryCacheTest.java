@@ -0,0 +1,53 @@
+package pro.belbix.ethparser.web3.layers.blocks.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class DictionaryCacheTest {
+
+  private static final String ADDRESS = "0xa0b86991c6218b36c1d19d4a2e9eb0ce3606eb48";
+
+  @Test
+  public void internAddresses() {
+    DictionaryCache cache = new DictionaryCache(20, 16);
+    assertNull(cache.get(ADDRESS));
+    cache.put(ADDRESS, 42);
+    assertEquals(Long.valueOf(42), cache.get(ADDRESS));
+    cache.put(ADDRESS, 43);
+    assertEquals(Long.valueOf(43), cache.get(ADDRESS));
+  }
+
+  @Test
+  public void ignoreWrongKeys() {
+    DictionaryCache cache = new DictionaryCache(20, 16);
+    cache.put("0x1", 1);
+    cache.put("0xzzb86991c6218b36c1d19d4a2e9eb0ce3606eb48", 2);
+    assertNull(cache.get("0x1"));
+    assertNull(cache.get("0xzzb86991c6218b36c1d19d4a2e9eb0ce3606eb48"));
+  }
+
+  @Test
+  public void boundedSize() {
+    DictionaryCache cache = new DictionaryCache(20, 64);
+    int found = 0;
+    for (int i = 0; i < 1000; i++) {
+      cache.put(address(i), i);
+    }
+    for (int i = 0; i < 1000; i++) {
+      Long idx = cache.get(address(i));
+      if (idx != null) {
+        assertEquals(Long.valueOf(i), idx);
+        found++;
+      }
+    }
+    assertTrue(found <= 64);
+    assertEquals(Long.valueOf(999), cache.get(address(999)));
+  }
+
+  private static String address(int i) {
+    return String.format("0x%040x", (long) i * 2654435761L);
+  }
+}
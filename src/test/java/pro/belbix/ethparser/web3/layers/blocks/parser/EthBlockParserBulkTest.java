@@ -0,0 +1,86 @@
+package pro.belbix.ethparser.web3.layers.blocks.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import pro.belbix.ethparser.entity.a_layer.EthBlockEntity;
+import pro.belbix.ethparser.entity.a_layer.EthLogEntity;
+import pro.belbix.ethparser.entity.a_layer.EthTxEntity;
+import pro.belbix.ethparser.properties.AppProperties;
+import pro.belbix.ethparser.properties.NetworkProperties;
+import pro.belbix.ethparser.web3.Web3Functions;
+import pro.belbix.ethparser.web3.Web3Subscriber;
+import pro.belbix.ethparser.web3.layers.blocks.db.EthBlockBulkWriter;
+import pro.belbix.ethparser.web3.layers.blocks.db.EthBlockDbService;
+
+public class EthBlockParserBulkTest {
+
+    private final EthBlockDbService ethBlockDbService = mock(EthBlockDbService.class);
+    private final EthBlockBulkWriter ethBlockBulkWriter = mock(EthBlockBulkWriter.class);
+    private final EthBlockParser ethBlockParser = new EthBlockParser(
+        mock(Web3Functions.class),
+        mock(Web3Subscriber.class),
+        new AppProperties(),
+        ethBlockDbService,
+        ethBlockBulkWriter,
+        mock(NetworkProperties.class));
+
+    @Test
+    void saveOneByOneWhenBulkFailed() throws InterruptedException {
+        when(ethBlockBulkWriter.write(any())).thenThrow(new IllegalStateException("COPY failed"));
+        when(ethBlockDbService.save(any())).then(i -> i.getArgument(0));
+        List<EthBlockEntity> pending = new ArrayList<>(List.of(block(1), block(2)));
+        EthTxEntity tx = pending.get(0).getTransactions().iterator().next();
+
+        ethBlockParser.persistBulk(pending);
+
+        assertTrue(pending.isEmpty());
+        verify(ethBlockDbService, times(2)).save(any());
+        assertEquals(2, ethBlockParser.getOutput().size());
+        assertNull(tx.getId());
+        assertNull(tx.getLogs().iterator().next().getId());
+    }
+
+    @Test
+    void keepRestOfBatchWhenBlockFailed() {
+        when(ethBlockBulkWriter.write(any())).thenThrow(new IllegalStateException("COPY failed"));
+        when(ethBlockDbService.save(any()))
+            .then(i -> i.getArgument(0))
+            .thenThrow(new IllegalStateException("Save failed"));
+        List<EthBlockEntity> pending = new ArrayList<>(List.of(block(1), block(2), block(3)));
+
+        try {
+            ethBlockParser.persistBulk(pending);
+        } catch (Exception ignored) {
+        }
+
+        assertEquals(1, pending.size());
+        assertEquals(3, pending.get(0).getNumber());
+    }
+
+    private static EthBlockEntity block(long number) {
+        EthBlockEntity block = new EthBlockEntity();
+        block.setNumber(number);
+        EthTxEntity tx = new EthTxEntity();
+        // ids of the failed COPY
+        tx.setId(number * 10);
+        tx.setBlockNumber(block);
+        EthLogEntity ethLog = new EthLogEntity();
+        ethLog.setId(number * 100);
+        ethLog.setTx(tx);
+        tx.setLogs(new LinkedHashSet<>(Set.of(ethLog)));
+        block.setTransactions(new LinkedHashSet<>(Set.of(tx)));
+        return block;
+    }
+}
@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static pro.belbix.ethparser.service.AbiProviderService.ETH_NETWORK;
 import static pro.belbix.ethparser.web3.layers.blocks.parser.EthBlockAssertions.assertBlock;
 import static pro.belbix.ethparser.web3.layers.blocks.parser.EthBlockAssertions.assertContracts;
@@ -12,6 +13,8 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -22,6 +25,7 @@ import pro.belbix.ethparser.Application;
 import pro.belbix.ethparser.entity.a_layer.EthBlockEntity;
 import pro.belbix.ethparser.repositories.a_layer.EthBlockRepository;
 import pro.belbix.ethparser.web3.Web3Functions;
+import pro.belbix.ethparser.web3.layers.blocks.db.EthBlockBulkWriter;
 import pro.belbix.ethparser.web3.layers.blocks.db.EthBlockDbService;
 
 @SpringBootTest(classes = Application.class)
@@ -36,6 +40,8 @@ public class EthBlockParserTest {
     private EthBlockDbService ethBlockDbService;
     @Autowired
     private EthBlockRepository ethBlockRepository;
+    @Autowired
+    private EthBlockBulkWriter ethBlockBulkWriter;
 
     @BeforeEach
     void setUp() {
@@ -155,6 +161,24 @@ public class EthBlockParserTest {
         assertContracts(ethBlockEntity, "data/12030868_eth_contracts.txt");
     }
 
+    @Test
+    void testBulkWriteWithCachedDictionaries() {
+        // fills dictionary caches with common addresses and topics of the next blocks
+        assertNotNull(ethBlockDbService.save(ethBlockParser.parse(
+            web3Functions.findBlockByNumber(12055815, true, ETH_NETWORK), ETH_NETWORK)));
+        List<EthBlockEntity> blocks = new ArrayList<>();
+        blocks.add(ethBlockParser.parse(
+            web3Functions.findBlockByNumber(12055816, true, ETH_NETWORK), ETH_NETWORK));
+        blocks.add(ethBlockParser.parse(
+            web3Functions.findBlockByNumber(12055817, true, ETH_NETWORK), ETH_NETWORK));
+
+        List<EthBlockEntity> persisted = ethBlockBulkWriter.write(blocks);
+        assertEquals(2, persisted.size());
+        assertTrue(ethBlockRepository.existsById(12055816L));
+        assertTrue(ethBlockRepository.existsById(12055817L));
+        assertTrue(ethBlockBulkWriter.write(blocks).isEmpty());
+    }
+
     @Test
     public void smokeTest()
         throws JsonProcessingException, ExecutionException, InterruptedException {
@@ -0,0 +1,41 @@
+package pro.belbix.ethparser.web3.prices;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class BlockPriceCacheTest {
+
+  private static final String TOKEN = "0xa0b86991c6218b36c1d19d4a2e9eb0ce3606eb48";
+
+  @Test
+  public void freshWindow() {
+    BlockPriceCache cache = new BlockPriceCache(100);
+    cache.put(TOKEN, 100, 1.5);
+    cache.put(TOKEN, 200, 2.5);
+    assertEquals(1.5, cache.get(TOKEN, 100, 0), 0);
+    assertTrue(Double.isNaN(cache.get(TOKEN, 101, 0)));
+    assertEquals(1.5, cache.get(TOKEN.toUpperCase().replace("0X", "0x"), 150, 50), 0);
+    assertEquals(2.5, cache.get(TOKEN, 250, 50), 0);
+    assertTrue(Double.isNaN(cache.get(TOKEN, 99, 1000)));
+  }
+
+  @Test
+  public void evictOldestBlocks() {
+    BlockPriceCache cache = new BlockPriceCache(3);
+    for (int block = 1; block <= 5; block++) {
+      cache.put(TOKEN, block * 10, block);
+    }
+    assertTrue(Double.isNaN(cache.get(TOKEN, 20, 0)));
+    assertEquals(3.0, cache.get(TOKEN, 30, 0), 0);
+    assertEquals(5.0, cache.get(TOKEN, 50, 0), 0);
+    // older than everything kept
+    cache.put(TOKEN, 1, 0.1);
+    assertTrue(Double.isNaN(cache.get(TOKEN, 1, 0)));
+    cache.put(TOKEN, 35, 3.5);
+    assertTrue(Double.isNaN(cache.get(TOKEN, 30, 0)));
+    assertEquals(3.5, cache.get(TOKEN, 35, 0), 0);
+    assertEquals(4.0, cache.get(TOKEN, 40, 0), 0);
+  }
+}